@@ -0,0 +1,122 @@
+package com.treblle.benchmarks;
+
+import com.treblle.benchmarks.support.StubServlet;
+import com.treblle.common.service.TreblleService;
+import com.treblle.javax.TreblleServletFilter;
+import com.treblle.javax.configuration.ServletFilterTreblleProperties;
+import com.treblle.javax.service.TreblleServiceRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of requests the servlet filter does not monitor, deployed under the context path
+ * {@code /app} with excluded paths, methods and content types configured:
+ * <ul>
+ *   <li>{@code chainOnly} - calling the filter chain directly, the reference</li>
+ *   <li>{@code filterBypass} - the same request through {@link TreblleServletFilter}</li>
+ *   <li>{@code classify} - the pre-capture decision alone</li>
+ *   <li>{@code legacyDecision} - the former decision, which cut the context path off the URI
+ *       and then checked exclusion and sampling</li>
+ * </ul>
+ * {@code filterBypass} should stay within a few nanoseconds of {@code chainOnly} and, like
+ * {@code classify}, allocate nothing (run with {@code -prof gc}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BypassBenchmark {
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    @Param({"path", "method", "contentType"})
+    public String exclusion;
+
+    private TreblleServletFilter filter;
+    private TreblleService service;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private FilterChain chain;
+    private int chainCalls;
+
+    @Setup
+    public void setUp() throws ServletException {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("sdkToken", "benchmark");
+        parameters.put("apiKey", "benchmark");
+        parameters.put("customTreblleEndpoint", "http://127.0.0.1:9");
+        parameters.put("jmxEnabled", "false");
+        parameters.put("excludedPaths", "/health,/metrics,/static/*,*/internal");
+        parameters.put("excludedMethods", "OPTIONS,HEAD");
+        parameters.put("excludedContentTypes", "multipart/form-data,image/*");
+        FilterConfig config = (FilterConfig) Proxy.newProxyInstance(
+                BypassBenchmark.class.getClassLoader(),
+                new Class<?>[]{FilterConfig.class},
+                (proxy, invoked, args) -> "getInitParameter".equals(invoked.getName())
+                        ? parameters.get((String) args[0]) : null);
+
+        filter = new TreblleServletFilter();
+        filter.init(config);
+        service = TreblleServiceRegistry.acquire("javax-servlet", new ServletFilterTreblleProperties(config));
+
+        switch (exclusion) {
+            case "path":
+                request = StubServlet.request("GET", "/app", "/app/static/js/main.js", null, NO_BODY);
+                break;
+            case "method":
+                request = StubServlet.request("OPTIONS", "/app", "/app/api/users", null, NO_BODY);
+                break;
+            default:
+                request = StubServlet.request("POST", "/app", "/app/api/avatars",
+                        "multipart/form-data; boundary=----jmh", NO_BODY);
+                break;
+        }
+        response = StubServlet.response();
+        chain = (servletRequest, servletResponse) -> chainCalls++;
+    }
+
+    @TearDown
+    public void tearDown() {
+        TreblleServiceRegistry.release(service);
+        filter.destroy();
+    }
+
+    @Benchmark
+    public int chainOnly() throws IOException, ServletException {
+        chain.doFilter(request, response);
+        return chainCalls;
+    }
+
+    @Benchmark
+    public int filterBypass() throws IOException, ServletException {
+        filter.doFilter(request, response, chain);
+        return chainCalls;
+    }
+
+    @Benchmark
+    public boolean classify() {
+        String uri = request.getRequestURI();
+        return service.isCaptured(uri, request.getContextPath().length(), request.getMethod(), request.getContentType());
+    }
+
+    @Benchmark
+    public boolean legacyDecision() {
+        String uri = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        String path = !contextPath.isEmpty() && uri.startsWith(contextPath) ? uri.substring(contextPath.length()) : uri;
+        return !service.isExcluded(path) && service.isSampled(path);
+    }
+
+}
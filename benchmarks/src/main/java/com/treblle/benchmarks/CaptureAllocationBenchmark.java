@@ -0,0 +1,87 @@
+package com.treblle.benchmarks;
+
+import com.treblle.benchmarks.support.StubServlet;
+import com.treblle.javax.infrastructure.ContentCachingRequestWrapper;
+import com.treblle.javax.infrastructure.ContentCachingResponseWrapper;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes allocated per request by body capture: the pre-2.1 strategy of reserving the whole
+ * {@code maxBodySizeInBytes} up front against the pooled, lazily growing capture buffers.
+ * <p>
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm} (bytes per operation).
+ * The zero-byte case models GET requests, which previously paid for the full 2MB reservation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaptureAllocationBenchmark {
+
+    private static final int MAX_BODY_SIZE = 2 * 1024 * 1024;
+
+    @Param({"0", "1024", "65536"})
+    public int bodySize;
+
+    private byte[] body;
+    private byte[] response;
+    private byte[] readBuffer;
+
+    @Setup
+    public void setUp() {
+        body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'a');
+        response = new byte[512];
+        Arrays.fill(response, (byte) 'b');
+        readBuffer = new byte[8192];
+    }
+
+    @Benchmark
+    public int preallocatedCapture() throws IOException {
+        HttpServletRequest request = StubServlet.request("POST", "/api/users", "application/json", body);
+        // What the wrappers did before: reserve the limit for the request, 1KB for the response
+        ByteArrayOutputStream requestCapture = new ByteArrayOutputStream(MAX_BODY_SIZE);
+        ByteArrayOutputStream responseCapture = new ByteArrayOutputStream(1024);
+
+        ServletInputStream in = request.getInputStream();
+        int read;
+        while ((read = in.read(readBuffer, 0, readBuffer.length)) != -1) {
+            requestCapture.write(readBuffer, 0, read);
+        }
+        responseCapture.write(response, 0, response.length);
+
+        return requestCapture.toByteArray().length + responseCapture.toByteArray().length;
+    }
+
+    @Benchmark
+    public int pooledCapture() throws IOException {
+        HttpServletRequest request = StubServlet.request("POST", "/api/users", "application/json", body);
+        HttpServletResponse rawResponse = StubServlet.response();
+        ContentCachingRequestWrapper requestWrapper = new ContentCachingRequestWrapper(request, MAX_BODY_SIZE);
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(rawResponse, MAX_BODY_SIZE);
+
+        ServletInputStream in = requestWrapper.getInputStream();
+        while (in.read(readBuffer, 0, readBuffer.length) != -1) {
+            // Drain like an application would
+        }
+        ServletOutputStream out = responseWrapper.getOutputStream();
+        out.write(response, 0, response.length);
+
+        int size = requestWrapper.getContentAsByteArray().length + responseWrapper.getContentAsByteArray().length;
+        requestWrapper.release();
+        responseWrapper.release();
+        return size;
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.treblle.benchmarks;
+
+import com.treblle.benchmarks.support.StubServlet;
+import com.treblle.javax.infrastructure.ContentCachingRequestWrapper;
+import com.treblle.javax.infrastructure.ContentCachingResponseWrapper;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read and write paths of the capture wrappers, each including the wrapper's creation and release:
+ * <ul>
+ *   <li>{@code readChunked} / {@code readByByte} - the application reading the request body through
+ *       {@link ContentCachingRequestWrapper} in 8KB chunks or byte by byte</li>
+ *   <li>{@code writeStream} - the application writing the response through the wrapper's output
+ *       stream in 4KB chunks, followed by {@code copyBodyToResponse}</li>
+ *   <li>{@code writeWriter} - the same through the wrapper's {@code PrintWriter}</li>
+ * </ul>
+ * Run with {@code -prof gc} to see the bytes allocated per request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaptureWrapperBenchmark {
+
+    private static final int MAX_BODY_SIZE = 2 * 1024 * 1024;
+    private static final int WRITE_CHUNK = 4096;
+
+    @Param({"1024", "65536"})
+    public int bodySize;
+
+    private byte[] body;
+    private String text;
+    private byte[] readBuffer;
+
+    @Setup
+    public void setUp() {
+        body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'a');
+        text = new String(body);
+        readBuffer = new byte[8192];
+    }
+
+    @Benchmark
+    public int readChunked() throws IOException {
+        ContentCachingRequestWrapper wrapper = new ContentCachingRequestWrapper(
+                StubServlet.request("POST", "/api/users", "application/json", body), MAX_BODY_SIZE);
+        ServletInputStream in = wrapper.getInputStream();
+        int total = 0;
+        int read;
+        while ((read = in.read(readBuffer, 0, readBuffer.length)) != -1) {
+            total += read;
+        }
+        wrapper.release();
+        return total;
+    }
+
+    @Benchmark
+    public int readByByte() throws IOException {
+        ContentCachingRequestWrapper wrapper = new ContentCachingRequestWrapper(
+                StubServlet.request("POST", "/api/users", "application/json", body), MAX_BODY_SIZE);
+        ServletInputStream in = wrapper.getInputStream();
+        int sum = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            sum += b;
+        }
+        wrapper.release();
+        return sum;
+    }
+
+    @Benchmark
+    public int writeStream() throws IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(StubServlet.response(), MAX_BODY_SIZE);
+        ServletOutputStream out = wrapper.getOutputStream();
+        for (int offset = 0; offset < body.length; offset += WRITE_CHUNK) {
+            out.write(body, offset, Math.min(WRITE_CHUNK, body.length - offset));
+        }
+        wrapper.copyBodyToResponse();
+        int size = wrapper.getContentSize();
+        wrapper.release();
+        return size;
+    }
+
+    @Benchmark
+    public int writeWriter() throws IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(StubServlet.response(), MAX_BODY_SIZE);
+        PrintWriter writer = wrapper.getWriter();
+        for (int offset = 0; offset < text.length(); offset += WRITE_CHUNK) {
+            writer.write(text, offset, Math.min(WRITE_CHUNK, text.length() - offset));
+        }
+        wrapper.copyBodyToResponse();
+        int size = wrapper.getContentSize();
+        wrapper.release();
+        return size;
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.treblle.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}, e.g., from the last release and the
+ * current branch.
+ * <p>
+ * For every benchmark and parameter combination present in both files it prints the primary score
+ * of each run and the change in percent. Changes beyond the combined error margins of both runs are
+ * marked better or worse, depending on the benchmark mode.
+ * Runs made with {@code -prof gc} also get their bytes allocated per operation compared.
+ * <pre>
+ * java -cp target/benchmarks.jar com.treblle.benchmarks.CompareResults baseline.json candidate.json
+ * </pre>
+ */
+public final class CompareResults {
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <candidate.json>");
+            System.exit(2);
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = index(objectMapper.readTree(new File(args[0])));
+        Map<String, JsonNode> candidate = index(objectMapper.readTree(new File(args[1])));
+
+        System.out.printf("%-70s %16s %16s %9s %14s %14s%n",
+                "Benchmark", "Baseline", "Candidate", "Change", "Alloc B/op", "Alloc B/op");
+        for (Map.Entry<String, JsonNode> entry : baseline.entrySet()) {
+            JsonNode after = candidate.get(entry.getKey());
+            if (after == null) {
+                continue;
+            }
+            JsonNode before = entry.getValue();
+            double scoreBefore = before.path("primaryMetric").path("score").asDouble();
+            double scoreAfter = after.path("primaryMetric").path("score").asDouble();
+            String unit = after.path("primaryMetric").path("scoreUnit").asText();
+            boolean higherIsBetter = "thrpt".equals(after.path("mode").asText());
+            double change = (scoreAfter - scoreBefore) / scoreBefore * 100;
+            // Only call out differences larger than the combined error margins of both runs
+            double noise = error(before) + error(after);
+            String verdict = Math.abs(scoreAfter - scoreBefore) <= noise
+                    ? ""
+                    : (scoreAfter > scoreBefore) == higherIsBetter ? "  better" : "  WORSE";
+
+            System.out.printf("%-70s %16s %16s %8.1f%% %14s %14s%s%n",
+                    entry.getKey(),
+                    format(scoreBefore, unit),
+                    format(scoreAfter, unit),
+                    change,
+                    allocation(before),
+                    allocation(after),
+                    verdict);
+        }
+    }
+
+    private static Map<String, JsonNode> index(JsonNode results) {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText()
+                    .replace("com.treblle.benchmarks.", ""));
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            byKey.put(key.toString(), result);
+        }
+        return byKey;
+    }
+
+    private static double error(JsonNode result) {
+        double error = result.path("primaryMetric").path("scoreError").asDouble();
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static String allocation(JsonNode result) {
+        JsonNode metric = result.path("secondaryMetrics").path(ALLOCATION_METRIC);
+        return metric.isMissingNode() ? "-" : String.format("%.0f", metric.path("score").asDouble());
+    }
+
+    private static String format(double score, String unit) {
+        return String.format("%.2f %s", score, unit);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.treblle.benchmarks;
+
+import com.treblle.common.service.EndpointSelector;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of choosing the ingest host for a send from many workers at once: the former uniform pick
+ * through a shared {@link SecureRandom} against {@link EndpointSelector}, which scores the hosts
+ * and reports each outcome back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class EndpointSelectorBenchmark {
+
+    private static final String[] ENDPOINTS = {
+            "https://rocknrolla.treblle.com",
+            "https://punisher.treblle.com",
+            "https://sicario.treblle.com"
+    };
+
+    private final Random random = new SecureRandom();
+
+    private final EndpointSelector selector = new EndpointSelector(Arrays.asList(ENDPOINTS), 5);
+
+    @Benchmark
+    public String secureRandom() {
+        return ENDPOINTS[random.nextInt(ENDPOINTS.length)];
+    }
+
+    @Benchmark
+    public String select() {
+        return selector.select().getUrl();
+    }
+
+    @Benchmark
+    public String selectAndRecord() {
+        EndpointSelector.Endpoint endpoint = selector.select();
+        selector.recordSuccess(endpoint, 20_000_000);
+        return endpoint.getUrl();
+    }
+
+}
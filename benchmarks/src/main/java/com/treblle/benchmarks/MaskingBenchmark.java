@@ -0,0 +1,63 @@
+package com.treblle.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.treblle.benchmarks.support.Fixtures;
+import com.treblle.common.configuration.TreblleProperties;
+import com.treblle.common.utils.DataMasker;
+import com.treblle.common.utils.DataMaskerImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Masking of request and response bodies with the default keywords: the streaming
+ * {@link DataMasker#mask(byte[], int, int)} used by the SDK against parsing into a tree and
+ * masking the tree, as done before 2.1.
+ * <p>
+ * Run with {@code -prof gc}; the large fixture is a 2MB body, the default capture limit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaskingBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String fixture;
+
+    private byte[] body;
+    private DataMasker masker;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        body = Fixtures.load(fixture);
+        masker = new DataMaskerImpl(new TreblleProperties() {
+            @Override
+            public String getSdkToken() {
+                return "benchmark";
+            }
+
+            @Override
+            public String getApiKey() {
+                return "benchmark";
+            }
+        });
+        objectMapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public JsonNode maskStreaming() throws IOException {
+        return masker.mask(body, 0, body.length);
+    }
+
+    @Benchmark
+    public JsonNode maskTree() throws IOException {
+        return masker.mask(objectMapper.readTree(body));
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.treblle.benchmarks;
+
+import com.treblle.common.metrics.TreblleMetrics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording into {@link TreblleMetrics} from many threads at once, as the filters do on
+ * every request: one timing sample, and one delivery outcome with its byte counts. Run with
+ * {@code -prof gc}; {@code gc.alloc.rate.norm} should stay at zero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class MetricsBenchmark {
+
+    private final TreblleMetrics metrics = new TreblleMetrics();
+
+    @State(Scope.Thread)
+    public static class Sample {
+
+        long nanos = 1;
+
+        long next() {
+            // Spread samples over the buckets without a shared random source
+            nanos = nanos * 6364136223846793005L + 1442695040888963407L;
+            return (nanos >>> 40) & 0xFFFFF;
+        }
+    }
+
+    @Benchmark
+    public void recordTiming(Sample sample) {
+        metrics.recordCapture(sample.next());
+    }
+
+    @Benchmark
+    public void recordDelivery(Sample sample) {
+        metrics.recordShipped(4096, 1024);
+        metrics.recordResponse(200, 1, sample.next());
+    }
+
+}
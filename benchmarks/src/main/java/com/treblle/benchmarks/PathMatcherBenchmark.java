@@ -0,0 +1,93 @@
+package com.treblle.benchmarks;
+
+import com.treblle.common.utils.CompiledPathMatcher;
+import com.treblle.common.utils.PathMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares per-request evaluation of exclusion patterns ({@link PathMatcher#isExcluded}) with the
+ * precompiled {@link CompiledPathMatcher} at growing pattern counts.
+ * <p>
+ * Patterns are an even mix of exact, prefix, suffix and middle-wildcard shapes. Each invocation
+ * matches one path from a fixed rotation in which roughly a quarter of the paths are excluded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathMatcherBenchmark {
+
+    private static final int PATH_ROTATION = 64;
+
+    @Param({"10", "100", "1000"})
+    public int patternCount;
+
+    private List<String> patterns;
+    private CompiledPathMatcher compiled;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        patterns = new ArrayList<>(patternCount);
+        for (int i = 0; i < patternCount; i++) {
+            switch (i % 4) {
+                case 0:
+                    patterns.add("/health" + i);
+                    break;
+                case 1:
+                    patterns.add("admin" + i + "/*");
+                    break;
+                case 2:
+                    patterns.add("*/internal" + i);
+                    break;
+                default:
+                    patterns.add("/api/v" + i + "/*/debug");
+                    break;
+            }
+        }
+        compiled = CompiledPathMatcher.compile(patterns);
+
+        Random random = new Random(42);
+        paths = new String[PATH_ROTATION];
+        for (int i = 0; i < PATH_ROTATION; i++) {
+            int target = random.nextInt(patternCount);
+            switch (i % 8) {
+                case 0:
+                    paths[i] = "/health" + target;
+                    break;
+                case 1:
+                    paths[i] = "/admin" + target + "/users/" + i;
+                    break;
+                default:
+                    // Monitored traffic that has to be checked against every pattern
+                    paths[i] = "/api/users/" + random.nextInt(100_000) + "/orders";
+                    break;
+            }
+        }
+    }
+
+    private String nextPath() {
+        String path = paths[next];
+        next = (next + 1) & (PATH_ROTATION - 1);
+        return path;
+    }
+
+    @Benchmark
+    public boolean legacyIsExcluded() {
+        return PathMatcher.isExcluded(nextPath(), patterns);
+    }
+
+    @Benchmark
+    public boolean compiledIsExcluded() {
+        return compiled.matches(nextPath());
+    }
+
+}
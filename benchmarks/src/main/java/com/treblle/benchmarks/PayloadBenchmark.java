@@ -0,0 +1,79 @@
+package com.treblle.benchmarks;
+
+import com.treblle.benchmarks.support.BenchmarkService;
+import com.treblle.benchmarks.support.Fixtures;
+import com.treblle.benchmarks.support.StubServlet;
+import com.treblle.common.dto.TrebllePayload;
+import com.treblle.common.infrastructure.CaptureBuffer;
+import com.treblle.common.infrastructure.RawExchange;
+import com.treblle.common.service.AbstractTreblleService;
+import com.treblle.javax.infrastructure.ContentCachingRequestWrapper;
+import com.treblle.javax.infrastructure.ContentCachingResponseWrapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payload construction:
+ * <ul>
+ *   <li>{@code createPayload} - {@link AbstractTreblleService#createPayload}, the metadata part
+ *       (server, request, response, headers) without bodies</li>
+ *   <li>{@code snapshotExchange} - what the servlet filter does on the request thread since 2.1:
+ *       {@link RawExchange#capture} of the wrappers and their body buffers</li>
+ *   <li>{@code buildPayload} - what a telemetry worker does with that snapshot: the full payload
+ *       including header and body masking</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    @Param({"small", "medium"})
+    public String fixture;
+
+    private byte[] body;
+    private BenchmarkService service;
+    private ContentCachingRequestWrapper requestWrapper;
+    private ContentCachingResponseWrapper responseWrapper;
+    private CaptureBuffer requestBody;
+    private CaptureBuffer responseBody;
+
+    @Setup
+    public void setUp() {
+        body = Fixtures.load(fixture);
+        service = new BenchmarkService();
+        requestWrapper = new ContentCachingRequestWrapper(
+                StubServlet.request("POST", "/api/orders", "application/json", body), Fixtures.LARGE_SIZE);
+        responseWrapper = new ContentCachingResponseWrapper(StubServlet.response(), Fixtures.LARGE_SIZE);
+        requestBody = new CaptureBuffer();
+        responseBody = new CaptureBuffer();
+    }
+
+    @Benchmark
+    public TrebllePayload createPayload() {
+        return service.createPayload(requestWrapper, responseWrapper, null, 12);
+    }
+
+    @Benchmark
+    public RawExchange snapshotExchange() {
+        RawExchange exchange = RawExchange.capture(requestWrapper, responseWrapper, requestBody, responseBody,
+                null, System.currentTimeMillis(), 12);
+        exchange.release();
+        return exchange;
+    }
+
+    @Benchmark
+    public TrebllePayload buildPayload() {
+        requestBody.write(body, 0, body.length);
+        responseBody.write(body, 0, body.length);
+        RawExchange exchange = RawExchange.capture(requestWrapper, responseWrapper, requestBody, responseBody,
+                null, System.currentTimeMillis(), 12);
+        // Releases the body buffers
+        return service.build(exchange);
+    }
+
+}
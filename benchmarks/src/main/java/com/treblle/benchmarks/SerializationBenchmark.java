@@ -0,0 +1,78 @@
+package com.treblle.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.treblle.benchmarks.support.BenchmarkService;
+import com.treblle.benchmarks.support.Fixtures;
+import com.treblle.common.dto.TrebllePayload;
+import com.treblle.javax.service.GzipPayloadSink;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialization and compression of a built payload, as done by the service's sender workers:
+ * <ul>
+ *   <li>{@code pooledGzipSink} - Jackson writing straight into a recycled {@link GzipPayloadSink}</li>
+ *   <li>{@code bytesThenGzip} - the pre-2.1 path: serialize to a byte array, then compress it through a
+ *       fresh {@link GZIPOutputStream}</li>
+ *   <li>{@code jsonOnly} - serialization without compression, to separate the two costs</li>
+ * </ul>
+ * Payloads carry the fixture as both request and response body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String fixture;
+
+    private TrebllePayload payload;
+    private ObjectMapper objectMapper;
+    private GzipPayloadSink.Pool sinkPool;
+
+    @Setup
+    public void setUp() {
+        payload = new BenchmarkService().build(Fixtures.load(fixture));
+        objectMapper = new ObjectMapper();
+        sinkPool = new GzipPayloadSink.Pool(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sinkPool.clear();
+    }
+
+    @Benchmark
+    public int pooledGzipSink() throws IOException {
+        GzipPayloadSink sink = sinkPool.acquire();
+        try {
+            objectMapper.writeValue(sink, payload);
+            return sink.size();
+        } finally {
+            sinkPool.release(sink);
+        }
+    }
+
+    @Benchmark
+    public int bytesThenGzip() throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(payload);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json);
+        }
+        return compressed.size();
+    }
+
+    @Benchmark
+    public byte[] jsonOnly() throws IOException {
+        return objectMapper.writeValueAsBytes(payload);
+    }
+
+}
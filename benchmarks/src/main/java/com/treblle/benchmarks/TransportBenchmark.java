@@ -0,0 +1,135 @@
+package com.treblle.benchmarks;
+
+import com.treblle.benchmarks.support.StubIngestServer;
+import com.treblle.common.configuration.TransportMode;
+import com.treblle.common.configuration.TreblleProperties;
+import com.treblle.javax.service.AsyncPayloadTransport;
+import com.treblle.javax.service.BlockingPayloadTransport;
+import com.treblle.javax.service.PayloadTransport;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends per second through the blocking and the async transport against a local stub ingest
+ * server that answers after {@code latencyMillis}.
+ * <p>
+ * Each invocation pushes {@value #SENDS_PER_INVOCATION} compressed-size bodies through the same
+ * three worker threads the SDK uses by default and waits for every response. With the defaults of
+ * five connections per route, the blocking transport keeps at most three sends in flight (one per
+ * worker), async over HTTP/1.1 at most five (one per connection), and async over h2c multiplexes
+ * all of them over a single connection. The connection count is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(TransportBenchmark.SENDS_PER_INVOCATION)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+    static final int SENDS_PER_INVOCATION = 256;
+    private static final int WORKERS = 3;
+    private static final int BODY_SIZE = 2048;
+
+    @Param({"blocking-http1", "async-http1", "async-h2c"})
+    public String transport;
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    private StubIngestServer server;
+    private PayloadTransport payloadTransport;
+    private ExecutorService workers;
+    private String endpoint;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final boolean h2c = transport.endsWith("h2c");
+        final TransportMode mode = transport.startsWith("async") ? TransportMode.ASYNC : TransportMode.BLOCKING;
+
+        server = h2c ? StubIngestServer.h2c(latencyMillis) : StubIngestServer.http1(latencyMillis);
+        endpoint = server.getEndpoint();
+
+        TreblleProperties properties = new TreblleProperties() {
+            @Override
+            public String getSdkToken() {
+                return "benchmark";
+            }
+
+            @Override
+            public String getApiKey() {
+                return "benchmark";
+            }
+
+            @Override
+            public TransportMode getTransportMode() {
+                return mode;
+            }
+
+            @Override
+            public boolean isForceHttp2() {
+                return h2c;
+            }
+        };
+        payloadTransport = mode == TransportMode.ASYNC
+                ? new AsyncPayloadTransport(properties)
+                : new BlockingPayloadTransport(properties);
+
+        workers = Executors.newFixedThreadPool(WORKERS);
+        // Compressed payloads look random to the network
+        body = new byte[BODY_SIZE];
+        new Random(42).nextBytes(body);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.out.println();
+        System.out.println("# " + transport + ": " + server.getRequestCount() + " requests over "
+                + server.getConnectionCount() + " connections");
+        workers.shutdownNow();
+        payloadTransport.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int send() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(SENDS_PER_INVOCATION);
+        final AtomicInteger failures = new AtomicInteger();
+        PayloadTransport.Callback callback = new PayloadTransport.Callback() {
+            @Override
+            public void completed(int statusCode, long retryAfterMillis) {
+                done.countDown();
+            }
+
+            @Override
+            public void failed(Exception exception) {
+                failures.incrementAndGet();
+                done.countDown();
+            }
+        };
+
+        for (int w = 0; w < WORKERS; w++) {
+            final int share = SENDS_PER_INVOCATION / WORKERS + (w < SENDS_PER_INVOCATION % WORKERS ? 1 : 0);
+            workers.execute(() -> {
+                for (int i = 0; i < share; i++) {
+                    payloadTransport.send(endpoint, body, body.length, callback);
+                }
+            });
+        }
+        done.await();
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " sends failed");
+        }
+        return SENDS_PER_INVOCATION;
+    }
+
+}
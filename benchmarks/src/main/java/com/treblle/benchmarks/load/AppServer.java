@@ -0,0 +1,119 @@
+package com.treblle.benchmarks.load;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.treblle.common.configuration.TreblleProperties;
+import com.treblle.javax.TreblleContainerFilter;
+import com.treblle.javax.TreblleServletFilter;
+import com.treblle.javax.configuration.ContainerFilterTreblleProperties;
+import com.treblle.javax.configuration.ServletFilterTreblleProperties;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.ServerProperties;
+import org.glassfish.jersey.servlet.ServletContainer;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.Map;
+
+/**
+ * Embedded Jetty serving {@link UserResource} through Jersey under {@code /api}, with either no
+ * Treblle filter, the {@link TreblleServletFilter} in front of the Jersey servlet, or the
+ * {@link TreblleContainerFilter} registered with Jersey.
+ */
+final class AppServer implements AutoCloseable {
+
+    private final Server server;
+    private final TreblleProperties treblleProperties;
+
+    AppServer(Scenario scenario, Map<String, String> settings) throws Exception {
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server.addConnector(connector);
+
+        ResourceConfig resources = new ResourceConfig(UserResource.class).register(JacksonJsonProvider.class)
+                .property(ServerProperties.WADL_FEATURE_DISABLE, true);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+
+        switch (scenario) {
+            case SERVLET:
+                FilterHolder filter = new FilterHolder(TreblleServletFilter.class);
+                filter.setInitParameters(settings);
+                context.addFilter(filter, "/*", EnumSet.of(DispatcherType.REQUEST));
+                treblleProperties = new ServletFilterTreblleProperties(filterConfig(settings));
+                break;
+            case CONTAINER:
+                resources.register(TreblleContainerFilter.class);
+                resources.addProperties(Collections.<String, Object>unmodifiableMap(settings));
+                treblleProperties = new ContainerFilterTreblleProperties(resources);
+                break;
+            default:
+                treblleProperties = null;
+                break;
+        }
+
+        context.addServlet(new ServletHolder(new ServletContainer(resources)), "/api/*");
+        server.setHandler(context);
+        server.start();
+    }
+
+    /**
+     * @return base URL of the application, e.g., {@code http://127.0.0.1:8080/api}
+     */
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/api";
+    }
+
+    /**
+     * @return the properties the installed filter resolves, or {@code null} without a filter
+     */
+    TreblleProperties getTreblleProperties() {
+        return treblleProperties;
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to stop the application server", e);
+        }
+    }
+
+    private static FilterConfig filterConfig(Map<String, String> settings) {
+        return new FilterConfig() {
+            @Override
+            public String getFilterName() {
+                return "treblle";
+            }
+
+            @Override
+            public ServletContext getServletContext() {
+                return null;
+            }
+
+            @Override
+            public String getInitParameter(String name) {
+                return settings.get(name);
+            }
+
+            @Override
+            public Enumeration<String> getInitParameterNames() {
+                return Collections.enumeration(settings.keySet());
+            }
+        };
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.treblle.benchmarks.load;
+
+import com.treblle.benchmarks.support.Fixtures;
+import com.treblle.benchmarks.support.StubIngestServer;
+import com.treblle.benchmarks.support.StubServlet;
+import com.treblle.common.configuration.TreblleProperties;
+import com.treblle.common.dto.TrebllePayload;
+import com.treblle.common.service.TreblleService;
+import com.treblle.javax.infrastructure.ContentCachingRequestWrapper;
+import com.treblle.javax.infrastructure.ContentCachingResponseWrapper;
+import com.treblle.javax.service.TreblleServiceImpl;
+import com.treblle.javax.service.TreblleServiceRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks where the SDK cuts batches: sends a known number of payloads through a real
+ * {@link TreblleServiceImpl} to a {@link StubIngestServer} that records every request, and asserts
+ * the payload count and size of each batch it received. One worker thread adds the payloads in
+ * order, so the boundaries are deterministic:
+ * <ul>
+ *   <li>{@code size} - 30 payloads with {@code batchSize=10} arrive as three batches of 10</li>
+ *   <li>{@code linger} - 7 payloads with {@code batchSize=100} arrive as one batch, no sooner than
+ *       {@code batchLingerInMillis} after the first one</li>
+ *   <li>{@code bytes} - 20 payloads with a 4KB {@code batchMaxBytes}: every batch but the last is
+ *       cut by the payload that reaches the budget, so it is at least 4KB and below 4KB without
+ *       that payload</li>
+ *   <li>{@code oversized} - 5 payloads each larger than a 256 byte {@code batchMaxBytes} arrive as
+ *       five batches of one, each exceeding the budget</li>
+ * </ul>
+ * Prints one line per check and exits with status 1 if any failed.
+ * <pre>
+ * java -cp target/benchmarks.jar com.treblle.benchmarks.load.BatchingHarness
+ * </pre>
+ */
+public final class BatchingHarness {
+
+    private static final long ARRIVAL_TIMEOUT_MILLIS = 10_000;
+    // Long enough that only size and byte limits close a batch within a check
+    private static final long NO_LINGER_MILLIS = 60_000;
+
+    private BatchingHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        byte[] body = Fixtures.load("small");
+        List<String> failures = new ArrayList<>();
+
+        try (StubIngestServer stub = StubIngestServer.http1(0)) {
+            stub.setCountPayloads(true);
+            stub.setRecordBatches(true);
+
+            // Size: every batch is cut at batchSize
+            List<StubIngestServer.Batch> batches = run(stub, settings(stub, 10, NO_LINGER_MILLIS, 1024 * 1024), body, 30);
+            check(failures, "size", batches.size() == 3 && counts(batches).equals(list(10, 10, 10)),
+                    "expected batches [10, 10, 10], got " + counts(batches));
+
+            // Linger: a batch that never fills is sent once its first payload has waited long enough
+            long lingerMillis = 500;
+            long start = System.nanoTime();
+            batches = run(stub, settings(stub, 100, lingerMillis, 1024 * 1024), body, 7);
+            long waitedMillis = batches.isEmpty() ? -1
+                    : TimeUnit.NANOSECONDS.toMillis(batches.get(0).getReceivedNanos() - start);
+            check(failures, "linger", counts(batches).equals(list(7)) && waitedMillis >= lingerMillis,
+                    "expected one batch of 7 after " + lingerMillis + "ms, got " + counts(batches)
+                            + " after " + waitedMillis + "ms");
+
+            // Bytes: the payload that reaches batchMaxBytes closes the batch, so it may exceed the budget
+            int maxBytes = 4096;
+            batches = run(stub, settings(stub, 100, lingerMillis, maxBytes), body, 20);
+            boolean cutAtBudget = batches.size() > 1;
+            int coalesced = 0;
+            for (int i = 0; i < batches.size(); i++) {
+                StubIngestServer.Batch batch = batches.get(i);
+                List<Long> sizes = batch.getPayloadSizes();
+                long withoutLast = batch.getUncompressedBytes() - sizes.get(sizes.size() - 1);
+                if (i < batches.size() - 1 && (batch.getUncompressedBytes() < maxBytes || withoutLast >= maxBytes)) {
+                    cutAtBudget = false;
+                }
+                coalesced = Math.max(coalesced, batch.getPayloadCount());
+            }
+            check(failures, "bytes", cutAtBudget && coalesced > 1 && total(batches) == 20,
+                    "expected batches cut at " + maxBytes + " bytes, got " + describe(batches));
+
+            // Oversized: a payload larger than batchMaxBytes is sent in a batch of its own
+            maxBytes = 256;
+            batches = run(stub, settings(stub, 100, NO_LINGER_MILLIS, maxBytes), body, 5);
+            boolean alone = batches.size() == 5;
+            for (StubIngestServer.Batch batch : batches) {
+                if (batch.getPayloadCount() != 1 || batch.getUncompressedBytes() <= maxBytes) {
+                    alone = false;
+                }
+            }
+            check(failures, "oversized", alone,
+                    "expected 5 batches of one above " + maxBytes + " bytes, got " + describe(batches));
+        }
+
+        System.out.println();
+        if (!failures.isEmpty()) {
+            System.out.println("FAILED: " + failures);
+            System.exit(1);
+        }
+        System.out.println("All batching checks passed.");
+    }
+
+    /**
+     * Sends payloads through a fresh service and returns the batches the stub received once it
+     * has counted all of them, or the timeout passed.
+     */
+    private static List<StubIngestServer.Batch> run(StubIngestServer stub, TreblleProperties properties, byte[] body,
+                                                    int payloads) throws InterruptedException {
+        stub.clearBatches();
+        TreblleService service = TreblleServiceRegistry.acquire("javax-servlet", properties);
+        try {
+            for (int i = 0; i < payloads; i++) {
+                TrebllePayload payload = service.createPayload(
+                        new ContentCachingRequestWrapper(
+                                StubServlet.request("POST", "/api/orders", "application/json", body), body.length),
+                        new ContentCachingResponseWrapper(StubServlet.response(), body.length),
+                        null, 12);
+                service.maskAndSendPayload(payload, body, body, null);
+            }
+            long deadline = System.currentTimeMillis() + ARRIVAL_TIMEOUT_MILLIS;
+            while (total(stub.getBatches()) < payloads && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            return stub.getBatches();
+        } finally {
+            TreblleServiceRegistry.release(service);
+        }
+    }
+
+    private static TreblleProperties settings(StubIngestServer stub, int batchSize, long lingerMillis, int maxBytes) {
+        return new TreblleProperties() {
+            @Override
+            public String getSdkToken() {
+                return "batching-test";
+            }
+
+            @Override
+            public String getApiKey() {
+                return "batching-test";
+            }
+
+            @Override
+            public String getCustomTreblleEndpoint() {
+                return stub.getEndpoint();
+            }
+
+            @Override
+            public int getThreadPoolCoreSize() {
+                return 1;
+            }
+
+            @Override
+            public int getThreadPoolMaxSize() {
+                return 1;
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            @Override
+            public long getBatchLingerInMillis() {
+                return lingerMillis;
+            }
+
+            @Override
+            public int getBatchMaxBytes() {
+                return maxBytes;
+            }
+        };
+    }
+
+    private static void check(List<String> failures, String name, boolean passed, String detail) {
+        System.out.printf("%-10s %s  %s%n", name, passed ? "PASS" : "FAIL", detail);
+        if (!passed) {
+            failures.add(name);
+        }
+    }
+
+    private static List<Integer> counts(List<StubIngestServer.Batch> batches) {
+        List<Integer> counts = new ArrayList<>();
+        for (StubIngestServer.Batch batch : batches) {
+            counts.add(batch.getPayloadCount());
+        }
+        return counts;
+    }
+
+    private static int total(List<StubIngestServer.Batch> batches) {
+        int total = 0;
+        for (StubIngestServer.Batch batch : batches) {
+            total += batch.getPayloadCount();
+        }
+        return total;
+    }
+
+    private static String describe(List<StubIngestServer.Batch> batches) {
+        List<String> parts = new ArrayList<>();
+        for (StubIngestServer.Batch batch : batches) {
+            parts.add(batch.getPayloadCount() + " (" + batch.getUncompressedBytes() + " bytes)");
+        }
+        return parts.toString();
+    }
+
+    private static List<Integer> list(Integer... values) {
+        List<Integer> list = new ArrayList<>();
+        for (Integer value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+}
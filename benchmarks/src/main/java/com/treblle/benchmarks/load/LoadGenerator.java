@@ -0,0 +1,179 @@
+package com.treblle.benchmarks.load;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPut;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load: each client thread sends the next request as soon as the previous one has
+ * been answered, over pooled keep-alive connections. The request mix mirrors a CRUD API:
+ * half of the requests list users, a quarter fetch one, a fifth update one with a JSON body
+ * carrying a password, and the rest ask for a missing user.
+ */
+final class LoadGenerator {
+
+    private final String baseUrl;
+    private final int threads;
+
+    LoadGenerator(String baseUrl, int threads) {
+        this.baseUrl = baseUrl;
+        this.threads = threads;
+    }
+
+    /**
+     * Runs the load for the given duration.
+     *
+     * @param durationMillis how long to send requests
+     * @param record         whether to keep the latencies
+     * @return request counts and, when recording, the sorted latencies
+     */
+    Result run(long durationMillis, boolean record) throws InterruptedException, IOException {
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(threads);
+        connections.setDefaultMaxPerRoute(threads);
+
+        try (CloseableHttpClient client = HttpClients.custom().setConnectionManager(connections).build()) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            List<Worker> workers = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                Worker worker = new Worker(client, deadline, record, i);
+                workers.add(worker);
+                worker.start();
+            }
+
+            long requests = 0;
+            long errors = 0;
+            int recorded = 0;
+            for (Worker worker : workers) {
+                worker.join();
+                requests += worker.requests;
+                errors += worker.errors;
+                recorded += worker.count;
+            }
+
+            long[] latencies = new long[recorded];
+            int offset = 0;
+            for (Worker worker : workers) {
+                System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+                offset += worker.count;
+            }
+            Arrays.sort(latencies);
+            return new Result(requests, errors, latencies, durationMillis);
+        }
+    }
+
+    private HttpUriRequestBase request(long sequence) {
+        int slot = (int) (sequence % 20);
+        if (slot < 10) {
+            return new HttpGet(baseUrl + "/users");
+        }
+        if (slot < 15) {
+            return new HttpGet(baseUrl + "/users/1");
+        }
+        if (slot < 19) {
+            HttpPut put = new HttpPut(baseUrl + "/users/2");
+            put.setEntity(new StringEntity(
+                    "{\"name\":\"Jane Smith\",\"email\":\"jane@example.com\",\"password\":\"s3cr3t-" + sequence + "\"}",
+                    ContentType.APPLICATION_JSON));
+            return put;
+        }
+        return new HttpGet(baseUrl + "/users/999");
+    }
+
+    private final class Worker extends Thread {
+
+        private final CloseableHttpClient client;
+        private final long deadline;
+        private final boolean record;
+        private long sequence;
+        private long requests;
+        private long errors;
+        private long[] latencies;
+        private int count;
+
+        Worker(CloseableHttpClient client, long deadline, boolean record, int index) {
+            super("load-" + index);
+            this.client = client;
+            this.deadline = deadline;
+            this.record = record;
+            this.sequence = index;
+            this.latencies = new long[record ? 65536 : 0];
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < deadline) {
+                HttpUriRequestBase request = request(sequence);
+                sequence += threads;
+                long start = System.nanoTime();
+                try {
+                    // The handler variant consumes the entity and releases the connection
+                    int status = client.execute(request, response -> {
+                        EntityUtils.consume(response.getEntity());
+                        return response.getCode();
+                    });
+                    if (status >= 500) {
+                        errors++;
+                    }
+                } catch (IOException e) {
+                    errors++;
+                }
+                long latency = System.nanoTime() - start;
+                requests++;
+                if (record) {
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = latency;
+                }
+            }
+        }
+    }
+
+    /**
+     * Outcome of one load run.
+     */
+    static final class Result {
+
+        final long requests;
+        final long errors;
+        final long[] sortedLatencies;
+        final long durationMillis;
+
+        Result(long requests, long errors, long[] sortedLatencies, long durationMillis) {
+            this.requests = requests;
+            this.errors = errors;
+            this.sortedLatencies = sortedLatencies;
+            this.durationMillis = durationMillis;
+        }
+
+        double throughput() {
+            return requests * 1000.0 / durationMillis;
+        }
+
+        /**
+         * @param percentile e.g. 99 for the 99th percentile
+         * @return latency in microseconds
+         */
+        double percentileMicros(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))] / 1000.0;
+        }
+    }
+
+}
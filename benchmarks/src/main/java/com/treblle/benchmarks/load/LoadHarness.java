@@ -0,0 +1,251 @@
+package com.treblle.benchmarks.load;
+
+import com.treblle.benchmarks.support.StubIngestServer;
+import com.treblle.common.configuration.OverflowPolicy;
+import com.treblle.common.infrastructure.TelemetryDispatcher;
+import com.treblle.javax.service.TreblleServiceImpl;
+import com.treblle.javax.service.TreblleServiceRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * End-to-end load test: boots the {@code test-app} user API in embedded Jetty and Jersey, once per
+ * scenario (no filter, servlet filter, container filter), drives it with concurrent clients and
+ * points the SDK at a local {@link StubIngestServer} that decompresses and counts the payloads.
+ * <p>
+ * For each scenario it reports throughput, p50 and p99 latency and the latency added over the
+ * baseline, how many of the requests arrived at the stub as payloads, how many the SDK dropped,
+ * how many threads the JVM started and the peak heap and thread count. Arguments are {@code key=value} pairs:
+ * <ul>
+ *   <li>{@code scenarios} - comma-separated, default {@code baseline,servlet,container}</li>
+ *   <li>{@code threads} - concurrent clients, default 16</li>
+ *   <li>{@code warmup} / {@code duration} - seconds of unrecorded and recorded load, default 5 and 20</li>
+ *   <li>{@code stub} - {@code healthy}, {@code slow}, {@code failing} (503), {@code throttled}
+ *       (429 for some requests) or {@code down} (accepts but never answers), default {@code healthy}</li>
+ *   <li>{@code stubLatency} - response delay of the {@code slow} stub in milliseconds, default 500</li>
+ *   <li>{@code stubThrottle} - fraction of requests the {@code throttled} stub rejects, default 0.5</li>
+ *   <li>{@code stubRetryAfter} - {@code Retry-After} seconds of the {@code failing} and {@code throttled}
+ *       stub, default none</li>
+ *   <li>{@code treblle.<property>} - any SDK setting, e.g., {@code treblle.transportMode=ASYNC}</li>
+ * </ul>
+ * <pre>
+ * java -cp target/benchmarks.jar com.treblle.benchmarks.load.LoadHarness stub=slow threads=32
+ * </pre>
+ */
+public final class LoadHarness {
+
+    private static final long DRAIN_TIMEOUT_MILLIS = 30_000;
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            if (key.startsWith("treblle.")) {
+                settings.put(key.substring("treblle.".length()), value);
+            } else {
+                options.put(key, value);
+            }
+        }
+
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        long warmupMillis = Long.parseLong(options.getOrDefault("warmup", "5")) * 1000;
+        long durationMillis = Long.parseLong(options.getOrDefault("duration", "20")) * 1000;
+        String stubMode = options.getOrDefault("stub", "healthy");
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String name : options.getOrDefault("scenarios", "baseline,servlet,container").split(",")) {
+            scenarios.add(Scenario.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+
+        try (StubIngestServer stub = StubIngestServer.http1(0)) {
+            stub.setCountPayloads(true);
+            switch (stubMode) {
+                case "healthy":
+                    break;
+                case "slow":
+                    stub.setLatencyMillis(Long.parseLong(options.getOrDefault("stubLatency", "500")));
+                    break;
+                case "failing":
+                    stub.setStatus(503);
+                    stub.setRetryAfter(options.get("stubRetryAfter"));
+                    break;
+                case "throttled":
+                    stub.setThrottleRatio(Double.parseDouble(options.getOrDefault("stubThrottle", "0.5")));
+                    stub.setRetryAfter(options.get("stubRetryAfter"));
+                    break;
+                case "down":
+                    stub.setHanging(true);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown stub mode: " + stubMode);
+            }
+
+            settings.putIfAbsent("sdkToken", "load-test");
+            settings.putIfAbsent("apiKey", "load-test");
+            settings.put("customTreblleEndpoint", stub.getEndpoint());
+
+            System.out.printf("Load test: %d clients, %ds warmup, %ds measured, stub %s, settings %s%n%n",
+                    threads, warmupMillis / 1000, durationMillis / 1000, stubMode, settings);
+
+            List<Report> reports = new ArrayList<>();
+            for (Scenario scenario : scenarios) {
+                reports.add(run(scenario, settings, stub, threads, warmupMillis, durationMillis));
+            }
+            print(reports);
+        }
+    }
+
+    private static Report run(Scenario scenario, Map<String, String> settings, StubIngestServer stub,
+                              int threads, long warmupMillis, long durationMillis) throws Exception {
+        System.out.printf("Running %s...%n", scenario.name().toLowerCase(Locale.ROOT));
+        long payloadsBefore = stub.getPayloadCount();
+        long stubRequestsBefore = stub.getRequestCount();
+
+        try (AppServer app = new AppServer(scenario, settings)) {
+            // Same properties, so the registry hands out the very service the filter uses
+            TreblleServiceImpl service = app.getTreblleProperties() == null ? null
+                    : (TreblleServiceImpl) TreblleServiceRegistry.acquire(scenario.sdkName(), app.getTreblleProperties());
+            try {
+                LoadGenerator load = new LoadGenerator(app.getBaseUrl(), threads);
+                LoadGenerator.Result warmup = load.run(warmupMillis, false);
+
+                System.gc();
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    pool.resetPeakUsage();
+                }
+                ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+                threadBean.resetPeakThreadCount();
+                long threadsStartedBefore = threadBean.getTotalStartedThreadCount();
+                LoadGenerator.Result measured = load.run(durationMillis, true);
+                long threadsStarted = threadBean.getTotalStartedThreadCount() - threadsStartedBefore;
+                int peakThreads = threadBean.getPeakThreadCount();
+                long peakHeap = 0;
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP) {
+                        peakHeap += pool.getPeakUsage().getUsed();
+                    }
+                }
+
+                long drops = 0;
+                long retries = 0;
+                if (service != null) {
+                    awaitDrain(service, stub);
+                    for (OverflowPolicy policy : OverflowPolicy.values()) {
+                        drops += service.getDispatcher().getDropCount(policy);
+                    }
+                    retries = service.getRetryBudget().getGrantedCount();
+                }
+                return new Report(scenario, measured, warmup.requests + measured.requests,
+                        stub.getPayloadCount() - payloadsBefore, stub.getRequestCount() - stubRequestsBefore,
+                        drops, retries, threadsStarted, peakThreads, peakHeap);
+            } finally {
+                if (service != null) {
+                    TreblleServiceRegistry.release(service);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the queue is empty, no retry is pending and the stub has stopped receiving, or
+     * the timeout passed.
+     */
+    private static void awaitDrain(TreblleServiceImpl service, StubIngestServer stub) throws InterruptedException {
+        TelemetryDispatcher<?> dispatcher = service.getDispatcher();
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        long lastCount = -1;
+        while (System.currentTimeMillis() < deadline) {
+            long count = stub.getRequestCount();
+            if (dispatcher.getQueueDepth() == 0 && service.getPendingRetryCount() == 0 && count == lastCount) {
+                return;
+            }
+            lastCount = count;
+            Thread.sleep(500);
+        }
+    }
+
+    private static void print(List<Report> reports) {
+        Report baseline = null;
+        for (Report report : reports) {
+            if (report.scenario == Scenario.BASELINE) {
+                baseline = report;
+            }
+        }
+
+        System.out.printf("%n%-10s %10s %8s %10s %10s %10s %10s %10s %9s %8s %8s %8s %8s %8s %9s%n",
+                "Scenario", "Req/s", "Errors", "p50 (us)", "p99 (us)", "+p50 (us)", "+p99 (us)",
+                "Payloads", "Delivered", "Dropped", "Posts", "Retries", "Started", "Threads", "Heap (MB)");
+        for (Report report : reports) {
+            double p50 = report.result.percentileMicros(50);
+            double p99 = report.result.percentileMicros(99);
+            System.out.printf("%-10s %10.0f %8d %10.0f %10.0f %10s %10s %10d %8.1f%% %8d %8d %8d %8d %8d %9d%n",
+                    report.scenario.name().toLowerCase(Locale.ROOT),
+                    report.result.throughput(),
+                    report.result.errors,
+                    p50,
+                    p99,
+                    baseline == null || report == baseline ? "-" : String.format("%.0f", p50 - baseline.result.percentileMicros(50)),
+                    baseline == null || report == baseline ? "-" : String.format("%.0f", p99 - baseline.result.percentileMicros(99)),
+                    report.payloads,
+                    report.scenario == Scenario.BASELINE ? 0.0 : report.payloads * 100.0 / report.totalRequests,
+                    report.drops,
+                    report.ingestRequests,
+                    report.retries,
+                    report.threadsStarted,
+                    report.peakThreads,
+                    report.peakHeapBytes / (1024 * 1024));
+        }
+        System.out.println();
+        System.out.println("Delivered: payloads acknowledged by the stub per request served, warmup included.");
+        System.out.println("Posts: requests the stub received, batches and retries included.");
+        System.out.println("Retries: sends the SDK repeated within its retry budget.");
+        System.out.println("Started: threads the JVM started during the measured run; Threads: their peak number alive.");
+        System.out.println("Heap: sum of the peak usage of all heap pools during the measured run.");
+    }
+
+    private static final class Report {
+
+        final Scenario scenario;
+        final LoadGenerator.Result result;
+        final long totalRequests;
+        final long payloads;
+        final long ingestRequests;
+        final long drops;
+        final long retries;
+        final long threadsStarted;
+        final int peakThreads;
+        final long peakHeapBytes;
+
+        Report(Scenario scenario, LoadGenerator.Result result, long totalRequests, long payloads,
+               long ingestRequests, long drops, long retries, long threadsStarted, int peakThreads,
+               long peakHeapBytes) {
+            this.scenario = scenario;
+            this.result = result;
+            this.totalRequests = totalRequests;
+            this.payloads = payloads;
+            this.ingestRequests = ingestRequests;
+            this.drops = drops;
+            this.retries = retries;
+            this.threadsStarted = threadsStarted;
+            this.peakThreads = peakThreads;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+    }
+
+}
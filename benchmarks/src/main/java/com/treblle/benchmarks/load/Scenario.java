@@ -0,0 +1,36 @@
+package com.treblle.benchmarks.load;
+
+/**
+ * How the application under load is instrumented.
+ */
+enum Scenario {
+
+    /**
+     * No Treblle filter; the reference for added latency.
+     */
+    BASELINE(null),
+
+    /**
+     * {@code TreblleServletFilter} in front of the Jersey servlet.
+     */
+    SERVLET("javax-servlet"),
+
+    /**
+     * {@code TreblleContainerFilter} registered with Jersey.
+     */
+    CONTAINER("javax-container");
+
+    private final String sdkName;
+
+    Scenario(String sdkName) {
+        this.sdkName = sdkName;
+    }
+
+    /**
+     * @return the SDK name the filter acquires its service under, or {@code null} without a filter
+     */
+    String sdkName() {
+        return sdkName;
+    }
+
+}
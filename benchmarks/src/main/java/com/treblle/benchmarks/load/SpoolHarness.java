@@ -0,0 +1,304 @@
+package com.treblle.benchmarks.load;
+
+import com.treblle.benchmarks.support.Fixtures;
+import com.treblle.benchmarks.support.StubIngestServer;
+import com.treblle.benchmarks.support.StubServlet;
+import com.treblle.common.configuration.OverflowPolicy;
+import com.treblle.common.configuration.TreblleProperties;
+import com.treblle.common.dto.TrebllePayload;
+import com.treblle.javax.infrastructure.ContentCachingRequestWrapper;
+import com.treblle.javax.infrastructure.ContentCachingResponseWrapper;
+import com.treblle.javax.service.TreblleServiceImpl;
+import com.treblle.javax.service.TreblleServiceMXBean;
+import com.treblle.javax.service.TreblleServiceRegistry;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks the on-disk spool end to end: sends payloads through a real {@link TreblleServiceImpl}
+ * to a {@link StubIngestServer} whose availability is toggled, and asserts how many payloads were
+ * spooled, replayed and delivered. Every check uses a fresh spool directory and one worker thread:
+ * <ul>
+ *   <li>{@code spill} - 40 payloads under {@code SPILL_TO_DISK} with a 4-slot queue and a slow
+ *       stub: the payloads that do not fit are spilled, and all 40 arrive, the spilled ones by replay</li>
+ *   <li>{@code recovery} - 10 payloads with {@code spoolEnabled} while the stub answers 503: all are
+ *       spooled and none delivered; once the stub answers 200 again, all 10 are replayed</li>
+ *   <li>{@code restart} - as {@code recovery}, but the service is shut down during the outage and a
+ *       new one is started on the same directory, which replays the 10 payloads exactly once</li>
+ *   <li>{@code eviction} - 1000 payloads during an outage into a spool capped at two 64KB segments:
+ *       the oldest segments are evicted, the spool stays under its cap, and exactly the payloads
+ *       left in it are replayed after recovery</li>
+ * </ul>
+ * Prints one line per check and exits with status 1 if any failed.
+ * <pre>
+ * java -cp target/benchmarks.jar com.treblle.benchmarks.load.SpoolHarness
+ * </pre>
+ */
+public final class SpoolHarness {
+
+    private static final long TIMEOUT_MILLIS = 60_000;
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    private SpoolHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        byte[] body = Fixtures.load("small");
+        List<String> failures = new ArrayList<>();
+
+        try (StubIngestServer stub = StubIngestServer.http1(0)) {
+            stub.setCountPayloads(true);
+
+            // Spill: a full queue spills to disk instead of dropping, and the drainer replays
+            Settings settings = new Settings(stub, tempDirectory());
+            settings.overflowPolicy = OverflowPolicy.SPILL_TO_DISK;
+            settings.queueSize = 4;
+            stub.setLatencyMillis(200);
+            long before = stub.getPayloadCount();
+            TreblleServiceImpl service = acquire(settings);
+            try {
+                send(service, body, 40);
+                long spilled = service.getDispatcher().getSpilledCount();
+                TreblleServiceImpl sending = service;
+                await(() -> stub.getPayloadCount() - before >= 40 && sending.getReplayedCount() >= spilled);
+                long delivered = stub.getPayloadCount() - before;
+                check(failures, "spill", spilled > 0 && delivered == 40 && service.getReplayedCount() == spilled,
+                        "spilled " + spilled + ", replayed " + service.getReplayedCount() + ", delivered " + delivered + " of 40");
+            } finally {
+                TreblleServiceRegistry.release(service);
+                stub.setLatencyMillis(0);
+            }
+
+            // Recovery: sends failing with 503 are spooled and replayed once the stub answers again
+            settings = new Settings(stub, tempDirectory());
+            settings.spoolEnabled = true;
+            long recoveryBefore = stub.getPayloadCount();
+            service = acquire(settings);
+            try {
+                stub.setStatus(503);
+                send(service, body, 10);
+                TreblleServiceImpl failing = service;
+                await(() -> failing.getSpooledCount() >= 10);
+                long deliveredDuringOutage = stub.getPayloadCount() - recoveryBefore;
+                stub.setStatus(200);
+                await(() -> failing.getReplayedCount() >= 10);
+                long delivered = stub.getPayloadCount() - recoveryBefore;
+                check(failures, "recovery", service.getSpooledCount() == 10 && deliveredDuringOutage == 0
+                                && service.getReplayedCount() == 10 && delivered == 10,
+                        "spooled " + service.getSpooledCount() + ", delivered " + deliveredDuringOutage
+                                + " during the outage, replayed " + service.getReplayedCount() + ", delivered " + delivered + " of 10");
+            } finally {
+                stub.setStatus(200);
+                TreblleServiceRegistry.release(service);
+            }
+
+            // Restart: records left in the spool are replayed by the next service on the directory
+            settings = new Settings(stub, tempDirectory());
+            settings.spoolEnabled = true;
+            long restartBefore = stub.getPayloadCount();
+            service = acquire(settings);
+            long spooled;
+            try {
+                stub.setStatus(503);
+                send(service, body, 10);
+                TreblleServiceImpl failing = service;
+                await(() -> failing.getSpooledCount() >= 10);
+                spooled = service.getSpooledCount();
+            } finally {
+                TreblleServiceRegistry.release(service);
+            }
+            stub.setStatus(200);
+            service = acquire(settings);
+            try {
+                TreblleServiceImpl restarted = service;
+                await(() -> restarted.getReplayedCount() >= 10);
+                // Give a duplicate replay the chance to show up
+                Thread.sleep(1000);
+                long delivered = stub.getPayloadCount() - restartBefore;
+                check(failures, "restart", spooled == 10 && service.getReplayedCount() == 10 && delivered == 10,
+                        "spooled " + spooled + " before the restart, replayed " + service.getReplayedCount()
+                                + " after it, delivered " + delivered + " of 10");
+            } finally {
+                TreblleServiceRegistry.release(service);
+            }
+
+            // Eviction: the size cap drops the oldest segments, and only what is left is replayed
+            settings = new Settings(stub, tempDirectory());
+            settings.spoolEnabled = true;
+            settings.queueSize = 1024;
+            settings.spoolMaxSizeInBytes = 2 * SEGMENT_BYTES;
+            long evictionBefore = stub.getPayloadCount();
+            service = acquire(settings);
+            try {
+                stub.setStatus(503);
+                send(service, body, 1000);
+                TreblleServiceImpl failing = service;
+                await(() -> failing.getSpooledCount() >= 1000);
+                TreblleServiceMXBean bean = mbean();
+                long left = bean.getSpoolRecordCount();
+                long evicted = bean.getSpoolEvictedCount();
+                long size = bean.getSpoolSizeInBytes();
+                stub.setStatus(200);
+                await(() -> failing.getReplayedCount() >= left);
+                Thread.sleep(1000);
+                long delivered = stub.getPayloadCount() - evictionBefore;
+                check(failures, "eviction", evicted > 0 && left + evicted == 1000 && size <= settings.spoolMaxSizeInBytes
+                                && service.getReplayedCount() == left && delivered == left,
+                        "evicted " + evicted + ", kept " + left + " in " + size + " bytes (cap "
+                                + settings.spoolMaxSizeInBytes + "), replayed " + service.getReplayedCount()
+                                + ", delivered " + delivered);
+            } finally {
+                stub.setStatus(200);
+                TreblleServiceRegistry.release(service);
+            }
+        }
+
+        System.out.println();
+        if (!failures.isEmpty()) {
+            System.out.println("FAILED: " + failures);
+            System.exit(1);
+        }
+        System.out.println("All spool checks passed.");
+    }
+
+    private static TreblleServiceImpl acquire(Settings settings) {
+        return (TreblleServiceImpl) TreblleServiceRegistry.acquire("javax-servlet", settings);
+    }
+
+    private static void send(TreblleServiceImpl service, byte[] body, int payloads) {
+        for (int i = 0; i < payloads; i++) {
+            TrebllePayload payload = service.createPayload(
+                    new ContentCachingRequestWrapper(
+                            StubServlet.request("POST", "/api/orders", "application/json", body), body.length),
+                    new ContentCachingResponseWrapper(StubServlet.response(), body.length),
+                    null, 12);
+            service.maskAndSendPayload(payload, body, body, null);
+        }
+    }
+
+    /**
+     * Waits until the condition holds or the timeout passed; the check that follows tells which.
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Returns the MBean of the only running service.
+     */
+    private static TreblleServiceMXBean mbean() throws MalformedObjectNameException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = server.queryNames(new ObjectName("com.treblle:type=TreblleService,*"), null);
+        if (names.size() != 1) {
+            throw new IllegalStateException("Expected one running service, found " + names);
+        }
+        return JMX.newMXBeanProxy(server, names.iterator().next(), TreblleServiceMXBean.class);
+    }
+
+    private static String tempDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("treblle-spool-check");
+        directory.toFile().deleteOnExit();
+        return directory.toString();
+    }
+
+    private static void check(List<String> failures, String name, boolean passed, String detail) {
+        System.out.printf("%-10s %s  %s%n", name, passed ? "PASS" : "FAIL", detail);
+        if (!passed) {
+            failures.add(name);
+        }
+    }
+
+    /**
+     * Settings of one check. Failed sends are not retried, so they go straight to the spool.
+     */
+    private static final class Settings implements TreblleProperties {
+
+        private final StubIngestServer stub;
+        private final String spoolDirectory;
+        OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        int queueSize = 100;
+        boolean spoolEnabled;
+        long spoolMaxSizeInBytes = 16 * SEGMENT_BYTES;
+
+        Settings(StubIngestServer stub, String spoolDirectory) {
+            this.stub = stub;
+            this.spoolDirectory = spoolDirectory;
+        }
+
+        @Override
+        public String getSdkToken() {
+            return "spool-test";
+        }
+
+        @Override
+        public String getApiKey() {
+            return "spool-test";
+        }
+
+        @Override
+        public String getCustomTreblleEndpoint() {
+            return stub.getEndpoint();
+        }
+
+        @Override
+        public int getThreadPoolCoreSize() {
+            return 1;
+        }
+
+        @Override
+        public int getThreadPoolMaxSize() {
+            return 1;
+        }
+
+        @Override
+        public int getThreadPoolQueueSize() {
+            return queueSize;
+        }
+
+        @Override
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        @Override
+        public boolean isSpoolEnabled() {
+            return spoolEnabled;
+        }
+
+        @Override
+        public String getSpoolDirectory() {
+            return spoolDirectory + File.separator + "spool";
+        }
+
+        @Override
+        public long getSpoolMaxSizeInBytes() {
+            return spoolMaxSizeInBytes;
+        }
+
+        @Override
+        public int getSpoolSegmentSizeInBytes() {
+            return SEGMENT_BYTES;
+        }
+
+        @Override
+        public int getMaxRetries() {
+            return 0;
+        }
+    }
+
+}
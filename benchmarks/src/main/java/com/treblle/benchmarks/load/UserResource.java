@@ -0,0 +1,111 @@
+package com.treblle.benchmarks.load;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code test-app} {@code UserResource}, ported to Java 8 and made safe for concurrent requests:
+ * users live in a {@link ConcurrentHashMap} and ids come from a counter. Users also carry a
+ * password, so the SDK has fields to mask.
+ */
+@Path("/users")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class UserResource {
+
+    private static final Map<Integer, User> users = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextId = new AtomicInteger(2);
+
+    static {
+        users.put(1, new User(1, "John Doe", "john@example.com"));
+        users.put(2, new User(2, "Jane Smith", "jane@example.com"));
+    }
+
+    @GET
+    public Response getAllUsers() {
+        return Response.ok(new ArrayList<>(users.values())).build();
+    }
+
+    @GET
+    @Path("/{id}")
+    public Response getUser(@PathParam("id") int id) {
+        User user = users.get(id);
+        if (user == null) {
+            return Response.status(404)
+                .entity(Collections.singletonMap("error", "User not found"))
+                .build();
+        }
+        return Response.ok(user).build();
+    }
+
+    @POST
+    public Response createUser(User user) {
+        if (user.getName() == null || user.getEmail() == null) {
+            return Response.status(400)
+                .entity(Collections.singletonMap("error", "Name and email are required"))
+                .build();
+        }
+        int id = nextId.incrementAndGet();
+        user.setId(id);
+        users.put(id, user);
+        return Response.status(201).entity(user).build();
+    }
+
+    @PUT
+    @Path("/{id}")
+    public Response updateUser(@PathParam("id") int id, User user) {
+        if (!users.containsKey(id)) {
+            return Response.status(404)
+                .entity(Collections.singletonMap("error", "User not found"))
+                .build();
+        }
+        user.setId(id);
+        users.put(id, user);
+        return Response.ok(user).build();
+    }
+
+    @DELETE
+    @Path("/{id}")
+    public Response deleteUser(@PathParam("id") int id) {
+        User removed = users.remove(id);
+        if (removed == null) {
+            return Response.status(404)
+                .entity(Collections.singletonMap("error", "User not found"))
+                .build();
+        }
+        return Response.ok(Collections.singletonMap("message", "User deleted successfully")).build();
+    }
+
+    public static class User {
+        private Integer id;
+        private String name;
+        private String email;
+        private String password;
+
+        public User() {}
+
+        public User(Integer id, String name, String email) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+        }
+
+        public Integer getId() { return id; }
+        public void setId(Integer id) { this.id = id; }
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getEmail() { return email; }
+        public void setEmail(String email) { this.email = email; }
+
+        public String getPassword() { return password; }
+        public void setPassword(String password) { this.password = password; }
+    }
+}
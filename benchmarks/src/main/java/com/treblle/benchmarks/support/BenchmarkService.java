@@ -0,0 +1,62 @@
+package com.treblle.benchmarks.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.treblle.common.configuration.TreblleProperties;
+import com.treblle.common.dto.TrebllePayload;
+import com.treblle.common.infrastructure.CaptureBuffer;
+import com.treblle.common.infrastructure.RawExchange;
+import com.treblle.common.service.AbstractTreblleService;
+import com.treblle.javax.infrastructure.ContentCachingRequestWrapper;
+import com.treblle.javax.infrastructure.ContentCachingResponseWrapper;
+
+/**
+ * Service with default settings that exposes payload building and discards sent payloads.
+ */
+public final class BenchmarkService extends AbstractTreblleService {
+
+    public BenchmarkService() {
+        super("javax-servlet", new TreblleProperties() {
+            @Override
+            public String getSdkToken() {
+                return "benchmark";
+            }
+
+            @Override
+            public String getApiKey() {
+                return "benchmark";
+            }
+        }, new ObjectMapper());
+    }
+
+    /**
+     * Builds and masks the payload of a snapshot, releasing its body buffers.
+     *
+     * @param exchange the snapshot
+     * @return the payload
+     */
+    public TrebllePayload build(RawExchange exchange) {
+        return buildPayload(exchange);
+    }
+
+    /**
+     * Builds the payload of a POST to {@code /api/orders} whose request and response bodies are both {@code body}.
+     *
+     * @param body the JSON body
+     * @return the payload
+     */
+    public TrebllePayload build(byte[] body) {
+        CaptureBuffer requestBody = new CaptureBuffer();
+        CaptureBuffer responseBody = new CaptureBuffer();
+        requestBody.write(body, 0, body.length);
+        responseBody.write(body, 0, body.length);
+        return build(RawExchange.capture(
+                new ContentCachingRequestWrapper(StubServlet.request("POST", "/api/orders", "application/json", body), body.length),
+                new ContentCachingResponseWrapper(StubServlet.response(), body.length),
+                requestBody, responseBody, null, System.currentTimeMillis(), 12));
+    }
+
+    @Override
+    protected void sendPayload(TrebllePayload payload) {
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.treblle.benchmarks.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Realistic JSON bodies for the benchmarks, loaded from {@code src/main/resources/fixtures}.
+ * <ul>
+ *   <li>{@code small} - a user profile with a password field (about 600 bytes)</li>
+ *   <li>{@code medium} - a page of 40 orders with card data and nested addresses (about 40KB)</li>
+ *   <li>{@code large} - the orders of the medium fixture repeated into one array of 2MB, the default
+ *       {@code maxBodySizeInBytes}</li>
+ * </ul>
+ */
+public final class Fixtures {
+
+    public static final int LARGE_SIZE = 2 * 1024 * 1024;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param name {@code small}, {@code medium} or {@code large}
+     * @return the fixture as UTF-8 bytes
+     */
+    public static byte[] load(String name) {
+        switch (name) {
+            case "small":
+                return resource("user-small.json");
+            case "medium":
+                return resource("orders-medium.json");
+            case "large":
+                return large();
+            default:
+                throw new IllegalArgumentException("Unknown fixture: " + name);
+        }
+    }
+
+    private static byte[] large() {
+        String medium = new String(resource("orders-medium.json"), StandardCharsets.UTF_8);
+        // Body of the "data" array, without its brackets
+        String orders = medium.substring(medium.indexOf('[') + 1, medium.lastIndexOf(']', medium.indexOf("\"meta\"")));
+
+        StringBuilder json = new StringBuilder(LARGE_SIZE + orders.length());
+        json.append('[');
+        while (json.length() + orders.length() + 2 <= LARGE_SIZE) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(orders);
+        }
+        json.append(']');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] resource(String file) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + file)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing fixture " + file);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                out.write(chunk, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,457 @@
+package com.treblle.benchmarks.support;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.AsyncServerBootstrap;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.AbstractBinAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncResponseBuilder;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the Treblle ingest API, speaking HTTP/1.1 or cleartext HTTP/2 (h2c with
+ * prior knowledge). Every request is answered with {@code 200 {}} after a fixed latency, without
+ * holding an I/O thread while waiting. Counts requests and connections so a benchmark can show
+ * how many sends shared a connection.
+ * <p>
+ * Its behavior can be changed while it runs, to simulate an ingest API that is slow
+ * ({@link #setLatencyMillis}), failing ({@link #setStatus}), throttling ({@link #setThrottleRatio},
+ * {@link #setRetryAfter}) or down behind a load balancer that accepts connections but never
+ * answers ({@link #setHanging}). With {@link #setCountPayloads}
+ * bodies are gunzipped and the payloads in them counted, a batch counting once per element. With
+ * {@link #setRecordBatches} as well, every counted request is kept as a {@link Batch}.
+ */
+public final class StubIngestServer implements Closeable {
+
+    private final HttpAsyncServer server;
+    private final ScheduledExecutorService delayer;
+    private final int port;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong payloads = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Queue<Batch> batches = new ConcurrentLinkedQueue<>();
+
+    private volatile long latencyMillis;
+    private volatile int status = 200;
+    private volatile boolean hanging;
+    private volatile boolean countPayloads;
+    private volatile boolean recordBatches;
+    private volatile double throttleRatio;
+    private volatile String retryAfter;
+
+    private StubIngestServer(boolean h2c, long latencyMillis) throws Exception {
+        this.latencyMillis = latencyMillis;
+        this.delayer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stub-ingest-delay");
+            t.setDaemon(true);
+            return t;
+        });
+
+        AsyncServerRequestHandler<Message<HttpRequest, byte[]>> handler = new AsyncServerRequestHandler<Message<HttpRequest, byte[]>>() {
+
+            @Override
+            public AsyncRequestConsumer<Message<HttpRequest, byte[]>> prepare(HttpRequest request, EntityDetails entityDetails,
+                                                                            HttpContext context) {
+                return new BasicRequestConsumer<>(entityDetails != null ? new BodyConsumer(countPayloads) : null);
+            }
+
+            @Override
+            public void handle(Message<HttpRequest, byte[]> message, ResponseTrigger trigger, HttpContext context) {
+                requests.incrementAndGet();
+                if (hanging) {
+                    // Never answer; the client runs into its read timeout
+                    return;
+                }
+                int responseStatus = throttleRatio > 0 && ThreadLocalRandom.current().nextDouble() < throttleRatio
+                        ? 429
+                        : status;
+                if (message.getBody() != null && responseStatus < 300) {
+                    count(message.getBody());
+                }
+                String responseRetryAfter = responseStatus >= 300 ? retryAfter : null;
+                Runnable respond = () -> {
+                    try {
+                        AsyncResponseBuilder response = AsyncResponseBuilder.create(responseStatus).setEntity("{}");
+                        if (responseRetryAfter != null) {
+                            response.setHeader("Retry-After", responseRetryAfter);
+                        }
+                        trigger.submitResponse(response.build(), context);
+                    } catch (HttpException | IOException ignored) {
+                        // Client went away
+                    }
+                };
+                long latency = StubIngestServer.this.latencyMillis;
+                if (latency > 0) {
+                    delayer.schedule(respond, latency, TimeUnit.MILLISECONDS);
+                } else {
+                    respond.run();
+                }
+            }
+        };
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(2).build();
+        IOSessionListener connectionCounter = new ConnectionCounter();
+        this.server = h2c
+                ? H2ServerBootstrap.bootstrap()
+                        .setIOReactorConfig(ioReactorConfig)
+                        .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_2)
+                        .setIOSessionListener(connectionCounter)
+                        .register("*", handler)
+                        .create()
+                : AsyncServerBootstrap.bootstrap()
+                        .setIOReactorConfig(ioReactorConfig)
+                        .setIOSessionListener(connectionCounter)
+                        .register("*", handler)
+                        .create();
+        server.start();
+        ListenerEndpoint endpoint = server.listen(new InetSocketAddress("127.0.0.1", 0), URIScheme.HTTP).get();
+        this.port = ((InetSocketAddress) endpoint.getAddress()).getPort();
+    }
+
+    /**
+     * Starts an HTTP/1.1 server on a free local port.
+     */
+    public static StubIngestServer http1(long latencyMillis) throws Exception {
+        return new StubIngestServer(false, latencyMillis);
+    }
+
+    /**
+     * Starts a cleartext HTTP/2 server on a free local port.
+     */
+    public static StubIngestServer h2c(long latencyMillis) throws Exception {
+        return new StubIngestServer(true, latencyMillis);
+    }
+
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + port + "/";
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of connections accepted since startup
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * @return number of payloads received and acknowledged with a success status, if counting
+     */
+    public long getPayloadCount() {
+        return payloads.get();
+    }
+
+    /**
+     * @return gzip-compressed bytes of the counted payloads
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * @return uncompressed bytes of the counted payloads
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param status status code of every response, e.g., 503 to simulate a failing ingest API
+     */
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * @param throttleRatio fraction of requests answered with 429, on top of {@link #setStatus}
+     */
+    public void setThrottleRatio(double throttleRatio) {
+        this.throttleRatio = throttleRatio;
+    }
+
+    /**
+     * @param retryAfter {@code Retry-After} value sent with every error response, or {@code null} for none
+     */
+    public void setRetryAfter(String retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @param hanging {@code true} to accept requests without ever answering them
+     */
+    public void setHanging(boolean hanging) {
+        this.hanging = hanging;
+    }
+
+    /**
+     * @param countPayloads {@code true} to gunzip and count the payloads of every request
+     */
+    public void setCountPayloads(boolean countPayloads) {
+        this.countPayloads = countPayloads;
+    }
+
+    /**
+     * @param recordBatches {@code true} to keep every counted request as a {@link Batch}
+     */
+    public void setRecordBatches(boolean recordBatches) {
+        this.recordBatches = recordBatches;
+    }
+
+    /**
+     * @return the recorded requests in the order they were counted
+     */
+    public List<Batch> getBatches() {
+        return new ArrayList<>(batches);
+    }
+
+    /**
+     * Forgets the recorded requests.
+     */
+    public void clearBatches() {
+        batches.clear();
+    }
+
+    @Override
+    public void close() {
+        server.close(CloseMode.IMMEDIATE);
+        delayer.shutdownNow();
+    }
+
+    private void count(byte[] body) {
+        boolean record = recordBatches;
+        List<Long> elementSizes = record ? new ArrayList<>() : null;
+        long count = 0;
+        long size = 0;
+        boolean array = false;
+        try (CountingInputStream json = new CountingInputStream(new GZIPInputStream(new ByteArrayInputStream(body)));
+             JsonParser parser = jsonFactory.createParser(json)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                array = true;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    long start = parser.currentTokenLocation().getByteOffset();
+                    parser.skipChildren();
+                    count++;
+                    if (record) {
+                        elementSizes.add(parser.currentLocation().getByteOffset() - start);
+                    }
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                count = 1;
+            }
+            size = json.count;
+            if (record && !array) {
+                elementSizes.add(size);
+            }
+        } catch (IOException e) {
+            // Not a gzip-compressed JSON payload; not counted
+            return;
+        }
+        payloads.addAndGet(count);
+        compressedBytes.addAndGet(body.length);
+        uncompressedBytes.addAndGet(size);
+        if (record) {
+            batches.add(new Batch(array, size, elementSizes, System.nanoTime()));
+        }
+    }
+
+    /**
+     * A counted request: a batch of payloads, or a single payload sent on its own.
+     */
+    public static final class Batch {
+
+        private final boolean array;
+        private final long uncompressedBytes;
+        private final List<Long> payloadSizes;
+        private final long receivedNanos;
+
+        private Batch(boolean array, long uncompressedBytes, List<Long> payloadSizes, long receivedNanos) {
+            this.array = array;
+            this.uncompressedBytes = uncompressedBytes;
+            this.payloadSizes = Collections.unmodifiableList(payloadSizes);
+            this.receivedNanos = receivedNanos;
+        }
+
+        /**
+         * @return {@code true} if the body was a JSON array of payloads
+         */
+        public boolean isArray() {
+            return array;
+        }
+
+        public int getPayloadCount() {
+            return payloadSizes.size();
+        }
+
+        /**
+         * @return uncompressed size of the body, brackets and commas included
+         */
+        public long getUncompressedBytes() {
+            return uncompressedBytes;
+        }
+
+        /**
+         * @return uncompressed size of each payload in the body, in order
+         */
+        public List<Long> getPayloadSizes() {
+            return payloadSizes;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} when the body was counted
+         */
+        public long getReceivedNanos() {
+            return receivedNanos;
+        }
+    }
+
+    /**
+     * Buffers the request body when payloads are counted, and discards it otherwise.
+     */
+    private static final class BodyConsumer extends AbstractBinAsyncEntityConsumer<byte[]> {
+
+        private final ByteArrayOutputStream buffer;
+
+        private BodyConsumer(boolean keep) {
+            this.buffer = keep ? new ByteArrayOutputStream() : null;
+        }
+
+        @Override
+        protected void streamStart(ContentType contentType) {
+        }
+
+        @Override
+        protected int capacityIncrement() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        protected void data(ByteBuffer src, boolean endOfStream) {
+            if (buffer == null) {
+                src.position(src.limit());
+                return;
+            }
+            while (src.hasRemaining()) {
+                buffer.write(src.get());
+            }
+        }
+
+        @Override
+        protected byte[] generateContent() {
+            return buffer != null ? buffer.toByteArray() : null;
+        }
+
+        @Override
+        public void releaseResources() {
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    private final class ConnectionCounter implements IOSessionListener {
+
+        @Override
+        public void connected(IOSession session) {
+            connections.incrementAndGet();
+        }
+
+        @Override
+        public void startTls(IOSession session) {
+        }
+
+        @Override
+        public void inputReady(IOSession session) {
+        }
+
+        @Override
+        public void outputReady(IOSession session) {
+        }
+
+        @Override
+        public void timeout(IOSession session) {
+        }
+
+        @Override
+        public void exception(IOSession session, Exception ex) {
+        }
+
+        @Override
+        public void disconnected(IOSession session) {
+        }
+    }
+
+}
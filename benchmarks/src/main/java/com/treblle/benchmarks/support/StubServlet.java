@@ -0,0 +1,165 @@
+package com.treblle.benchmarks.support;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal in-memory servlet request and response stand-ins for benchmarking the capture wrappers
+ * without a container. Unlisted methods return {@code null}, zero or {@code false}.
+ */
+public final class StubServlet {
+
+    private StubServlet() {
+    }
+
+    public static HttpServletRequest request(String method, String uri, String contentType, byte[] body) {
+        return request(method, "", uri, contentType, body);
+    }
+
+    public static HttpServletRequest request(String method, String contextPath, String uri, String contentType, byte[] body) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", contentType);
+        headers.put("User-Agent", "jmh");
+        headers.put("X-Forwarded-For", "10.0.0.1");
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                StubServlet.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class},
+                (proxy, invoked, args) -> {
+                    switch (invoked.getName()) {
+                        case "getMethod":
+                            return method;
+                        case "getRequestURI":
+                            return uri;
+                        case "getContextPath":
+                            return contextPath;
+                        case "getScheme":
+                            return "http";
+                        case "getServerName":
+                            return "localhost";
+                        case "getServerPort":
+                            return 8080;
+                        case "getProtocol":
+                            return "HTTP/1.1";
+                        case "getRemoteAddr":
+                            return "127.0.0.1";
+                        case "getContentType":
+                            return contentType;
+                        case "getContentLength":
+                            return body.length;
+                        case "getInputStream":
+                            return new ArrayInputStream(body);
+                        case "getHeader":
+                            return headers.get((String) args[0]);
+                        case "getHeaderNames":
+                            return Collections.enumeration(headers.keySet());
+                        case "getParameterMap":
+                            return Collections.emptyMap();
+                        default:
+                            return defaultValue(invoked.getReturnType());
+                    }
+                });
+    }
+
+    public static HttpServletResponse response() {
+        ServletOutputStream discard = new DiscardOutputStream();
+        return (HttpServletResponse) Proxy.newProxyInstance(
+                StubServlet.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class},
+                (proxy, invoked, args) -> {
+                    switch (invoked.getName()) {
+                        case "getOutputStream":
+                            return discard;
+                        case "getStatus":
+                            return 200;
+                        case "getCharacterEncoding":
+                            return "UTF-8";
+                        case "getHeaderNames":
+                            return Collections.emptyList();
+                        default:
+                            return defaultValue(invoked.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private static final class ArrayInputStream extends ServletInputStream {
+
+        private final byte[] data;
+        private int position;
+
+        ArrayInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int count = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return position >= data.length;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+        }
+    }
+
+    private static final class DiscardOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.treblle.common.configuration;
+
+import java.util.Locale;
+
+/**
+ * What the SDK does with a payload when the telemetry queue is full.
+ * <p>
+ * Whatever the policy, the request thread never sends data to Treblle itself.
+ *
+ * @see TreblleProperties#getOverflowPolicy()
+ * @since 2.1.0
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Discard the payload that does not fit.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discard the oldest queued payload to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Wait up to {@link TreblleProperties#getOverflowBlockTimeoutInMillis()} for room, then discard the payload.
+     */
+    BLOCK_WITH_TIMEOUT,
+
+    /**
+     * Append the captured exchange to the on-disk spool, which a background thread replays in order.
+     * <p>
+     * The request thread pays for copying the snapshot, bodies included, and for the write to the
+     * mapped spool segment; the payload is built, masked and compressed by the background thread.
+     */
+    SPILL_TO_DISK;
+
+    /**
+     * Parses a policy name case-insensitively, accepting dashes in place of underscores (e.g., {@code drop-oldest}).
+     *
+     * @param value the policy name
+     * @return the matching policy
+     * @throws IllegalArgumentException if no policy has that name
+     */
+    public static OverflowPolicy parse(String value) {
+        return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.treblle.common.configuration;
+
+import java.util.Locale;
+
+/**
+ * How payloads are sent to Treblle.
+ *
+ * @see TreblleProperties#getTransportMode()
+ * @since 2.1.0
+ */
+public enum TransportMode {
+
+    /**
+     * Classic blocking client: each send occupies a worker thread and a pooled connection until
+     * Treblle responds.
+     */
+    BLOCKING,
+
+    /**
+     * Non-blocking client on a few I/O threads. Workers hand the request off and move on,
+     * and HTTP/2 connections are multiplexed, so many sends can be in flight at once.
+     */
+    ASYNC;
+
+    /**
+     * Parses a mode name case-insensitively.
+     *
+     * @param value the mode name
+     * @return the matching mode
+     * @throws IllegalArgumentException if no mode has that name
+     */
+    public static TransportMode parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.treblle.common.configuration;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -81,6 +82,28 @@ public interface TreblleProperties {
         return Collections.emptyList();
     }
 
+    /**
+     * Returns HTTP methods to exclude from Treblle monitoring, e.g., {@code OPTIONS} or {@code HEAD}.
+     *
+     * @return List of methods, compared case-insensitively (empty list = monitor all methods)
+     * @since 2.1.0
+     */
+    default List<String> getExcludedMethods() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns request media types to exclude from Treblle monitoring, e.g., {@code multipart/form-data}
+     * for uploads. A range such as {@code image/*} covers all its subtypes; parameters of the
+     * request's {@code Content-Type} are ignored.
+     *
+     * @return List of media types, compared case-insensitively (empty list = monitor all types)
+     * @since 2.1.0
+     */
+    default List<String> getExcludedContentTypes() {
+        return Collections.emptyList();
+    }
+
     /**
      * Returns list of field names to mask in request/response bodies.
      * <p>
@@ -133,6 +156,55 @@ public interface TreblleProperties {
         return 2 * 1024 * 1024;  // 2MB default
     }
 
+    /**
+     * Returns how much of a body to capture per media type, as {@code mediaType=mode} entries.
+     * <p>
+     * The first entry whose media type matches the body's {@code Content-Type} wins, e.g.,
+     * {@code text/csv=SIZE,application/vnd.api+json=65536,image/*=NONE}. Modes are {@code FULL}
+     * (up to {@link #getMaxBodySizeInBytes()}), a number of bytes to capture as a prefix,
+     * {@code SIZE} (only count the bytes) and {@code NONE} (leave the stream untouched). After
+     * these entries, a prefix of {@link #getStreamingContentTypes() streamed} media types is
+     * captured, JSON is captured in full and other media types are only counted.
+     *
+     * @return List of body capture rules (empty list = built-in rules only)
+     * @since 2.1.0
+     */
+    default List<String> getBodyCapturePolicies() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the response media types that are streamed, such as server-sent events.
+     * <p>
+     * The servlet filter sends a streamed response to the client as it is written, flushes
+     * included, captures only the prefix allowed by {@link #getBodyCapturePolicies()} and then
+     * counts the remaining bytes. Unless a capture rule matches first, the prefix is
+     * {@link com.treblle.common.service.CapturePolicy#DEFAULT_STREAMING_PREFIX_BYTES} long. It
+     * is reported as text, with the JSON on each line masked. Its load time is the time to the
+     * first byte, not the duration of the stream. Matching works as in {@link #getBodyCapturePolicies()}, e.g.,
+     * {@code text/csv} or {@code application/vnd.export+json}.
+     *
+     * @return List of streamed media types, default is {@code text/event-stream} and {@code application/x-ndjson}
+     * @since 2.1.0
+     */
+    default List<String> getStreamingContentTypes() {
+        return Arrays.asList("text/event-stream", "application/x-ndjson");
+    }
+
+    /**
+     * Returns whether a streamed response is reported as soon as its prefix is captured,
+     * rather than when the stream ends.
+     * <p>
+     * An early report carries the bytes sent so far and is marked as streaming. Nothing is
+     * tracked for the stream afterwards, so a long-lived stream holds no capture state.
+     *
+     * @return {@code true} to report streams early, default is {@code false}
+     * @since 2.1.0
+     */
+    default boolean isReportStreamsEarly() {
+        return false;
+    }
+
     /**
      * Returns the core pool size for the async telemetry thread pool.
      * <p>
@@ -150,7 +222,7 @@ public interface TreblleProperties {
      * Returns the maximum pool size for the async telemetry thread pool.
      * <p>
      * This is the maximum number of worker threads allowed in the pool.
-     * When the queue is full, new threads are created up to this limit.
+     * When the queue is more than half full, new threads are created up to this limit.
      *
      * @return maximum pool size, default is 3
      * @since 2.0.3
@@ -162,9 +234,9 @@ public interface TreblleProperties {
     /**
      * Returns the queue size for the async telemetry thread pool.
      * <p>
-     * This is the maximum number of tasks that can be queued for execution.
-     * When both the queue and max threads are saturated, the CallerRunsPolicy
-     * kicks in and the calling thread executes the task.
+     * This is the maximum number of payloads waiting for a worker, rounded up to the next
+     * power of two. When the queue is full, {@link #getOverflowPolicy()} decides what happens
+     * to the payload.
      *
      * @return queue size, default is 100
      * @since 2.0.3
@@ -173,4 +245,314 @@ public interface TreblleProperties {
         return 100;
     }
 
+    /**
+     * Returns the maximum number of payloads coalesced into a single HTTP request.
+     * <p>
+     * A value greater than 1 enables batching: payloads are gathered for up to
+     * {@link #getBatchLingerInMillis()} milliseconds or until {@link #getBatchMaxBytes()}
+     * is reached, and are then shipped as a JSON array in one gzip-compressed POST.
+     * The configured endpoint must accept an array of payloads.
+     *
+     * @return maximum payloads per batch, default is 1 (batching disabled)
+     * @since 2.1.0
+     */
+    default int getBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Returns how long a batch may wait for more payloads before it is sent.
+     * <p>
+     * Only used when batching is enabled via {@link #getBatchSize()}.
+     *
+     * @return linger time in milliseconds, default is 200
+     * @since 2.1.0
+     */
+    default long getBatchLingerInMillis() {
+        return 200;
+    }
+
+    /**
+     * Returns the uncompressed byte budget of a single batch.
+     * <p>
+     * A batch is sent as soon as its uncompressed size reaches this budget, so the payload that
+     * crosses it is still part of the batch. A payload larger than the budget is sent alone.
+     * Only used when batching is enabled via {@link #getBatchSize()}.
+     *
+     * @return maximum uncompressed batch size in bytes, default is 1MB (1048576 bytes)
+     * @since 2.1.0
+     */
+    default int getBatchMaxBytes() {
+        return 1024 * 1024;
+    }
+
+    /**
+     * Returns what to do with a payload when the telemetry queue is full.
+     * <p>
+     * Accepted values are {@code DROP_NEWEST}, {@code DROP_OLDEST}, {@code BLOCK_WITH_TIMEOUT}
+     * and {@code SPILL_TO_DISK}. No policy lets the request thread send data to Treblle.
+     *
+     * @return overflow policy, default is {@link OverflowPolicy#DROP_NEWEST}
+     * @since 2.1.0
+     */
+    default OverflowPolicy getOverflowPolicy() {
+        return OverflowPolicy.DROP_NEWEST;
+    }
+
+    /**
+     * Returns how long a request thread waits for room in the telemetry queue.
+     * <p>
+     * Only used with {@link OverflowPolicy#BLOCK_WITH_TIMEOUT}.
+     *
+     * @return wait time in milliseconds, default is 10
+     * @since 2.1.0
+     */
+    default long getOverflowBlockTimeoutInMillis() {
+        return 10;
+    }
+
+    /**
+     * Returns the directory holding spooled payloads.
+     * <p>
+     * Used with {@link #isSpoolEnabled()} and {@link OverflowPolicy#SPILL_TO_DISK}. Every service
+     * needs its own directory.
+     *
+     * @return spool directory, default is {@code treblle-spool} under {@code java.io.tmpdir}
+     * @since 2.1.0
+     */
+    default String getSpoolDirectory() {
+        return System.getProperty("java.io.tmpdir") + java.io.File.separator + "treblle-spool";
+    }
+
+    /**
+     * Returns whether payloads that could not be delivered are kept on disk and replayed.
+     * <p>
+     * When enabled, payloads Treblle could not be reached for, or answered with a 408, 429 or 5xx
+     * status, are appended to a spool under {@link #getSpoolDirectory()}. A background thread
+     * replays them, oldest first, once the endpoint accepts payloads again. Spooled payloads
+     * survive restarts.
+     *
+     * @return true to spool undeliverable payloads, default is false
+     * @since 2.1.0
+     */
+    default boolean isSpoolEnabled() {
+        return false;
+    }
+
+    /**
+     * Returns the cap on the disk space of the spool. When it is reached, the oldest spooled
+     * payloads are discarded.
+     *
+     * @return maximum spool size in bytes, default is 256MB
+     * @since 2.1.0
+     */
+    default long getSpoolMaxSizeInBytes() {
+        return 256L * 1024 * 1024;
+    }
+
+    /**
+     * Returns the size of the memory-mapped segment files the spool is made of.
+     *
+     * @return segment size in bytes, default is 16MB
+     * @since 2.1.0
+     */
+    default int getSpoolSegmentSizeInBytes() {
+        return 16 * 1024 * 1024;
+    }
+
+    /**
+     * Returns after how many consecutive failed sends an ingest host is taken out of rotation.
+     * A host out of rotation receives a single probe once its backoff has passed; when every host
+     * is out of rotation, payloads fail fast instead of waiting for timeouts.
+     *
+     * @return consecutive failures that open a host's circuit, default is 5; 0 disables circuit breaking
+     * @since 2.1.0
+     */
+    default int getCircuitBreakerFailureThreshold() {
+        return 5;
+    }
+
+    /**
+     * Returns how often a send that timed out or was answered with 408, 429 or a 5xx status is
+     * retried. Retries wait with jittered exponential backoff, or as long as {@code Retry-After}
+     * asks, and are limited by {@link #getRetryBudgetPercent()}.
+     *
+     * @return maximum retries per send, default is 3; 0 disables retries
+     * @since 2.1.0
+     */
+    default int getMaxRetries() {
+        return 3;
+    }
+
+    /**
+     * Returns how many retries are allowed per 100 sends, across all sends of the service.
+     *
+     * @return retry budget in percent of sends, default is 10
+     * @since 2.1.0
+     */
+    default int getRetryBudgetPercent() {
+        return 10;
+    }
+
+    /**
+     * Returns the HTTP transport used to send payloads.
+     *
+     * @return transport mode, default is {@link TransportMode#BLOCKING}
+     * @since 2.1.0
+     */
+    default TransportMode getTransportMode() {
+        return TransportMode.BLOCKING;
+    }
+
+    /**
+     * Returns the maximum number of connections to Treblle across all endpoints.
+     *
+     * @return maximum total connections, default is 10
+     * @since 2.1.0
+     */
+    default int getMaxConnections() {
+        return 10;
+    }
+
+    /**
+     * Returns the maximum number of connections to a single Treblle endpoint.
+     * <p>
+     * With the blocking transport this caps the sends in flight per endpoint. With the async
+     * transport an HTTP/2 connection carries many sends at once.
+     *
+     * @return maximum connections per endpoint, default is 5
+     * @since 2.1.0
+     */
+    default int getMaxConnectionsPerRoute() {
+        return 5;
+    }
+
+    /**
+     * Returns the maximum number of sends the async transport keeps in flight.
+     * <p>
+     * When the limit is reached, workers wait for a response before sending more.
+     * Only used with {@link TransportMode#ASYNC}.
+     *
+     * @return maximum in-flight sends, default is 256
+     * @since 2.1.0
+     */
+    default int getAsyncMaxInFlight() {
+        return 256;
+    }
+
+    /**
+     * Returns the number of I/O threads of the async transport.
+     * <p>
+     * Only used with {@link TransportMode#ASYNC}.
+     *
+     * @return I/O thread count, default is 2
+     * @since 2.1.0
+     */
+    default int getAsyncIoThreads() {
+        return 2;
+    }
+
+    /**
+     * Returns whether the async transport sends everything over HTTP/2.
+     * <p>
+     * When enabled, each endpoint gets a single connection that multiplexes all sends in
+     * flight: HTTP/2 is negotiated through ALPN for {@code https://} endpoints and spoken with
+     * prior knowledge (h2c) for {@code http://} endpoints. The endpoint must support HTTP/2.
+     * When disabled, the transport uses a pool of up to {@link #getMaxConnectionsPerRoute()}
+     * connections per endpoint, each carrying one send at a time.
+     * Only used with {@link TransportMode#ASYNC}.
+     *
+     * @return {@code true} to force multiplexed HTTP/2, default is {@code false}
+     * @since 2.1.0
+     */
+    default boolean isForceHttp2() {
+        return false;
+    }
+
+    /**
+     * Returns the fraction of requests to monitor on routes without a route-specific rate.
+     * <p>
+     * Sampling is decided when a request arrives, before anything is captured; unsampled requests
+     * pass through untouched.
+     *
+     * @return sample rate between 0 and 1, default is 1 (monitor everything)
+     * @since 2.1.0
+     */
+    default double getSampleRate() {
+        return 1.0;
+    }
+
+    /**
+     * Returns sample rates for specific routes as {@code pattern=rate} entries.
+     * <p>
+     * Patterns use the same glob syntax as {@link #getExcludedPaths()}; the first matching entry
+     * wins, e.g., {@code /api/search/*=0.05}.
+     *
+     * @return List of route sample rates (empty list = {@link #getSampleRate()} for all routes)
+     * @since 2.1.0
+     */
+    default List<String> getRouteSampleRates() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the global budget of payloads per second.
+     * <p>
+     * When the observed traffic would yield more payloads than this after applying the sample
+     * rates, all rates are scaled down evenly to meet the budget, and back up when traffic drops.
+     *
+     * @return target payloads per second, default is 0 (no budget)
+     * @since 2.1.0
+     */
+    default int getTargetPayloadsPerSecond() {
+        return 0;
+    }
+
+    /**
+     * Returns the fraction of fast, successful requests to report once they completed.
+     * <p>
+     * Values below 1 enable tail sampling: bodies are still captured, but after the request
+     * completed, requests that failed with an exception, returned a status of at least
+     * {@link #getErrorStatusThreshold()} or took at least {@link #getSlowRequestThresholdInMillis()}
+     * are always reported, while the rest are reported at this rate. Dropped requests release
+     * their buffers immediately without being parsed, masked or serialized.
+     *
+     * @return tail sample rate between 0 and 1, default is 1 (report everything)
+     * @since 2.1.0
+     */
+    default double getTailSampleRate() {
+        return 1.0;
+    }
+
+    /**
+     * Returns the response time from which a request is always reported under tail sampling.
+     *
+     * @return threshold in milliseconds, default is 1000
+     * @since 2.1.0
+     */
+    default long getSlowRequestThresholdInMillis() {
+        return 1000;
+    }
+
+    /**
+     * Returns the lowest HTTP status that is always reported under tail sampling.
+     *
+     * @return status threshold, default is 500
+     * @since 2.1.0
+     */
+    default int getErrorStatusThreshold() {
+        return 500;
+    }
+
+    /**
+     * Returns whether each service registers its self-metrics as a JMX MBean named
+     * {@code com.treblle:type=TreblleService,sdk=<sdk name>,id=<n>}.
+     *
+     * @return true to expose metrics over JMX, default is true
+     * @since 2.1.0
+     */
+    default boolean isJmxEnabled() {
+        return true;
+    }
+
 }
@@ -0,0 +1,99 @@
+package com.treblle.common.configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Value snapshot of every setting of a {@link TreblleProperties}.
+ * <p>
+ * The snapshot reads each getter declared by {@link TreblleProperties} once, so a property
+ * added to the interface is included without further changes. Two snapshots are equal when
+ * all their settings are equal, whatever the implementations they were taken from.
+ *
+ * @since 2.1.0
+ */
+public final class TrebllePropertiesSnapshot {
+
+    private static final Method[] GETTERS = getters();
+
+    private final Object[] values;
+
+    private TrebllePropertiesSnapshot(Object[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Reads every setting of the given properties.
+     *
+     * @param properties the properties to snapshot
+     * @return the snapshot
+     * @throws IllegalStateException if a getter fails
+     */
+    public static TrebllePropertiesSnapshot of(TreblleProperties properties) {
+        Object[] values = new Object[GETTERS.length];
+        for (int i = 0; i < GETTERS.length; i++) {
+            Object value;
+            try {
+                value = GETTERS[i].invoke(properties);
+            } catch (InvocationTargetException exception) {
+                throw new IllegalStateException("Failed to read " + GETTERS[i].getName(), exception.getCause());
+            } catch (IllegalAccessException exception) {
+                throw new IllegalStateException("Failed to read " + GETTERS[i].getName(), exception);
+            }
+            // Copy lists so that later changes to the source do not alter the snapshot
+            if (value instanceof List) {
+                value = Collections.unmodifiableList(new ArrayList<>((List<?>) value));
+            }
+            values[i] = value;
+        }
+        return new TrebllePropertiesSnapshot(values);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other
+                || other instanceof TrebllePropertiesSnapshot
+                && Arrays.deepEquals(values, ((TrebllePropertiesSnapshot) other).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("TrebllePropertiesSnapshot{");
+        for (int i = 0; i < GETTERS.length; i++) {
+            String name = GETTERS[i].getName();
+            // Leave the credentials out of logs
+            if ("getApiKey".equals(name) || "getSdkToken".equals(name)) {
+                continue;
+            }
+            if (builder.charAt(builder.length() - 1) != '{') {
+                builder.append(", ");
+            }
+            builder.append(name).append('=').append(values[i]);
+        }
+        return builder.append('}').toString();
+    }
+
+    private static Method[] getters() {
+        List<Method> getters = new ArrayList<>();
+        for (Method method : TreblleProperties.class.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers()) && method.getParameterCount() == 0
+                    && method.getReturnType() != void.class) {
+                getters.add(method);
+            }
+        }
+        getters.sort(Comparator.comparing(Method::getName));
+        return getters.toArray(new Method[0]);
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.treblle.common.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import java.util.Map;
@@ -11,6 +12,9 @@ public class Response {
   private Long size;
   private Long load_time;
   private JsonNode body;
+  // Only sent for streamed responses, whose load_time is the time to the first byte
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Boolean streaming;
 
   public Map<String, String> getHeaders() {
     return headers;
@@ -52,4 +56,12 @@ public class Response {
     this.body = body;
   }
 
+  public Boolean getStreaming() {
+    return streaming;
+  }
+
+  public void setStreaming(Boolean streaming) {
+    this.streaming = streaming;
+  }
+
 }
@@ -0,0 +1,95 @@
+package com.treblle.common.infrastructure;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of fixed-size byte segments backing {@link CaptureBuffer}s.
+ * <p>
+ * Segments are handed out on demand and returned when a capture is released. When the pool is
+ * empty a new segment is allocated; when it already retains its maximum number of segments a
+ * returned segment is left to the garbage collector. The pool therefore never holds more than
+ * {@code segmentSize * maxRetainedSegments} bytes, while steady-state traffic reuses the same
+ * segments instead of allocating fresh buffers for every request.
+ *
+ * @since 2.1.0
+ */
+public final class ByteSegmentPool {
+
+    /**
+     * Default segment size, 8KB.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024;
+
+    /**
+     * Default number of retained segments, 1024 (8MB with the default segment size).
+     */
+    public static final int DEFAULT_MAX_RETAINED_SEGMENTS = 1024;
+
+    private static final ByteSegmentPool SHARED = new ByteSegmentPool(DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_RETAINED_SEGMENTS);
+
+    private final int segmentSize;
+    private final int maxRetainedSegments;
+    private final Queue<byte[]> segments = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger retained = new AtomicInteger();
+
+    public ByteSegmentPool(int segmentSize, int maxRetainedSegments) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        this.segmentSize = segmentSize;
+        this.maxRetainedSegments = maxRetainedSegments;
+    }
+
+    /**
+     * Returns the pool shared by all capture wrappers in this JVM.
+     *
+     * @return the shared pool
+     */
+    public static ByteSegmentPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a segment from the pool, allocating a new one if none is available.
+     *
+     * @return a segment of {@link #getSegmentSize()} bytes with undefined content
+     */
+    public byte[] acquire() {
+        byte[] segment = segments.poll();
+        if (segment == null) {
+            return new byte[segmentSize];
+        }
+        retained.decrementAndGet();
+        return segment;
+    }
+
+    /**
+     * Returns a segment to the pool. Segments of a foreign size are ignored.
+     *
+     * @param segment a segment previously obtained from {@link #acquire()}
+     */
+    public void release(byte[] segment) {
+        if (segment == null || segment.length != segmentSize) {
+            return;
+        }
+        if (retained.incrementAndGet() <= maxRetainedSegments) {
+            segments.offer(segment);
+        } else {
+            retained.decrementAndGet();
+        }
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @return number of idle segments currently held by the pool
+     */
+    public int getRetainedSegments() {
+        return retained.get();
+    }
+
+}
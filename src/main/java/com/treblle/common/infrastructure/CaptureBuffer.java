@@ -0,0 +1,138 @@
+package com.treblle.common.infrastructure;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer for captured request and response bodies, built from pooled segments.
+ * <p>
+ * Nothing is allocated until the first byte is written; the buffer then grows one segment at a
+ * time, drawing segments from a {@link ByteSegmentPool}. {@link #reset()} hands all segments back
+ * to the pool, so a request without a body costs no buffer memory at all and a request with a
+ * body only holds as many segments as its body needs, for as long as the capture is alive.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @since 2.1.0
+ */
+public class CaptureBuffer extends OutputStream {
+
+    private static final byte[][] NO_SEGMENTS = new byte[0][];
+
+    private final ByteSegmentPool pool;
+    private final int segmentSize;
+    private byte[][] segments = NO_SEGMENTS;
+    private int segmentCount;
+    private int size;
+
+    public CaptureBuffer() {
+        this(ByteSegmentPool.shared());
+    }
+
+    public CaptureBuffer(ByteSegmentPool pool) {
+        this.pool = pool;
+        this.segmentSize = pool.getSegmentSize();
+    }
+
+    @Override
+    public void write(int b) {
+        int offset = size % segmentSize;
+        if (offset == 0 && size / segmentSize == segmentCount) {
+            addSegment();
+        }
+        segments[size / segmentSize][offset] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            int offset = size % segmentSize;
+            if (offset == 0 && size / segmentSize == segmentCount) {
+                addSegment();
+            }
+            int chunk = Math.min(len, segmentSize - offset);
+            System.arraycopy(b, off, segments[size / segmentSize], offset, chunk);
+            size += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    /**
+     * @return number of bytes captured
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the captured bytes into a new array of exactly {@link #size()} bytes.
+     *
+     * @return the captured bytes
+     */
+    public byte[] toByteArray() {
+        byte[] result = new byte[size];
+        int copied = 0;
+        for (int i = 0; copied < size; i++) {
+            int chunk = Math.min(segmentSize, size - copied);
+            System.arraycopy(segments[i], 0, result, copied, chunk);
+            copied += chunk;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the captured bytes to the given stream.
+     *
+     * @param out the target stream
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        int written = 0;
+        for (int i = 0; written < size; i++) {
+            int chunk = Math.min(segmentSize, size - written);
+            out.write(segments[i], 0, chunk);
+            written += chunk;
+        }
+    }
+
+    /**
+     * Keeps only the first bytes and returns the segments no longer needed to the pool.
+     *
+     * @param newSize number of bytes to keep; larger values leave the buffer unchanged
+     */
+    public void truncate(int newSize) {
+        if (newSize >= size) {
+            return;
+        }
+        int keep = newSize <= 0 ? 0 : (newSize - 1) / segmentSize + 1;
+        for (int i = keep; i < segmentCount; i++) {
+            pool.release(segments[i]);
+            segments[i] = null;
+        }
+        segmentCount = keep;
+        size = Math.max(0, newSize);
+    }
+
+    /**
+     * Discards the captured bytes and returns all segments to the pool. The buffer stays usable.
+     */
+    public void reset() {
+        for (int i = 0; i < segmentCount; i++) {
+            pool.release(segments[i]);
+            segments[i] = null;
+        }
+        segmentCount = 0;
+        size = 0;
+    }
+
+    private void addSegment() {
+        if (segmentCount == segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(4, segments.length << 1));
+        }
+        segments[segmentCount++] = pool.acquire();
+    }
+
+}
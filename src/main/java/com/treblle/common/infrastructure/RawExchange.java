@@ -0,0 +1,558 @@
+package com.treblle.common.infrastructure;
+
+import com.treblle.common.utils.HttpUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of one request/response exchange, taken on the request thread.
+ * <p>
+ * Capturing copies only what cannot be read later: scalar request attributes, the header
+ * names and values as arrays, the status, the timings, the raw query string and, where the
+ * container has parsed them, the request parameters. The body
+ * capture buffers are handed over rather than copied. Everything that costs real work
+ * (decoding the query, validating addresses, formatting the timestamp, parsing and masking
+ * bodies) is left to whoever builds the payload from {@link #getRequest()} and
+ * {@link #getResponse()}, typically a telemetry worker.
+ * <p>
+ * The exchange owns its body buffers; {@link #release()} returns them to their pool once
+ * the bodies have been read.
+ * <p>
+ * {@link #writeTo} copies the snapshot as it is into a compact binary record, without building
+ * anything, and {@link #readFrom} restores it, e.g., to keep an exchange on disk until a worker
+ * has time for it. An exception is restored as a {@link RestoredException} carrying its type,
+ * message and top stack frame.
+ *
+ * @since 2.1.0
+ */
+public final class RawExchange {
+
+    private static final String[] NO_HEADERS = new String[0];
+    private static final String[][] NO_VALUES = new String[0][];
+    private static final int RECORD_VERSION = 1;
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final String protocol;
+    private final String method;
+    private final String url;
+    private final String queryString;
+    private final String[] parameterNames;
+    private final String[][] parameterValues;
+    private final String routePath;
+    private final String serverSoftware;
+    private final String remoteAddr;
+    private final String serverAddr;
+    private final String[] requestHeaderNames;
+    private final String[] requestHeaderValues;
+    private final int status;
+    private final String[] responseHeaderNames;
+    private final String[] responseHeaderValues;
+    private final long responseSize;
+    private final boolean streaming;
+    private final CaptureBuffer requestBody;
+    private final boolean requestBodyTruncated;
+    private final CaptureBuffer responseBody;
+    private final Exception exception;
+    private final long timestampMillis;
+    private final long responseTimeInMillis;
+
+    private RawExchange(RequestWrapper request, ResponseWrapper response,
+                        CaptureBuffer requestBody, CaptureBuffer responseBody,
+                        Exception exception, long timestampMillis, long responseTimeInMillis) {
+        this.protocol = request.getProtocol();
+        this.method = request.getMethod();
+        this.url = request.getUrl();
+        this.queryString = request.getQueryString();
+
+        // Containers recycle their parameter map with the request, so copy its entries
+        Map<String, String[]> parameters = request.getParameters();
+        if (parameters == null) {
+            this.parameterNames = null;
+            this.parameterValues = null;
+        } else if (parameters.isEmpty()) {
+            this.parameterNames = NO_HEADERS;
+            this.parameterValues = NO_VALUES;
+        } else {
+            this.parameterNames = new String[parameters.size()];
+            this.parameterValues = new String[parameterNames.length][];
+            int index = 0;
+            for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+                parameterNames[index] = parameter.getKey();
+                parameterValues[index] = parameter.getValue();
+                index++;
+            }
+        }
+
+        this.routePath = request.getRoutePath();
+        this.serverSoftware = request.getServerSoftware();
+        this.remoteAddr = request.getRemoteAddr();
+        this.serverAddr = request.getServerAddr();
+
+        String[] names = NO_HEADERS;
+        String[] values = NO_HEADERS;
+        Enumeration<String> headerNames = request.getHeaderNames();
+        int count = 0;
+        if (headerNames != null) {
+            while (headerNames.hasMoreElements()) {
+                String name = headerNames.nextElement();
+                if (name == null) {
+                    continue;
+                }
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, Math.max(16, count << 1));
+                    values = Arrays.copyOf(values, names.length);
+                }
+                names[count] = name;
+                values[count] = request.getHeader(name);
+                count++;
+            }
+        }
+        this.requestHeaderNames = count == names.length ? names : Arrays.copyOf(names, count);
+        this.requestHeaderValues = count == values.length ? values : Arrays.copyOf(values, count);
+
+        this.status = response.getStatus();
+        Collection<String> responseNames = response.getHeaderNames();
+        if (responseNames == null || responseNames.isEmpty()) {
+            this.responseHeaderNames = NO_HEADERS;
+            this.responseHeaderValues = NO_HEADERS;
+        } else {
+            this.responseHeaderNames = responseNames.toArray(NO_HEADERS);
+            this.responseHeaderValues = new String[responseHeaderNames.length];
+            for (int i = 0; i < responseHeaderNames.length; i++) {
+                if (responseHeaderNames[i] != null) {
+                    responseHeaderValues[i] = response.getHeader(responseHeaderNames[i]);
+                }
+            }
+        }
+
+        this.responseSize = response.getBodySize();
+        this.streaming = response.isStreaming();
+        this.requestBody = requestBody;
+        this.requestBodyTruncated = request.isBodyTruncated();
+        this.responseBody = responseBody;
+        this.exception = exception;
+        this.timestampMillis = timestampMillis;
+        this.responseTimeInMillis = responseTimeInMillis;
+    }
+
+    private RawExchange(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != RECORD_VERSION) {
+            throw new IOException("Unsupported exchange record version " + version);
+        }
+        this.protocol = readString(in);
+        this.method = readString(in);
+        this.url = readString(in);
+        this.queryString = readString(in);
+        this.parameterNames = readStrings(in);
+        if (parameterNames == null) {
+            this.parameterValues = null;
+        } else {
+            this.parameterValues = new String[parameterNames.length][];
+            for (int i = 0; i < parameterNames.length; i++) {
+                parameterValues[i] = readStrings(in);
+            }
+        }
+        this.routePath = readString(in);
+        this.serverSoftware = readString(in);
+        this.remoteAddr = readString(in);
+        this.serverAddr = readString(in);
+        this.requestHeaderNames = readStrings(in);
+        this.requestHeaderValues = readStrings(in);
+        this.status = in.readInt();
+        this.responseHeaderNames = readStrings(in);
+        this.responseHeaderValues = readStrings(in);
+        this.responseSize = in.readLong();
+        this.streaming = in.readBoolean();
+        this.requestBody = readBody(in);
+        this.requestBodyTruncated = in.readBoolean();
+        this.responseBody = readBody(in);
+        this.exception = in.readBoolean() ? new RestoredException(in) : null;
+        this.timestampMillis = in.readLong();
+        this.responseTimeInMillis = in.readLong();
+    }
+
+    /**
+     * Snapshots an exchange. Must be called on the thread that owns the wrappers, before they
+     * are recycled by the container.
+     *
+     * @param request              the request, read once and not retained
+     * @param response             the response, read once and not retained
+     * @param requestBody          captured request body, ownership passes to the exchange; may be {@code null}
+     * @param responseBody         captured response body, ownership passes to the exchange; may be {@code null}
+     * @param exception            exception thrown by the filter chain, or {@code null}
+     * @param timestampMillis      when the exchange completed, in epoch milliseconds
+     * @param responseTimeInMillis time spent in the filter chain, or to the first byte of a streamed response
+     * @return the snapshot
+     */
+    public static RawExchange capture(RequestWrapper request, ResponseWrapper response,
+                                      CaptureBuffer requestBody, CaptureBuffer responseBody,
+                                      Exception exception, long timestampMillis, long responseTimeInMillis) {
+        return new RawExchange(request, response, requestBody, responseBody,
+                exception, timestampMillis, responseTimeInMillis);
+    }
+
+    /**
+     * Restores an exchange written by {@link #writeTo}. Its bodies are held in buffers from the
+     * shared segment pool, to be released like those of a captured exchange.
+     *
+     * @param in stream positioned at the start of the record
+     * @return the restored exchange
+     * @throws IOException if the record cannot be read or was written by an incompatible version
+     */
+    public static RawExchange readFrom(DataInputStream in) throws IOException {
+        return new RawExchange(in);
+    }
+
+    /**
+     * Writes the snapshot, bodies included, as a binary record. Nothing is parsed, masked or
+     * formatted, and the exchange keeps its body buffers.
+     *
+     * @param out the target stream
+     * @throws IOException if writing fails
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(RECORD_VERSION);
+        writeString(out, protocol);
+        writeString(out, method);
+        writeString(out, url);
+        writeString(out, queryString);
+        writeStrings(out, parameterNames);
+        if (parameterNames != null) {
+            for (String[] values : parameterValues) {
+                writeStrings(out, values);
+            }
+        }
+        writeString(out, routePath);
+        writeString(out, serverSoftware);
+        writeString(out, remoteAddr);
+        writeString(out, serverAddr);
+        writeStrings(out, requestHeaderNames);
+        writeStrings(out, requestHeaderValues);
+        out.writeInt(status);
+        writeStrings(out, responseHeaderNames);
+        writeStrings(out, responseHeaderValues);
+        out.writeLong(responseSize);
+        out.writeBoolean(streaming);
+        writeBody(out, requestBody);
+        out.writeBoolean(requestBodyTruncated);
+        writeBody(out, responseBody);
+        out.writeBoolean(exception != null);
+        if (exception != null) {
+            RestoredException.write(out, exception);
+        }
+        out.writeLong(timestampMillis);
+        out.writeLong(responseTimeInMillis);
+    }
+
+    /**
+     * @return a read-only view of the captured request
+     */
+    public RequestWrapper getRequest() {
+        return new CapturedRequest();
+    }
+
+    /**
+     * @return a read-only view of the captured response
+     */
+    public ResponseWrapper getResponse() {
+        return new CapturedResponse();
+    }
+
+    /**
+     * Copies the captured request body.
+     *
+     * @return the body bytes, empty if nothing was captured
+     */
+    public byte[] getRequestBody() {
+        return requestBody != null ? requestBody.toByteArray() : NO_BODY;
+    }
+
+    /**
+     * Copies the captured response body.
+     *
+     * @return the body bytes, empty if nothing was captured
+     */
+    public byte[] getResponseBody() {
+        return responseBody != null ? responseBody.toByteArray() : NO_BODY;
+    }
+
+    /**
+     * @return whether the request body was longer than its capture limit, so only a prefix was captured
+     */
+    public boolean isRequestBodyTruncated() {
+        return requestBodyTruncated;
+    }
+
+    /**
+     * @return whether more response body bytes were sent than captured, so only a prefix was captured
+     */
+    public boolean isResponseBodyTruncated() {
+        return responseBody != null && responseBody.size() > 0 && responseSize > responseBody.size();
+    }
+
+    /**
+     * @return response body bytes sent, or {@code -1} if they were not counted
+     */
+    public long getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * @return whether the response is streamed and timed to its first byte
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public long getResponseTimeInMillis() {
+        return responseTimeInMillis;
+    }
+
+    /**
+     * Returns the body buffers to their pool. The bodies are empty afterwards.
+     */
+    public void release() {
+        if (requestBody != null) {
+            requestBody.reset();
+        }
+        if (responseBody != null) {
+            responseBody.reset();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        String[] values = count == 0 ? NO_HEADERS : new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+
+    private static void writeBody(DataOutputStream out, CaptureBuffer body) throws IOException {
+        if (body == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(body.size());
+        body.writeTo(out);
+    }
+
+    private static CaptureBuffer readBody(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        CaptureBuffer body = new CaptureBuffer();
+        byte[] chunk = new byte[Math.min(length, 8192)];
+        int remaining = length;
+        while (remaining > 0) {
+            int count = Math.min(remaining, chunk.length);
+            in.readFully(chunk, 0, count);
+            body.write(chunk, 0, count);
+            remaining -= count;
+        }
+        return body;
+    }
+
+    private static String find(String[] names, String[] values, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (name.equalsIgnoreCase(names[i])) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    private final class CapturedRequest implements RequestWrapper {
+
+        @Override
+        public String getProtocol() {
+            return protocol;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(Arrays.asList(requestHeaderNames));
+        }
+
+        @Override
+        public String getHeader(String header) {
+            return find(requestHeaderNames, requestHeaderValues, header);
+        }
+
+        @Override
+        public String getRemoteAddr() {
+            return remoteAddr;
+        }
+
+        @Override
+        public String getServerAddr() {
+            return serverAddr;
+        }
+
+        @Override
+        public Map<String, String> getQueryParams() {
+            if (parameterNames == null) {
+                return HttpUtils.parseQueryString(queryString);
+            }
+            Map<String, String> params = new LinkedHashMap<>(parameterNames.length * 2);
+            for (int i = 0; i < parameterNames.length; i++) {
+                params.put(parameterNames[i], String.join(",", parameterValues[i]));
+            }
+            return params;
+        }
+
+        @Override
+        public String getQueryString() {
+            return queryString;
+        }
+
+        @Override
+        public String getRoutePath() {
+            return routePath;
+        }
+
+        @Override
+        public String getServerSoftware() {
+            return serverSoftware;
+        }
+    }
+
+    private final class CapturedResponse implements ResponseWrapper {
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public Collection<String> getHeaderNames() {
+            return Arrays.asList(responseHeaderNames);
+        }
+
+        @Override
+        public String getHeader(String header) {
+            return find(responseHeaderNames, responseHeaderValues, header);
+        }
+
+        @Override
+        public long getBodySize() {
+            return responseSize;
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return streaming;
+        }
+    }
+
+    /**
+     * Stands in for the exception of an exchange restored with {@link #readFrom}: it reports the
+     * original exception's message and top stack frame, and {@link #getTypeName()} names its class.
+     */
+    public static final class RestoredException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String typeName;
+
+        private RestoredException(DataInputStream in) throws IOException {
+            super(readString(in), null, false, true);
+            this.typeName = readString(in);
+            if (in.readBoolean()) {
+                setStackTrace(new StackTraceElement[]{new StackTraceElement(
+                        readString(in), readString(in), readString(in), in.readInt())});
+            } else {
+                setStackTrace(new StackTraceElement[0]);
+            }
+        }
+
+        private static void write(DataOutputStream out, Exception exception) throws IOException {
+            // The exception may still be propagating on the request thread, so only read its trace
+            StackTraceElement[] stackTrace = exception.getStackTrace();
+            writeString(out, exception.getMessage());
+            writeString(out, exception instanceof RestoredException
+                    ? ((RestoredException) exception).typeName
+                    : exception.getClass().getName());
+            out.writeBoolean(stackTrace.length > 0);
+            if (stackTrace.length > 0) {
+                writeString(out, stackTrace[0].getClassName());
+                writeString(out, stackTrace[0].getMethodName());
+                writeString(out, stackTrace[0].getFileName());
+                out.writeInt(stackTrace[0].getLineNumber());
+            }
+        }
+
+        /**
+         * @return the class name of the original exception
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+
+    }
+
+}
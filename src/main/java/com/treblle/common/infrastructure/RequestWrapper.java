@@ -24,6 +24,39 @@ public interface RequestWrapper {
         return Collections.emptyMap();
     }
 
+    /**
+     * Returns the raw query string, which is cheaper to capture than {@link #getQueryParams()}
+     * and can be decoded later off the request thread.
+     *
+     * @return the query string without the leading {@code ?}, or {@code null} if there is none
+     * @since 2.1.0
+     */
+    default String getQueryString() {
+        return null;
+    }
+
+    /**
+     * Returns the parameters the container has already parsed, which for a form post include
+     * the {@code application/x-www-form-urlencoded} body as well as the query string.
+     *
+     * @return the parameters by name, or {@code null} if only the query string is available
+     * @since 2.1.0
+     */
+    default Map<String, String[]> getParameters() {
+        return null;
+    }
+
+    /**
+     * Returns whether the body was longer than the capture limit, so that only a prefix of it
+     * was captured.
+     *
+     * @return {@code true} if the captured body is cut off
+     * @since 2.1.0
+     */
+    default boolean isBodyTruncated() {
+        return false;
+    }
+
     default String getRoutePath() {
         return null;
     }
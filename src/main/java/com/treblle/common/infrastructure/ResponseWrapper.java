@@ -10,4 +10,25 @@ public interface ResponseWrapper {
 
     String getHeader(String header);
 
+    /**
+     * Returns how many body bytes were sent, which may be more than were captured.
+     *
+     * @return the body size, or {@code -1} if it was not counted
+     * @since 2.1.0
+     */
+    default long getBodySize() {
+        return -1;
+    }
+
+    /**
+     * Returns whether the response is streamed. Its response time is then the time to the first
+     * byte, and its body size may only cover the bytes sent before it was reported.
+     *
+     * @return {@code true} for a streamed response
+     * @since 2.1.0
+     */
+    default boolean isStreaming() {
+        return false;
+    }
+
 }
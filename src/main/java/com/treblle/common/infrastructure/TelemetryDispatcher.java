@@ -0,0 +1,352 @@
+package com.treblle.common.infrastructure;
+
+import com.treblle.common.configuration.OverflowPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hands telemetry from request threads to a small set of worker threads through a
+ * {@link TelemetryRingBuffer}.
+ * <p>
+ * {@link #submit(Object)} never blocks on the workers and never runs the handler itself. When the
+ * buffer is full the configured {@link OverflowPolicy} decides what happens, and every outcome
+ * other than a successful enqueue is counted per policy. Idle workers park and are unparked by
+ * the next submission; workers above the core count are started while the buffer is more than
+ * half full and stop again after a minute without work.
+ *
+ * @param <E> element type
+ * @since 2.1.0
+ */
+public class TelemetryDispatcher<E> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TelemetryDispatcher.class);
+
+    private static final long CORE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long EXTRA_WORKER_IDLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int DROP_OLDEST_ATTEMPTS = 16;
+
+    private final String threadNamePrefix;
+    private final TelemetryRingBuffer<E> buffer;
+    private final int coreWorkers;
+    private final int maxWorkers;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final Consumer<? super E> handler;
+    private final Consumer<? super E> spillHandler;
+    private final Consumer<? super E> discardHandler;
+
+    private final Queue<Thread> parkedWorkers = new ConcurrentLinkedQueue<>();
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+    private volatile boolean running = true;
+
+    private final LongAdder droppedNewest = new LongAdder();
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder spillFailures = new LongAdder();
+
+    /**
+     * Creates the dispatcher and starts its core workers.
+     *
+     * @param threadNamePrefix    prefix for worker thread names
+     * @param capacity            buffer capacity, rounded up to a power of two
+     * @param coreWorkers         workers that are always running
+     * @param maxWorkers          upper bound on workers
+     * @param overflowPolicy      what to do when the buffer is full
+     * @param blockTimeoutMillis  wait time for {@link OverflowPolicy#BLOCK_WITH_TIMEOUT}
+     * @param handler             processes each element on a worker thread
+     * @param spillHandler        stores an element for {@link OverflowPolicy#SPILL_TO_DISK}, may be {@code null} for other policies
+     * @param discardHandler      receives every element that is dropped instead of processed, e.g., to free its buffers; may be {@code null}
+     */
+    public TelemetryDispatcher(String threadNamePrefix, int capacity, int coreWorkers, int maxWorkers,
+                               OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+                               Consumer<? super E> handler,
+                               Consumer<? super E> spillHandler,
+                               Consumer<? super E> discardHandler) {
+        if (overflowPolicy == OverflowPolicy.SPILL_TO_DISK && spillHandler == null) {
+            throw new IllegalArgumentException("SPILL_TO_DISK requires a spill handler");
+        }
+        this.threadNamePrefix = threadNamePrefix;
+        this.buffer = new TelemetryRingBuffer<>(capacity);
+        this.coreWorkers = Math.max(1, coreWorkers);
+        this.maxWorkers = Math.max(this.coreWorkers, maxWorkers);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, blockTimeoutMillis));
+        this.handler = handler;
+        this.spillHandler = spillHandler;
+        this.discardHandler = discardHandler;
+
+        for (int i = 0; i < this.coreWorkers; i++) {
+            workerCount.incrementAndGet();
+            startWorker(true);
+        }
+    }
+
+    /**
+     * Queues an element for the workers, applying the overflow policy if the buffer is full.
+     *
+     * @param element the element, not {@code null}
+     * @return {@code true} if the element was queued or spilled, {@code false} if it was discarded
+     */
+    public boolean submit(E element) {
+        if (!running) {
+            discard(element);
+            return false;
+        }
+        if (buffer.offer(element)) {
+            signal();
+            return true;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                for (int attempt = 0; attempt < DROP_OLDEST_ATTEMPTS; attempt++) {
+                    E evicted = buffer.poll();
+                    if (evicted != null) {
+                        droppedOldest.increment();
+                        discard(evicted);
+                    }
+                    if (buffer.offer(element)) {
+                        signal();
+                        return true;
+                    }
+                }
+                // Lost every race against other producers; give up on this one instead
+                droppedNewest.increment();
+                discard(element);
+                return false;
+            case BLOCK_WITH_TIMEOUT:
+                signal();
+                long deadline = System.nanoTime() + blockTimeoutNanos;
+                while (!buffer.offer(element)) {
+                    if (System.nanoTime() - deadline >= 0 || !running) {
+                        timedOut.increment();
+                        discard(element);
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                }
+                signal();
+                return true;
+            case SPILL_TO_DISK:
+                try {
+                    spillHandler.accept(element);
+                    spilled.increment();
+                    return true;
+                } catch (RuntimeException exception) {
+                    spillFailures.increment();
+                    LOGGER.debug("Failed to spill telemetry to disk", exception);
+                    discard(element);
+                    return false;
+                }
+            case DROP_NEWEST:
+            default:
+                droppedNewest.increment();
+                discard(element);
+                return false;
+        }
+    }
+
+    /**
+     * Queues an element without ever waiting, for threads that must not stall, such as timers.
+     * When the buffer is full the element is discarded and counted under
+     * {@link OverflowPolicy#DROP_NEWEST}, whatever the configured policy.
+     *
+     * @param element the element, not {@code null}
+     * @return {@code true} if the element was queued, {@code false} if it was discarded
+     */
+    public boolean offer(E element) {
+        if (running && buffer.offer(element)) {
+            signal();
+            return true;
+        }
+        if (running) {
+            droppedNewest.increment();
+        }
+        discard(element);
+        return false;
+    }
+
+    /**
+     * Stops accepting elements and waits for the workers to drain the buffer.
+     * Workers still busy after the timeout are interrupted.
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of {@code timeout}
+     * @return {@code true} if all workers finished in time
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        running = false;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (Thread worker : workers) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedJoin(worker, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (workers.isEmpty()) {
+            return true;
+        }
+        LOGGER.warn("Telemetry workers did not finish in time, discarding {} queued payloads", buffer.size());
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Returns how many elements were lost under the given policy: discarded new elements for
+     * {@link OverflowPolicy#DROP_NEWEST}, evicted elements for {@link OverflowPolicy#DROP_OLDEST},
+     * elements that waited in vain for {@link OverflowPolicy#BLOCK_WITH_TIMEOUT} and elements
+     * that could not be written for {@link OverflowPolicy#SPILL_TO_DISK}.
+     *
+     * @param policy the policy
+     * @return number of lost elements since startup
+     */
+    public long getDropCount(OverflowPolicy policy) {
+        switch (policy) {
+            case DROP_OLDEST:
+                return droppedOldest.sum();
+            case BLOCK_WITH_TIMEOUT:
+                return timedOut.sum();
+            case SPILL_TO_DISK:
+                return spillFailures.sum();
+            case DROP_NEWEST:
+            default:
+                return droppedNewest.sum();
+        }
+    }
+
+    /**
+     * @return number of elements handed to the spill handler since startup
+     */
+    public long getSpilledCount() {
+        return spilled.sum();
+    }
+
+    /**
+     * @return approximate number of queued elements
+     */
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    public int getQueueCapacity() {
+        return buffer.capacity();
+    }
+
+    public int getWorkerCount() {
+        return workerCount.get();
+    }
+
+    /**
+     * @return approximate number of workers that are not parked waiting for work
+     */
+    public int getActiveWorkerCount() {
+        return Math.max(0, workerCount.get() - parkedWorkers.size());
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    private void signal() {
+        Thread parked = parkedWorkers.poll();
+        if (parked != null) {
+            LockSupport.unpark(parked);
+            return;
+        }
+        // Everyone is busy; add a worker if the backlog keeps growing
+        if (buffer.size() > buffer.capacity() >> 1) {
+            int current = workerCount.get();
+            if (current < maxWorkers && workerCount.compareAndSet(current, current + 1)) {
+                startWorker(false);
+            }
+        }
+    }
+
+    private void startWorker(boolean core) {
+        Thread thread = new Thread(() -> work(core), threadNamePrefix + threadNumber.getAndIncrement());
+        thread.setDaemon(true);  // Don't block JVM shutdown
+        workers.add(thread);
+        thread.start();
+    }
+
+    private void work(boolean core) {
+        final Thread self = Thread.currentThread();
+        long idleSince = System.nanoTime();
+        try {
+            while (true) {
+                E element = buffer.poll();
+                if (element != null) {
+                    dispatch(element);
+                    idleSince = System.nanoTime();
+                    continue;
+                }
+                if (!buffer.isEmpty()) {
+                    // A producer has claimed a slot but not yet published into it
+                    Thread.yield();
+                    continue;
+                }
+                if (!running || self.isInterrupted()) {
+                    return;
+                }
+                if (!core && System.nanoTime() - idleSince >= EXTRA_WORKER_IDLE_NANOS) {
+                    return;
+                }
+
+                parkedWorkers.offer(self);
+                // Re-check after registering so a submission racing with us is not missed
+                if (buffer.isEmpty() && running) {
+                    LockSupport.parkNanos(this, core ? CORE_PARK_NANOS : EXTRA_WORKER_IDLE_NANOS);
+                }
+                parkedWorkers.remove(self);
+            }
+        } finally {
+            workers.remove(self);
+            workerCount.decrementAndGet();
+        }
+    }
+
+    private void dispatch(E element) {
+        try {
+            handler.accept(element);
+        } catch (RuntimeException exception) {
+            LOGGER.error("Failed to process telemetry", exception);
+        }
+    }
+
+    private void discard(E element) {
+        if (discardHandler == null) {
+            return;
+        }
+        try {
+            discardHandler.accept(element);
+        } catch (RuntimeException exception) {
+            LOGGER.debug("Failed to discard telemetry", exception);
+        }
+    }
+
+}
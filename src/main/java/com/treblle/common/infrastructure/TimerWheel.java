@@ -0,0 +1,202 @@
+package com.treblle.common.infrastructure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel that hands elements to a handler once their delay has passed.
+ * <p>
+ * {@link #schedule} only appends to a lock-free queue, so it is cheap on any thread and never
+ * waits for the timer. A single daemon thread moves new elements into the wheel's slots and
+ * expires one slot per tick; an element with a longer delay than a full turn of the wheel stays
+ * in its slot for the remaining rounds. Delays are therefore rounded up to the tick. While
+ * nothing is scheduled, the thread parks instead of ticking.
+ * <p>
+ * The handler runs on the timer thread and should only hand the element on, e.g., to a
+ * {@link TelemetryDispatcher}.
+ *
+ * @param <E> element type
+ * @since 2.1.0
+ */
+public final class TimerWheel<E> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tickNanos;
+    private final Node<E>[] slots;
+    private final int mask;
+    private final Consumer<? super E> handler;
+    private final Queue<Node<E>> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread thread;
+    private final long startNanos;
+    private volatile boolean running = true;
+
+    // Owned by the timer thread
+    private long tick;
+
+    /**
+     * Creates the wheel and starts its thread.
+     *
+     * @param threadName name of the timer thread
+     * @param tickMillis resolution of the delays
+     * @param slotCount  slots per turn of the wheel, rounded up to a power of two
+     * @param handler    receives each element once its delay has passed, on the timer thread
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(String threadName, long tickMillis, int slotCount, Consumer<? super E> handler) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = 1;
+        while (size < slotCount) {
+            size <<= 1;
+        }
+        this.slots = (Node<E>[]) new Node<?>[size];
+        this.mask = size - 1;
+        this.handler = handler;
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Schedules an element.
+     *
+     * @param element    the element, not {@code null}
+     * @param delayMillis time after which the handler receives it
+     * @return {@code false} if the wheel was stopped and the element was not scheduled
+     */
+    public boolean schedule(E element, long delayMillis) {
+        if (!running) {
+            return false;
+        }
+        Node<E> node = new Node<>(element, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+        incoming.offer(node);
+        if (!running && incoming.remove(node)) {
+            // Lost the race with stop(), which will not see this element
+            return false;
+        }
+        if (pending.getAndIncrement() == 0) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * @return elements scheduled whose delay has not passed yet (gauge)
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the timer thread without running the handler for the elements still waiting.
+     *
+     * @return the elements whose delay had not passed, in no particular order
+     */
+    public List<E> stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<E> remaining = new ArrayList<>();
+        for (Node<E> node : incoming) {
+            remaining.add(node.element);
+        }
+        incoming.clear();
+        for (int i = 0; i < slots.length; i++) {
+            for (Node<E> node = slots[i]; node != null; node = node.next) {
+                remaining.add(node.element);
+            }
+            slots[i] = null;
+        }
+        pending.set(0);
+        return remaining;
+    }
+
+    private void run() {
+        while (running) {
+            if (pending.get() == 0) {
+                // Nothing to expire, so skip ticking until the next schedule() unparks us
+                LockSupport.park(this);
+                tick = Math.max(tick, (System.nanoTime() - startNanos) / tickNanos);
+                continue;
+            }
+
+            long wait = startNanos + tick * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+
+            transferIncoming();
+            expire(tick & mask);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Node<E> node;
+        while ((node = incoming.poll()) != null) {
+            long deadlineTick = Math.max(tick, (node.deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+            node.rounds = (deadlineTick - tick) >> Integer.numberOfTrailingZeros(slots.length);
+            int slot = (int) (deadlineTick & mask);
+            node.next = slots[slot];
+            slots[slot] = node;
+        }
+    }
+
+    private void expire(long slot) {
+        int index = (int) slot;
+        Node<E> previous = null;
+        Node<E> node = slots[index];
+        while (node != null) {
+            Node<E> next = node.next;
+            if (node.rounds > 0) {
+                node.rounds--;
+                previous = node;
+            } else {
+                if (previous == null) {
+                    slots[index] = next;
+                } else {
+                    previous.next = next;
+                }
+                pending.decrementAndGet();
+                try {
+                    handler.accept(node.element);
+                } catch (RuntimeException exception) {
+                    LOGGER.error("Failed to process scheduled telemetry", exception);
+                }
+            }
+            node = next;
+        }
+    }
+
+    private static final class Node<E> {
+
+        final E element;
+        final long deadlineNanos;
+        long rounds;
+        Node<E> next;
+
+        Node(E element, long deadlineNanos) {
+            this.element = element;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+    }
+
+}
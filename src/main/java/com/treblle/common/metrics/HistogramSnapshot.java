@@ -0,0 +1,81 @@
+package com.treblle.common.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point-in-time view of a {@link LatencyHistogram}, all durations in microseconds.
+ * <p>
+ * Exposed over JMX as composite data, so monitoring tools see each value as its own item.
+ *
+ * @since 2.1.0
+ */
+public final class HistogramSnapshot {
+
+    private final long count;
+    private final double meanMicros;
+    private final long maxMicros;
+    private final long p50Micros;
+    private final long p90Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long[] bucketCounts;
+
+    @ConstructorProperties({"count", "meanMicros", "maxMicros", "p50Micros", "p90Micros", "p99Micros",
+            "p999Micros", "bucketCounts"})
+    public HistogramSnapshot(long count, double meanMicros, long maxMicros, long p50Micros, long p90Micros,
+                             long p99Micros, long p999Micros, long[] bucketCounts) {
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.maxMicros = maxMicros;
+        this.p50Micros = p50Micros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.bucketCounts = bucketCounts.clone();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP90Micros() {
+        return p90Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getP999Micros() {
+        return p999Micros;
+    }
+
+    /**
+     * Returns the count of every bucket; see {@link LatencyHistogram#upperBoundMicros(int)} for
+     * their bounds.
+     *
+     * @return a copy of the bucket counts
+     */
+    public long[] getBucketCounts() {
+        return bucketCounts.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus",
+                count, meanMicros, p50Micros, p90Micros, p99Micros, p999Micros, maxMicros);
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.treblle.common.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket histogram of durations that any number of threads can record into.
+ * <p>
+ * Buckets grow by powers of two: bucket 0 counts durations below one microsecond and bucket
+ * {@code i} counts durations from {@code 2^(i-1)} up to {@code 2^i} microseconds; the last bucket
+ * also takes everything longer. Recording picks the bucket with a bit scan and increments
+ * striped counters, so it neither allocates nor contends on a single memory location. Percentiles
+ * are estimated as the upper bound of the bucket they fall into, which is at most twice the exact
+ * value.
+ *
+ * @since 2.1.0
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Number of buckets; the last one starts at about 18 minutes.
+     */
+    public static final int BUCKET_COUNT = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos the duration in nanoseconds; negative values count as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[bucketOf(nanos / 1000)].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Returns the exclusive upper bound of a bucket.
+     *
+     * @param bucket bucket index
+     * @return upper bound in microseconds, {@link Long#MAX_VALUE} for the last bucket
+     */
+    public static long upperBoundMicros(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Reads the current counts. Concurrent recordings may or may not be included.
+     *
+     * @return the counts, mean, maximum and estimated percentiles
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        long maxMicros = maxNanos.get() / 1000;
+        double meanMicros = count == 0 ? 0.0 : totalNanos.sum() / 1000.0 / count;
+        return new HistogramSnapshot(count, meanMicros, maxMicros,
+                percentile(counts, count, 0.5, maxMicros),
+                percentile(counts, count, 0.9, maxMicros),
+                percentile(counts, count, 0.99, maxMicros),
+                percentile(counts, count, 0.999, maxMicros),
+                counts);
+    }
+
+    /**
+     * Clears all counts. Recordings racing with the reset may survive it.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    private static int bucketOf(long micros) {
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+    }
+
+    private static long percentile(long[] counts, long count, double quantile, long maxMicros) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // The bucket bound overestimates; the maximum is exact
+                return Math.min(upperBoundMicros(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+}
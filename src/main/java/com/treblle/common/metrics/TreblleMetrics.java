@@ -0,0 +1,253 @@
+package com.treblle.common.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Self-metrics of one Treblle service: where the SDK spends time, how much it ships and how the
+ * Treblle endpoint answers.
+ * <p>
+ * Timings go into {@link LatencyHistogram}s and counts into {@link LongAdder}s, so recording on
+ * request threads and workers never allocates or locks. Reading takes a snapshot of whatever has
+ * been recorded so far.
+ * <ul>
+ *   <li><b>capture</b> - request-thread time spent buffering bodies and taking the snapshot</li>
+ *   <li><b>build</b> - time to turn a snapshot into a masked payload</li>
+ *   <li><b>enqueue</b> - request-thread time handing a snapshot or payload to the workers</li>
+ *   <li><b>mask</b> - time to parse and mask one body; both happen in a single streaming pass</li>
+ *   <li><b>serialize</b> - time to write one payload as compressed JSON</li>
+ *   <li><b>send</b> - time from posting a body until Treblle answered or the send failed</li>
+ * </ul>
+ *
+ * @since 2.1.0
+ */
+public final class TreblleMetrics {
+
+    /**
+     * Shared instance for services that do not expose metrics; what is recorded into it is never read.
+     */
+    public static final TreblleMetrics DETACHED = new TreblleMetrics();
+
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+
+    private final LatencyHistogram captureTime = new LatencyHistogram();
+    private final LatencyHistogram buildTime = new LatencyHistogram();
+    private final LatencyHistogram enqueueTime = new LatencyHistogram();
+    private final LatencyHistogram maskTime = new LatencyHistogram();
+    private final LatencyHistogram serializeTime = new LatencyHistogram();
+    private final LatencyHistogram sendTime = new LatencyHistogram();
+
+    private final LongAdder payloadsSent = new LongAdder();
+    private final LongAdder payloadsFailed = new LongAdder();
+    private final LongAdder requestsSent = new LongAdder();
+    private final LongAdder requestsFailed = new LongAdder();
+    private final LongAdder transportErrors = new LongAdder();
+    private final LongAdder originalBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+
+    // One counter per status code 100-599, and a last one for anything else
+    private final LongAdder[] statusCounts = new LongAdder[MAX_STATUS - MIN_STATUS + 2];
+
+    public TreblleMetrics() {
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+    }
+
+    public void recordCapture(long nanos) {
+        captureTime.record(nanos);
+    }
+
+    public void recordBuild(long nanos) {
+        buildTime.record(nanos);
+    }
+
+    public void recordEnqueue(long nanos) {
+        enqueueTime.record(nanos);
+    }
+
+    public void recordMask(long nanos) {
+        maskTime.record(nanos);
+    }
+
+    public void recordSerialize(long nanos) {
+        serializeTime.record(nanos);
+    }
+
+    /**
+     * Counts a body that could not be parsed as JSON and was therefore not reported.
+     */
+    public void recordParseFailure() {
+        parseFailures.increment();
+    }
+
+    /**
+     * Counts a body handed to the transport.
+     *
+     * @param uncompressedBytes size before compression, 0 if unknown
+     * @param compressed        size on the wire
+     */
+    public void recordShipped(long uncompressedBytes, long compressed) {
+        originalBytes.add(uncompressedBytes);
+        compressedBytes.add(compressed);
+    }
+
+    /**
+     * Records Treblle's answer to a send.
+     *
+     * @param statusCode   the HTTP status code
+     * @param payloadCount number of payloads in the body
+     * @param nanos        time from posting until the answer
+     */
+    public void recordResponse(int statusCode, int payloadCount, long nanos) {
+        sendTime.record(nanos);
+        int index = statusCode >= MIN_STATUS && statusCode <= MAX_STATUS
+                ? statusCode - MIN_STATUS
+                : statusCounts.length - 1;
+        statusCounts[index].increment();
+        if (statusCode >= 200 && statusCode < 300) {
+            requestsSent.increment();
+            payloadsSent.add(payloadCount);
+        } else {
+            requestsFailed.increment();
+            payloadsFailed.add(payloadCount);
+        }
+    }
+
+    /**
+     * Records a send that failed before Treblle answered.
+     *
+     * @param payloadCount number of payloads in the body
+     * @param nanos        time from posting until the failure
+     */
+    public void recordTransportError(int payloadCount, long nanos) {
+        sendTime.record(nanos);
+        transportErrors.increment();
+        requestsFailed.increment();
+        payloadsFailed.add(payloadCount);
+    }
+
+    /**
+     * Records payloads given up without a send because no Treblle host was available.
+     *
+     * @param payloadCount number of payloads in the body
+     */
+    public void recordShortCircuit(int payloadCount) {
+        payloadsFailed.add(payloadCount);
+    }
+
+    public LatencyHistogram getCaptureTime() {
+        return captureTime;
+    }
+
+    public LatencyHistogram getBuildTime() {
+        return buildTime;
+    }
+
+    public LatencyHistogram getEnqueueTime() {
+        return enqueueTime;
+    }
+
+    public LatencyHistogram getMaskTime() {
+        return maskTime;
+    }
+
+    public LatencyHistogram getSerializeTime() {
+        return serializeTime;
+    }
+
+    public LatencyHistogram getSendTime() {
+        return sendTime;
+    }
+
+    /**
+     * @return payloads Treblle accepted with a 2xx status
+     */
+    public long getPayloadsSent() {
+        return payloadsSent.sum();
+    }
+
+    /**
+     * @return payloads Treblle rejected, that could not be sent or that were given up without a send
+     */
+    public long getPayloadsFailed() {
+        return payloadsFailed.sum();
+    }
+
+    /**
+     * @return HTTP requests Treblle accepted; a batch is one request
+     */
+    public long getRequestsSent() {
+        return requestsSent.sum();
+    }
+
+    /**
+     * @return HTTP requests Treblle rejected or that could not be sent
+     */
+    public long getRequestsFailed() {
+        return requestsFailed.sum();
+    }
+
+    /**
+     * @return sends that failed without a response, e.g., on timeouts or refused connections
+     */
+    public long getTransportErrors() {
+        return transportErrors.sum();
+    }
+
+    public long getOriginalBytes() {
+        return originalBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    public long getParseFailures() {
+        return parseFailures.sum();
+    }
+
+    /**
+     * Returns how often the Treblle endpoint answered with each status code. Codes outside
+     * 100-599 are counted under 0.
+     *
+     * @return counts by status code, only codes seen so far, in ascending order
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (int i = 0; i < statusCounts.length; i++) {
+            long count = statusCounts[i].sum();
+            if (count > 0) {
+                counts.put(i == statusCounts.length - 1 ? 0 : i + MIN_STATUS, count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Clears all timings and counters.
+     */
+    public void reset() {
+        captureTime.reset();
+        buildTime.reset();
+        enqueueTime.reset();
+        maskTime.reset();
+        serializeTime.reset();
+        sendTime.reset();
+        payloadsSent.reset();
+        payloadsFailed.reset();
+        requestsSent.reset();
+        requestsFailed.reset();
+        transportErrors.reset();
+        originalBytes.reset();
+        compressedBytes.reset();
+        parseFailures.reset();
+        for (LongAdder statusCount : statusCounts) {
+            statusCount.reset();
+        }
+    }
+
+}
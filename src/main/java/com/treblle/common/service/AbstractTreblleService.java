@@ -2,10 +2,13 @@ package com.treblle.common.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
 import com.treblle.common.configuration.TreblleProperties;
 import com.treblle.common.dto.*;
+import com.treblle.common.infrastructure.RawExchange;
 import com.treblle.common.infrastructure.RequestWrapper;
 import com.treblle.common.infrastructure.ResponseWrapper;
+import com.treblle.common.metrics.TreblleMetrics;
 import com.treblle.common.utils.DataMasker;
 import com.treblle.common.utils.DataMaskerImpl;
 import com.treblle.common.utils.HttpUtils;
@@ -13,9 +16,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.security.SecureRandom;
+import java.time.Instant;
 import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.function.Consumer;
@@ -37,11 +39,9 @@ public abstract class AbstractTreblleService implements TreblleService {
             "https://sicario.treblle.com"
     };
 
-    private static final Random RANDOM = new SecureRandom();
-
     private static final String USER_AGENT_HEADER = "User-Agent";
 
-    protected static final String TREBLLE_API_KEY_HEADER = "X-API-Key";
+    public static final String TREBLLE_API_KEY_HEADER = "X-API-Key";
 
     private final String sdkName;
 
@@ -51,11 +51,49 @@ public abstract class AbstractTreblleService implements TreblleService {
 
     protected final ObjectMapper objectMapper;
 
+    protected final TreblleMetrics metrics = new TreblleMetrics();
+
+    protected final EndpointSelector endpointSelector;
+
+    private final CaptureClassifier captureClassifier;
+
+    private final CapturePolicy capturePolicy;
+
+    private final HeadSampler headSampler;
+
+    private final TailSampler tailSampler;
+
     public AbstractTreblleService(String sdkName, TreblleProperties treblleProperties, ObjectMapper objectMapper) {
         this.sdkName = sdkName;
         this.treblleProperties = treblleProperties;
         this.dataMasker = new DataMaskerImpl(treblleProperties);
         this.objectMapper = objectMapper;
+        this.captureClassifier = new CaptureClassifier(
+                treblleProperties.getExcludedPaths(),
+                treblleProperties.getExcludedMethods(),
+                treblleProperties.getExcludedContentTypes()
+        );
+        this.capturePolicy = new CapturePolicy(
+                treblleProperties.getBodyCapturePolicies(),
+                treblleProperties.getStreamingContentTypes(),
+                treblleProperties.getMaxBodySizeInBytes()
+        );
+        this.headSampler = new HeadSampler(
+                treblleProperties.getSampleRate(),
+                treblleProperties.getRouteSampleRates(),
+                treblleProperties.getTargetPayloadsPerSecond()
+        );
+        this.tailSampler = new TailSampler(
+                treblleProperties.getTailSampleRate(),
+                treblleProperties.getSlowRequestThresholdInMillis(),
+                treblleProperties.getErrorStatusThreshold()
+        );
+        this.endpointSelector = new EndpointSelector(
+                Optional.ofNullable(treblleProperties.getCustomTreblleEndpoint())
+                        .map(Collections::singletonList)
+                        .orElseGet(() -> Arrays.asList(TREBLLE_API_ENDPOINT)),
+                treblleProperties.getCircuitBreakerFailureThreshold()
+        );
 
         if (treblleProperties.getSdkToken() == null || treblleProperties.getSdkToken().isEmpty()) {
             throw new IllegalStateException("Treblle SDK Token is required.");
@@ -68,6 +106,11 @@ public abstract class AbstractTreblleService implements TreblleService {
 
     @Override
     public TrebllePayload createPayload(RequestWrapper httpRequest, ResponseWrapper httpResponse, Exception chainException, long responseTimeInMillis) {
+        return createPayload(httpRequest, httpResponse, chainException, responseTimeInMillis, System.currentTimeMillis());
+    }
+
+    private TrebllePayload createPayload(RequestWrapper httpRequest, ResponseWrapper httpResponse, Exception chainException,
+                                         long responseTimeInMillis, long timestampMillis) {
         final Language language = new Language();
         language.setName("java");
         language.setVersion(System.getProperty("java.version"));
@@ -85,7 +128,7 @@ public abstract class AbstractTreblleService implements TreblleService {
         server.setOs(os);
 
         final Request request = new Request();
-        request.setTimestamp(ZonedDateTime.now(ZoneOffset.UTC).format(DATE_TIME_FORMATTER));
+        request.setTimestamp(Instant.ofEpochMilli(timestampMillis).atZone(ZoneOffset.UTC).format(DATE_TIME_FORMATTER));
         request.setIp(filterIPv4Only(HttpUtils.getClientAddress(httpRequest)));
         request.setUser_agent(httpRequest.getHeader(USER_AGENT_HEADER));
         request.setMethod(httpRequest.getMethod());
@@ -141,22 +184,38 @@ public abstract class AbstractTreblleService implements TreblleService {
                                 (first, second) -> first)));
     }
 
-    protected String getRandomAPIEndpoint() {
-        int randomIndex = RANDOM.nextInt(TREBLLE_API_ENDPOINT.length);
-        return TREBLLE_API_ENDPOINT[randomIndex];
-    }
-
-    private JsonNode readBody(byte[] body, Consumer<RuntimeError> errorConsumer) {
+    /**
+     * Masks a raw JSON body by streaming its tokens, without materializing a tree. A body that
+     * is only a prefix is masked up to its last complete token and reported as a string, since
+     * it cannot be valid JSON. A streamed body, such as server-sent events, is masked line by
+     * line and reported as a string as well.
+     *
+     * @param truncated whether only a prefix of the body was captured
+     * @param streamed  whether the body is a prefix of a streamed response
+     * @return node wrapping the masked JSON bytes, or {@code null} for an empty or invalid body
+     */
+    private JsonNode maskBody(byte[] body, boolean truncated, boolean streamed, Consumer<RuntimeError> errorConsumer) {
         if (body != null && body.length > 0) {
+            final long start = System.nanoTime();
             try {
-                return objectMapper.readTree(body, 0, body.length);
+                if (streamed) {
+                    return TextNode.valueOf(dataMasker.maskLines(body, 0, body.length));
+                }
+                if (truncated) {
+                    String prefix = dataMasker.maskPrefix(body, 0, body.length);
+                    return prefix != null ? TextNode.valueOf(prefix) : null;
+                }
+                return dataMasker.mask(body, 0, body.length);
             } catch (IOException exception) {
+                metrics.recordParseFailure();
                 RuntimeError error = new RuntimeError();
                 error.setSource("onShutdown");
                 error.setType("INVALID_JSON");
                 error.setMessage("Invalid JSON format");
                 errorConsumer.accept(error);
                 return null;
+            } finally {
+                metrics.recordMask(System.nanoTime() - start);
             }
         } else {
             return null;
@@ -166,48 +225,104 @@ public abstract class AbstractTreblleService implements TreblleService {
     @Override
     public void maskAndSendPayload(TrebllePayload payload, byte[] requestBody, byte[] responseBody, Exception chainException) {
         try {
-            final List<RuntimeError> errors = new ArrayList<>(2);
-            Request request = payload.getData().getRequest();
-            request.setBody(
-                    Optional.ofNullable(readBody(requestBody, errors::add))
-                            .map(dataMasker::mask)
-                            .orElse(null)
-            );
-
-            Response response = payload.getData().getResponse();
-            response.setSize((long) responseBody.length);
-            response.setBody(
-                    Optional.ofNullable(readBody(responseBody, errors::add))
-                            .map(dataMasker::mask)
-                            .orElse(null)
-            );
-
-            if (chainException != null) {
-                StackTraceElement[] stackTrace = chainException.fillInStackTrace().getStackTrace();
-                final RuntimeError error = new RuntimeError();
-                error.setSource("onError");
-                error.setType(chainException.getClass().getName());
-                error.setMessage(chainException.getMessage());
-                error.setFile(Arrays.stream(stackTrace).findFirst().map(StackTraceElement::getFileName).orElse(null));
-                error.setLine(
-                        Arrays.stream(stackTrace)
-                                .findFirst()
-                                .map(StackTraceElement::getLineNumber)
-                                .orElse(null));
-
-                errors.add(error);
-            }
-
-            if (!errors.isEmpty()) {
-                payload.getData().setErrors(errors);
-            }
-
+            attachBodiesAndErrors(payload, requestBody, false, responseBody, false, false, chainException);
+            final long start = System.nanoTime();
             sendPayload(payload);
+            metrics.recordEnqueue(System.nanoTime() - start);
         } catch (Exception exception) {
             LOGGER.error("An error occurred while preparing data for Treblle.", exception);
         }
     }
 
+    @Override
+    public void submit(RawExchange exchange) {
+        try {
+            final long start = System.nanoTime();
+            sendExchange(exchange);
+            metrics.recordEnqueue(System.nanoTime() - start);
+        } catch (Exception exception) {
+            exchange.release();
+            LOGGER.error("An error occurred while preparing data for Treblle.", exception);
+        }
+    }
+
+    /**
+     * Builds the complete, masked payload for a captured exchange and releases the exchange's
+     * body buffers. This is where all per-request DTO work happens, so subclasses should call it
+     * off the request thread.
+     *
+     * @param exchange the captured exchange
+     * @return the payload, ready to serialize
+     * @since 2.1.0
+     */
+    protected TrebllePayload buildPayload(RawExchange exchange) {
+        final long start = System.nanoTime();
+        try {
+            TrebllePayload payload = createPayload(exchange.getRequest(), exchange.getResponse(),
+                    exchange.getException(), exchange.getResponseTimeInMillis(), exchange.getTimestampMillis());
+            byte[] responseBody = exchange.getResponseBody();
+            attachBodiesAndErrors(payload, exchange.getRequestBody(), exchange.isRequestBodyTruncated(),
+                    responseBody, exchange.isResponseBodyTruncated(), exchange.isStreaming(), exchange.getException());
+            if (exchange.getResponseSize() > responseBody.length) {
+                // Only a prefix, or nothing, was captured
+                payload.getData().getResponse().setSize(exchange.getResponseSize());
+            }
+            if (exchange.isStreaming()) {
+                payload.getData().getResponse().setStreaming(Boolean.TRUE);
+            }
+            return payload;
+        } finally {
+            exchange.release();
+            metrics.recordBuild(System.nanoTime() - start);
+        }
+    }
+
+    private void attachBodiesAndErrors(TrebllePayload payload, byte[] requestBody, boolean requestTruncated,
+                                       byte[] responseBody, boolean responseTruncated, boolean responseStreamed,
+                                       Exception chainException) {
+        final List<RuntimeError> errors = new ArrayList<>(2);
+        Request request = payload.getData().getRequest();
+        request.setBody(maskBody(requestBody, requestTruncated, false, errors::add));
+
+        Response response = payload.getData().getResponse();
+        response.setSize((long) responseBody.length);
+        response.setBody(maskBody(responseBody, responseTruncated, responseStreamed, errors::add));
+
+        if (chainException != null) {
+            // The exception may still be propagating on the request thread, so only read its trace
+            StackTraceElement[] stackTrace = chainException.getStackTrace();
+            final RuntimeError error = new RuntimeError();
+            error.setSource("onError");
+            error.setType(chainException instanceof RawExchange.RestoredException
+                    ? ((RawExchange.RestoredException) chainException).getTypeName()
+                    : chainException.getClass().getName());
+            error.setMessage(chainException.getMessage());
+            error.setFile(Arrays.stream(stackTrace).findFirst().map(StackTraceElement::getFileName).orElse(null));
+            error.setLine(
+                    Arrays.stream(stackTrace)
+                            .findFirst()
+                            .map(StackTraceElement::getLineNumber)
+                            .orElse(null));
+
+            errors.add(error);
+        }
+
+        if (!errors.isEmpty()) {
+            payload.getData().setErrors(errors);
+        }
+    }
+
+    /**
+     * Hands a captured exchange on for delivery. The default builds and sends the payload on
+     * the calling thread; asynchronous services override this to queue the exchange instead.
+     *
+     * @param exchange the captured exchange
+     * @since 2.1.0
+     */
+    protected void sendExchange(RawExchange exchange) {
+        sendPayload(buildPayload(exchange));
+    }
+
     protected abstract void sendPayload(TrebllePayload payload);
 
     @Override
@@ -215,9 +330,70 @@ public abstract class AbstractTreblleService implements TreblleService {
         return treblleProperties.getMaxBodySizeInBytes();
     }
 
+    @Override
+    public CapturePolicy getCapturePolicy() {
+        return capturePolicy;
+    }
+
     @Override
     public TreblleProperties getProperties() {
         return treblleProperties;
     }
 
+    @Override
+    public TreblleMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public boolean isExcluded(String requestPath) {
+        return captureClassifier.isPathExcluded(requestPath);
+    }
+
+    @Override
+    public boolean isSampled(String requestPath) {
+        return headSampler.isSampled(requestPath);
+    }
+
+    @Override
+    public boolean isCaptured(String requestUri, int pathOffset, String method, String contentType) {
+        return !captureClassifier.isExcluded(requestUri, pathOffset, method, contentType)
+                && headSampler.isSampled(requestUri, pathOffset);
+    }
+
+    /**
+     * Returns the head sampler, e.g., to read its decision counters and effective rates.
+     *
+     * @return the head sampler
+     * @since 2.1.0
+     */
+    public HeadSampler getHeadSampler() {
+        return headSampler;
+    }
+
+    @Override
+    public boolean isReported(int statusCode, Exception chainException, long responseTimeInMillis) {
+        return tailSampler.isReported(statusCode, chainException, responseTimeInMillis);
+    }
+
+    /**
+     * Returns the tail sampler, e.g., to read how many requests it kept and dropped.
+     *
+     * @return the tail sampler
+     * @since 2.1.0
+     */
+    public TailSampler getTailSampler() {
+        return tailSampler;
+    }
+
+    /**
+     * Returns the selector that picks the ingest host per send, e.g., to read its circuit counters.
+     *
+     * @return the endpoint selector
+     * @since 2.1.0
+     */
+    public EndpointSelector getEndpointSelector() {
+        return endpointSelector;
+    }
+
 }
@@ -0,0 +1,120 @@
+package com.treblle.common.service;
+
+import com.treblle.common.utils.CompiledPathMatcher;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides per request, before any wrapper or buffer is created, whether the request is excluded
+ * from monitoring by its path, its method or the media type of its body.
+ * <p>
+ * Every check reads values the container already holds and does not allocate: the path is matched
+ * in place within the request URI, methods are compared against a small array and media types by
+ * region, ignoring case and parameters. An excluded request is handed to the chain untouched, so
+ * it costs nothing beyond this decision.
+ *
+ * @since 2.1.0
+ */
+public final class CaptureClassifier {
+
+    private static final String[] NONE = new String[0];
+
+    private final CompiledPathMatcher pathMatcher;
+    private final String[] methods;
+    private final String[] mediaTypes;
+    private final boolean[] mediaTypeRanges;
+
+    /**
+     * Creates a classifier.
+     *
+     * @param excludedPaths        glob-style path patterns, may be {@code null}
+     * @param excludedMethods      HTTP methods, case-insensitive, may be {@code null}
+     * @param excludedContentTypes media types such as {@code multipart/form-data}, or ranges such as
+     *                             {@code image/*}, case-insensitive, may be {@code null}
+     */
+    public CaptureClassifier(List<String> excludedPaths, List<String> excludedMethods, List<String> excludedContentTypes) {
+        this.pathMatcher = CompiledPathMatcher.compile(excludedPaths);
+        this.methods = normalize(excludedMethods);
+
+        String[] types = normalize(excludedContentTypes);
+        this.mediaTypes = new String[types.length];
+        this.mediaTypeRanges = new boolean[types.length];
+        for (int i = 0; i < types.length; i++) {
+            // "image/*" matches every subtype; keep "image/" and compare it as a prefix
+            mediaTypeRanges[i] = types[i].endsWith("/*");
+            mediaTypes[i] = mediaTypeRanges[i] ? types[i].substring(0, types[i].length() - 1) : types[i];
+        }
+    }
+
+    /**
+     * Checks whether a request is excluded from monitoring.
+     *
+     * @param requestUri  the request URI, e.g., {@code /app/api/users}
+     * @param pathOffset  index at which the path below the context path starts within the URI
+     * @param method      the HTTP method
+     * @param contentType the request's {@code Content-Type} header, or {@code null}
+     * @return {@code true} if the request must not be captured
+     */
+    public boolean isExcluded(String requestUri, int pathOffset, String method, String contentType) {
+        return isMethodExcluded(method)
+                || isContentTypeExcluded(contentType)
+                || pathMatcher.matches(requestUri, pathOffset);
+    }
+
+    /**
+     * Checks whether a path matches one of the excluded path patterns.
+     *
+     * @param requestPath the request path (e.g., "/api/users")
+     * @return {@code true} if the path is excluded
+     */
+    public boolean isPathExcluded(String requestPath) {
+        return pathMatcher.matches(requestPath);
+    }
+
+    private boolean isMethodExcluded(String method) {
+        if (method == null) {
+            return false;
+        }
+        for (String excluded : methods) {
+            if (excluded.equalsIgnoreCase(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isContentTypeExcluded(String contentType) {
+        if (contentType == null || mediaTypes.length == 0) {
+            return false;
+        }
+        int start = 0;
+        while (start < contentType.length() && contentType.charAt(start) == ' ') {
+            start++;
+        }
+        for (int i = 0; i < mediaTypes.length; i++) {
+            String excluded = mediaTypes[i];
+            if (!contentType.regionMatches(true, start, excluded, 0, excluded.length())) {
+                continue;
+            }
+            int end = start + excluded.length();
+            // A full type must not be followed by more of the subtype, e.g., "text/csv" by "x"
+            if (mediaTypeRanges[i] || end == contentType.length()
+                    || contentType.charAt(end) == ';' || contentType.charAt(end) == ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] normalize(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return NONE;
+        }
+        return values.stream()
+                .filter(value -> value != null && !value.trim().isEmpty())
+                .map(value -> value.trim().toLowerCase(Locale.ROOT))
+                .toArray(String[]::new);
+    }
+
+}
@@ -0,0 +1,261 @@
+package com.treblle.common.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides, from a body's {@code Content-Type} and {@code Content-Encoding}, how much of it is
+ * captured, before any byte is copied.
+ * <p>
+ * Rules are {@code mediaType=mode} entries; the first one whose media type matches wins. Media
+ * types may be exact ({@code application/json}), ranges ({@code text/*}, {@code *}{@code /*}) or
+ * structured syntax suffixes ({@code *}{@code /*+json}); parameters such as {@code charset} are
+ * ignored. Modes are:
+ * <ul>
+ *   <li>{@code FULL} - capture up to {@code maxBodySizeInBytes}</li>
+ *   <li>a number of bytes - capture only that prefix, at most {@code maxBodySizeInBytes}</li>
+ *   <li>{@code SIZE} - copy nothing, only count the bytes</li>
+ *   <li>{@code NONE} - leave the stream untouched, not even counting</li>
+ * </ul>
+ * The configured rules are followed by built-in ones that capture JSON in full and only count
+ * everything else, since Treblle can only show JSON bodies. Bodies without a media type are
+ * captured in full. A body with a {@code Content-Encoding} other than {@code identity} is
+ * compressed, so it is only counted at most.
+ * <p>
+ * The policy also tells which response media types are streamed, such as server-sent events, so
+ * that they are sent to the client as they are written rather than buffered. Between the
+ * configured and the built-in rules, streamed media types get a prefix of
+ * {@link #DEFAULT_STREAMING_PREFIX_BYTES}, so a stream is not merely counted by default.
+ * <p>
+ * Decisions do not allocate. Instances are immutable and thread-safe.
+ *
+ * @since 2.1.0
+ */
+public final class CapturePolicy {
+
+    /**
+     * Limit that tells capture wrappers to leave the stream untouched.
+     */
+    public static final int SKIP = -1;
+
+    /**
+     * Bytes captured of a streamed media type that no configured rule matches.
+     *
+     * @since 2.1.0
+     */
+    public static final int DEFAULT_STREAMING_PREFIX_BYTES = 4096;
+
+    private static final List<String> BUILT_IN_RULES = Arrays.asList(
+            "application/json=FULL",
+            "*/*+json=FULL",
+            "*/*=SIZE"
+    );
+
+    private final int maxBodySizeInBytes;
+    private final Rule[] rules;
+    private final Rule[] streamingTypes;
+
+    /**
+     * Creates a policy without streamed media types.
+     *
+     * @param rules              {@code mediaType=mode} entries, first match wins, may be {@code null}
+     * @param maxBodySizeInBytes limit of {@code FULL} captures and cap of prefix captures
+     * @throws IllegalStateException if a rule is malformed
+     */
+    public CapturePolicy(List<String> rules, int maxBodySizeInBytes) {
+        this(rules, null, maxBodySizeInBytes);
+    }
+
+    /**
+     * Creates a policy.
+     *
+     * @param rules                 {@code mediaType=mode} entries, first match wins, may be {@code null}
+     * @param streamingContentTypes media types, ranges or suffixes of streamed responses, may be {@code null}
+     * @param maxBodySizeInBytes    limit of {@code FULL} captures and cap of prefix captures
+     * @throws IllegalStateException if a rule or media type is malformed
+     * @since 2.1.0
+     */
+    public CapturePolicy(List<String> rules, List<String> streamingContentTypes, int maxBodySizeInBytes) {
+        this.maxBodySizeInBytes = maxBodySizeInBytes;
+        List<Rule> parsed = new ArrayList<>();
+        for (String entry : rules != null ? rules : Collections.<String>emptyList()) {
+            parsed.add(Rule.parse(entry, maxBodySizeInBytes));
+        }
+
+        List<Rule> streaming = new ArrayList<>();
+        int streamingPrefix = Math.min(DEFAULT_STREAMING_PREFIX_BYTES, maxBodySizeInBytes);
+        for (String mediaType : streamingContentTypes != null ? streamingContentTypes : Collections.<String>emptyList()) {
+            if (!mediaType.trim().isEmpty()) {
+                Rule rule = Rule.of(mediaType, streamingPrefix, mediaType);
+                streaming.add(rule);
+                parsed.add(rule);
+            }
+        }
+        this.streamingTypes = streaming.toArray(new Rule[0]);
+
+        for (String entry : BUILT_IN_RULES) {
+            parsed.add(Rule.parse(entry, maxBodySizeInBytes));
+        }
+        this.rules = parsed.toArray(new Rule[0]);
+    }
+
+    /**
+     * Returns how many bytes of a body to capture.
+     *
+     * @param contentType     the body's {@code Content-Type}, or {@code null}
+     * @param contentEncoding the body's {@code Content-Encoding}, or {@code null}
+     * @return bytes to copy, {@code 0} to only count the body, or {@link #SKIP}
+     */
+    public int limitFor(String contentType, String contentEncoding) {
+        Rule rule = contentType != null ? find(rules, contentType) : null;
+        int limit = rule != null ? rule.limit : maxBodySizeInBytes;
+        if (limit > 0 && isEncoded(contentEncoding)) {
+            // Compressed bytes cannot be parsed, so count them at most
+            limit = 0;
+        }
+        return limit;
+    }
+
+    /**
+     * Checks whether a response is streamed, i.e., sent to the client as it is written and
+     * reported by its time to first byte.
+     *
+     * @param contentType the response's {@code Content-Type}, or {@code null}
+     * @return {@code true} if the media type is one of the streamed ones
+     * @since 2.1.0
+     */
+    public boolean isStreaming(String contentType) {
+        return contentType != null && streamingTypes.length > 0 && find(streamingTypes, contentType) != null;
+    }
+
+    /**
+     * Returns the first rule matching the media type of a header value, ignoring parameters.
+     */
+    private static Rule find(Rule[] candidates, String contentType) {
+        int start = skipSpaces(contentType, 0);
+        if (start == contentType.length()) {
+            return null;
+        }
+        int slash = contentType.indexOf('/', start);
+        int end = start;
+        while (end < contentType.length() && contentType.charAt(end) != ';' && contentType.charAt(end) != ' ') {
+            end++;
+        }
+        if (slash < 0 || slash > end) {
+            slash = end;
+        }
+        for (Rule rule : candidates) {
+            if (rule.matches(contentType, start, slash, end)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEncoded(String contentEncoding) {
+        if (contentEncoding == null) {
+            return false;
+        }
+        int start = skipSpaces(contentEncoding, 0);
+        return start < contentEncoding.length()
+                && !contentEncoding.regionMatches(true, start, "identity", 0, "identity".length());
+    }
+
+    private static int skipSpaces(String value, int index) {
+        while (index < value.length() && value.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    private static final class Rule {
+
+        // null matches any type or subtype
+        final String type;
+        final String subtype;
+        // Structured syntax suffix such as "+json" for a "*+json" subtype, or null
+        final String suffix;
+        final int limit;
+
+        private Rule(String type, String subtype, String suffix, int limit) {
+            this.type = type;
+            this.subtype = subtype;
+            this.suffix = suffix;
+            this.limit = limit;
+        }
+
+        static Rule parse(String entry, int maxBodySizeInBytes) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalStateException("Invalid body capture policy, expected mediaType=mode: " + entry);
+            }
+            String mode = entry.substring(separator + 1).trim();
+            return of(entry.substring(0, separator), parseLimit(mode, maxBodySizeInBytes, entry), entry);
+        }
+
+        static Rule of(String rawMediaType, int limit, String entry) {
+            String mediaType = rawMediaType.trim().toLowerCase(Locale.ROOT);
+            int slash = mediaType.indexOf('/');
+            String type = slash < 0 ? mediaType : mediaType.substring(0, slash);
+            String subtype = slash < 0 ? "*" : mediaType.substring(slash + 1);
+            if (type.isEmpty() || subtype.isEmpty()) {
+                throw new IllegalStateException("Invalid media type: " + entry);
+            }
+            String suffix = subtype.startsWith("*+") ? subtype.substring(1) : null;
+
+            return new Rule(
+                    "*".equals(type) ? null : type,
+                    "*".equals(subtype) || suffix != null ? null : subtype,
+                    suffix,
+                    limit);
+        }
+
+        private static int parseLimit(String mode, int maxBodySizeInBytes, String entry) {
+            switch (mode.toUpperCase(Locale.ROOT)) {
+                case "FULL":
+                    return maxBodySizeInBytes;
+                case "SIZE":
+                    return 0;
+                case "NONE":
+                    return SKIP;
+                default:
+                    try {
+                        int prefix = Integer.parseInt(mode);
+                        if (prefix < 0) {
+                            throw new IllegalStateException("Invalid body capture mode, must not be negative: " + entry);
+                        }
+                        return Math.min(prefix, maxBodySizeInBytes);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalStateException(
+                                "Invalid body capture mode, expected FULL, SIZE, NONE or a number of bytes: " + entry);
+                    }
+            }
+        }
+
+        /**
+         * Matches the media type at {@code [start, end)} of the header value, split at {@code slash}.
+         */
+        boolean matches(String contentType, int start, int slash, int end) {
+            if (type != null && !regionEquals(contentType, start, slash, type)) {
+                return false;
+            }
+            int subtypeStart = Math.min(slash + 1, end);
+            if (subtype != null) {
+                return regionEquals(contentType, subtypeStart, end, subtype);
+            }
+            if (suffix != null) {
+                return end - subtypeStart > suffix.length()
+                        && contentType.regionMatches(true, end - suffix.length(), suffix, 0, suffix.length());
+            }
+            return true;
+        }
+
+        private static boolean regionEquals(String value, int start, int end, String expected) {
+            return end - start == expected.length() && value.regionMatches(true, start, expected, 0, expected.length());
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.treblle.common.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chooses the ingest host for each send based on how the hosts have been doing.
+ * <p>
+ * Every host keeps an exponentially weighted moving average of its send latency and error rate.
+ * Selection compares two randomly chosen hosts and takes the one with the better score
+ * ("power of two choices"), so traffic leans towards fast, healthy hosts without all of it
+ * piling onto a single one.
+ * <p>
+ * Each host also has a circuit breaker. After a number of consecutive failures the circuit opens
+ * and the host is skipped. Once its backoff has passed, a single send probes it: success closes
+ * the circuit, failure opens it again for twice as long, up to a minute. When every circuit is
+ * open, {@link #select()} returns {@code null} and callers fail fast instead of holding a worker
+ * until the read timeout.
+ * <p>
+ * Selection is lock-free and uses {@link ThreadLocalRandom}; only recording an outcome
+ * synchronizes on the host.
+ *
+ * @since 2.1.0
+ */
+public final class EndpointSelector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EndpointSelector.class);
+
+    // Weight of the newest sample in the moving averages
+    private static final double ALPHA = 0.2;
+
+    // How much a host's error rate inflates its latency score; at a 10% error rate the score doubles
+    private static final double ERROR_PENALTY = 10.0;
+
+    private static final long MIN_OPEN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_OPEN_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private final Endpoint[] endpoints;
+    private final int failureThreshold;
+
+    private final LongAdder circuitsOpened = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+
+    /**
+     * Creates a selector.
+     *
+     * @param urls             the ingest hosts to choose from
+     * @param failureThreshold consecutive failures that open a host's circuit; 0 disables circuit breaking
+     * @throws IllegalStateException if there are no hosts
+     */
+    public EndpointSelector(List<String> urls, int failureThreshold) {
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("At least one Treblle endpoint is required.");
+        }
+        this.endpoints = new Endpoint[urls.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            endpoints[i] = new Endpoint(urls.get(i));
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Chooses the host for the next send. The outcome of that send must be reported through
+     * {@link #recordSuccess} or {@link #recordFailure}.
+     *
+     * @return the host, or {@code null} if every host's circuit is open
+     */
+    public Endpoint select() {
+        final long now = System.nanoTime();
+
+        // A host whose backoff has passed gets the next send as its probe
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.state == OPEN && now - endpoint.retryAtNanos >= 0 && endpoint.tryProbe()) {
+                return endpoint;
+            }
+        }
+
+        if (endpoints.length == 1) {
+            return endpoints[0].state == CLOSED ? endpoints[0] : shortCircuit();
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(endpoints.length);
+        int second = (first + 1 + random.nextInt(endpoints.length - 1)) % endpoints.length;
+        Endpoint a = endpoints[first];
+        Endpoint b = endpoints[second];
+        if (a.state == CLOSED && b.state == CLOSED) {
+            return a.score <= b.score ? a : b;
+        }
+
+        // At least one of the two is out of rotation, so take the best of the remaining hosts
+        Endpoint best = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.state == CLOSED && (best == null || endpoint.score < best.score)) {
+                best = endpoint;
+            }
+        }
+        return best != null ? best : shortCircuit();
+    }
+
+    private Endpoint shortCircuit() {
+        shortCircuited.increment();
+        return null;
+    }
+
+    /**
+     * Records a send the host answered without a server error.
+     *
+     * @param endpoint the host returned by {@link #select()}
+     * @param nanos    time until the answer
+     */
+    public void recordSuccess(Endpoint endpoint, long nanos) {
+        endpoint.record(nanos, false);
+    }
+
+    /**
+     * Records a send that timed out, could not connect or was answered with a server error.
+     *
+     * @param endpoint the host returned by {@link #select()}
+     * @param nanos    time until the failure
+     */
+    public void recordFailure(Endpoint endpoint, long nanos) {
+        endpoint.record(nanos, true);
+    }
+
+    /**
+     * @return hosts currently out of rotation (gauge)
+     */
+    public int getOpenCircuitCount() {
+        int open = 0;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.state != CLOSED) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * @return how often a host was taken out of rotation
+     */
+    public long getCircuitsOpenedCount() {
+        return circuitsOpened.sum();
+    }
+
+    /**
+     * @return sends that failed fast because every host was out of rotation
+     */
+    public long getShortCircuitedCount() {
+        return shortCircuited.sum();
+    }
+
+    /**
+     * One ingest host with its health.
+     */
+    public final class Endpoint {
+
+        private final String url;
+
+        private volatile int state = CLOSED;
+        private volatile long retryAtNanos;
+        // Lower is better; read lock-free by select()
+        private volatile double score;
+
+        // Guarded by this
+        private double latencyNanos;
+        private double errorRate;
+        private int consecutiveFailures;
+        private int trips;
+
+        private Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        private synchronized boolean tryProbe() {
+            if (state != OPEN) {
+                return false;
+            }
+            state = HALF_OPEN;
+            return true;
+        }
+
+        private synchronized void record(long nanos, boolean failure) {
+            latencyNanos += ALPHA * (nanos - latencyNanos);
+            errorRate += ALPHA * ((failure ? 1.0 : 0.0) - errorRate);
+            score = latencyNanos * (1.0 + ERROR_PENALTY * errorRate);
+
+            if (!failure) {
+                consecutiveFailures = 0;
+                if (state != CLOSED) {
+                    LOGGER.info("Treblle endpoint {} recovered", url);
+                    state = CLOSED;
+                    trips = 0;
+                }
+                return;
+            }
+
+            consecutiveFailures++;
+            if (failureThreshold <= 0) {
+                return;
+            }
+            // A failed probe reopens at once; sends from before the circuit opened do not count
+            if (state == HALF_OPEN || (state == CLOSED && consecutiveFailures >= failureThreshold)) {
+                long openNanos = Math.min(MIN_OPEN_NANOS << Math.min(trips, 6), MAX_OPEN_NANOS);
+                // Jitter keeps hosts that failed together from being probed in lockstep
+                openNanos += ThreadLocalRandom.current().nextLong(openNanos / 4 + 1);
+                trips++;
+                retryAtNanos = System.nanoTime() + openNanos;
+                state = OPEN;
+                circuitsOpened.increment();
+                LOGGER.warn("Taking Treblle endpoint {} out of rotation for {} ms after {} failures",
+                        url, TimeUnit.NANOSECONDS.toMillis(openNanos), consecutiveFailures);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+
+    }
+
+}
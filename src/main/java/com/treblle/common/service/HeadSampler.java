@@ -0,0 +1,265 @@
+package com.treblle.common.service;
+
+import com.treblle.common.utils.CompiledPathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides per request, before anything is captured, whether the request is monitored.
+ * <p>
+ * Each request gets the rate of the first route pattern matching its path, or the default rate.
+ * With a target of payloads per second, the sampler additionally measures once per second how
+ * many payloads the routes would produce at their configured rates, smooths that demand with a
+ * moving average and scales every rate down evenly so the expected output meets the target. The
+ * scale recovers towards 1 as soon as demand falls.
+ * <p>
+ * Decisions are lock-free and allocation-free: a path match, one random draw and two striped
+ * counter increments. Only the request that rolls the window, once per second, takes a lock. Per-route request and sample counts, configured and effective rates are
+ * available as metrics.
+ *
+ * @since 2.1.0
+ */
+public final class HeadSampler {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Weight of the latest window in the demand average
+    private static final double DEMAND_SMOOTHING = 0.5;
+
+    private final CompiledPathMatcher routeMatcher;
+    private final String[] patterns;
+    private final double[] rates;
+    private final int targetPayloadsPerSecond;
+    private final boolean enabled;
+
+    private final LongAdder[] requests;
+    private final LongAdder[] sampled;
+    private final AtomicLong windowStart;
+    // Guards the window state below; only the thread that claimed a window takes it, so it is
+    // uncontended, but it orders the updates of successive windows rolled by different threads
+    private final Object windowLock = new Object();
+    // Request counts at the start of the current window
+    private final long[] windowStartRequests;
+    private double smoothedDemand;
+    private volatile double budgetScale = 1.0;
+
+    /**
+     * Creates a sampler.
+     *
+     * @param sampleRate rate for requests matching no route pattern, between 0 and 1
+     * @param routeSampleRates {@code pattern=rate} entries, first match wins
+     * @param targetPayloadsPerSecond global payload budget, 0 or less for none
+     * @throws IllegalStateException if a rate is malformed or outside [0, 1]
+     */
+    public HeadSampler(double sampleRate, List<String> routeSampleRates, int targetPayloadsPerSecond) {
+        List<String> routePatterns = new ArrayList<>();
+        List<Double> routeRates = new ArrayList<>();
+        if (routeSampleRates != null) {
+            for (String entry : routeSampleRates) {
+                int separator = entry.lastIndexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalStateException("Invalid route sample rate, expected pattern=rate: " + entry);
+                }
+                routePatterns.add(entry.substring(0, separator).trim());
+                routeRates.add(parseRate(entry.substring(separator + 1).trim()));
+            }
+        }
+
+        int routes = routePatterns.size();
+        this.routeMatcher = CompiledPathMatcher.compile(routePatterns);
+        this.patterns = routePatterns.toArray(new String[routes + 1]);
+        this.rates = new double[routes + 1];
+        for (int i = 0; i < routes; i++) {
+            rates[i] = routeRates.get(i);
+        }
+        rates[routes] = checkRate(sampleRate);
+        this.targetPayloadsPerSecond = Math.max(0, targetPayloadsPerSecond);
+
+        boolean everythingSampled = this.targetPayloadsPerSecond == 0;
+        for (double rate : rates) {
+            everythingSampled &= rate >= 1.0;
+        }
+        this.enabled = !everythingSampled;
+
+        this.requests = new LongAdder[routes + 1];
+        this.sampled = new LongAdder[routes + 1];
+        for (int i = 0; i <= routes; i++) {
+            requests[i] = new LongAdder();
+            sampled[i] = new LongAdder();
+        }
+        this.windowStartRequests = new long[routes + 1];
+        this.windowStart = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Decides whether a request is monitored.
+     *
+     * @param requestPath the request path (e.g., "/api/users/123")
+     * @return {@code true} if the request should be captured and reported
+     */
+    public boolean isSampled(String requestPath) {
+        return isSampled(requestPath, 0);
+    }
+
+    /**
+     * Decides whether a request is monitored, matching the part of the request URI from
+     * {@code pathOffset} on, e.g., after the context path, without copying it.
+     *
+     * @param requestUri the request URI
+     * @param pathOffset index at which the request path starts
+     * @return {@code true} if the request should be captured and reported
+     */
+    public boolean isSampled(String requestUri, int pathOffset) {
+        if (!enabled) {
+            requests[rates.length - 1].increment();
+            sampled[rates.length - 1].increment();
+            return true;
+        }
+
+        int match = routeMatcher.match(requestUri, pathOffset);
+        int route = match < 0 ? rates.length - 1 : match;
+        requests[route].increment();
+
+        if (targetPayloadsPerSecond > 0) {
+            maybeRollWindow();
+        }
+
+        double probability = rates[route] * budgetScale;
+        boolean decision = probability >= 1.0
+                || (probability > 0.0 && ThreadLocalRandom.current().nextDouble() < probability);
+        if (decision) {
+            sampled[route].increment();
+        }
+        return decision;
+    }
+
+    /**
+     * @return {@code false} if every request is sampled, so the sampler only counts
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of rate buckets: one per route pattern, plus the default rate as the last one
+     */
+    public int getRouteCount() {
+        return rates.length;
+    }
+
+    /**
+     * @param route bucket index, see {@link #getRouteCount()}
+     * @return the route pattern, or {@code null} for the default bucket
+     */
+    public String getRoutePattern(int route) {
+        return patterns[route];
+    }
+
+    /**
+     * @param route bucket index, see {@link #getRouteCount()}
+     * @return the configured sample rate
+     */
+    public double getConfiguredRate(int route) {
+        return rates[route];
+    }
+
+    /**
+     * @param route bucket index, see {@link #getRouteCount()}
+     * @return the sample rate currently applied, after the budget scale
+     */
+    public double getEffectiveRate(int route) {
+        return Math.min(1.0, rates[route] * budgetScale);
+    }
+
+    /**
+     * @param route bucket index, see {@link #getRouteCount()}
+     * @return number of sampling decisions taken for the bucket
+     */
+    public long getRequestCount(int route) {
+        return requests[route].sum();
+    }
+
+    /**
+     * @param route bucket index, see {@link #getRouteCount()}
+     * @return number of requests of the bucket that were sampled
+     */
+    public long getSampledCount(int route) {
+        return sampled[route].sum();
+    }
+
+    /**
+     * @return total number of sampled requests
+     */
+    public long getSampledCount() {
+        long total = 0;
+        for (LongAdder adder : sampled) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return total number of requests dropped by sampling
+     */
+    public long getUnsampledCount() {
+        long total = 0;
+        for (int i = 0; i < rates.length; i++) {
+            total += requests[i].sum() - sampled[i].sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return factor applied to all rates to meet the payload budget, 1 when within budget
+     */
+    public double getBudgetScale() {
+        return budgetScale;
+    }
+
+    private void maybeRollWindow() {
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start < WINDOW_NANOS || !windowStart.compareAndSet(start, now)) {
+            return;
+        }
+
+        synchronized (windowLock) {
+            // Payloads per second the window would have produced at the configured rates
+            double demand = 0;
+            for (int i = 0; i < rates.length; i++) {
+                long total = requests[i].sum();
+                demand += (total - windowStartRequests[i]) * rates[i];
+                windowStartRequests[i] = total;
+            }
+            demand = demand * TimeUnit.SECONDS.toNanos(1) / (now - start);
+
+            smoothedDemand = smoothedDemand == 0
+                    ? demand
+                    : DEMAND_SMOOTHING * demand + (1 - DEMAND_SMOOTHING) * smoothedDemand;
+            budgetScale = smoothedDemand > targetPayloadsPerSecond
+                    ? targetPayloadsPerSecond / smoothedDemand
+                    : 1.0;
+        }
+    }
+
+    private static double parseRate(String value) {
+        try {
+            return checkRate(Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid sample rate: " + value, e);
+        }
+    }
+
+    private static double checkRate(double rate) {
+        if (!(rate >= 0.0 && rate <= 1.0)) {
+            throw new IllegalStateException("Sample rate must be between 0 and 1: " + rate);
+        }
+        return rate;
+    }
+
+}
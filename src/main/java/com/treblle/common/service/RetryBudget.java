@@ -0,0 +1,91 @@
+package com.treblle.common.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps retries at a percentage of sends, so that retrying never multiplies the load on an ingest
+ * API that is already struggling.
+ * <p>
+ * Every first send deposits a fraction of a retry into the budget, and every retry withdraws a
+ * whole one. The budget starts with a small reserve, so a service that has only just started can
+ * still retry a few sends, and it never holds more than {@value #MAX_RETRIES_BANKED} retries, so
+ * a long healthy period cannot fund a burst of retries later.
+ * <p>
+ * Deposits and withdrawals are lock-free.
+ *
+ * @since 2.1.0
+ */
+public final class RetryBudget {
+
+    private static final int INITIAL_RETRIES = 10;
+    private static final int MAX_RETRIES_BANKED = 100;
+
+    // Balance in hundredths of a retry, so a percentage deposits a whole number
+    private static final long UNIT = 100;
+
+    private final int percent;
+    private final AtomicLong balance = new AtomicLong(INITIAL_RETRIES * UNIT);
+
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+
+    /**
+     * Creates a budget.
+     *
+     * @param percent retries allowed per 100 sends
+     * @throws IllegalStateException if the percentage is negative
+     */
+    public RetryBudget(int percent) {
+        if (percent < 0) {
+            throw new IllegalStateException("Retry budget must not be negative: " + percent);
+        }
+        this.percent = percent;
+    }
+
+    /**
+     * Deposits the share of a first send; retries do not deposit.
+     */
+    public void recordSend() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= MAX_RETRIES_BANKED * UNIT) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(current + percent, MAX_RETRIES_BANKED * UNIT)));
+    }
+
+    /**
+     * Withdraws one retry if the budget allows it.
+     *
+     * @return {@code true} if the retry may go ahead
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < UNIT) {
+                denied.increment();
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - UNIT));
+        granted.increment();
+        return true;
+    }
+
+    /**
+     * @return retries the budget allowed
+     */
+    public long getGrantedCount() {
+        return granted.sum();
+    }
+
+    /**
+     * @return retries that were not made because the budget was used up
+     */
+    public long getDeniedCount() {
+        return denied.sum();
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.treblle.common.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides, once a request has completed, whether its captured exchange is reported.
+ * <p>
+ * Requests that failed with an exception, returned an error status or were slow are always
+ * reported. The remaining fast, successful requests are reported at the tail sample rate. Since
+ * the decision only looks at values the filter already holds, dropping a request costs nothing
+ * but releasing its capture buffers: nothing is parsed, masked or serialized.
+ * <p>
+ * Decisions are lock-free and allocation-free. Counts per reason are available as metrics.
+ *
+ * @since 2.1.0
+ */
+public final class TailSampler {
+
+    private final double sampleRate;
+    private final long slowThresholdInMillis;
+    private final int errorStatusThreshold;
+    private final boolean enabled;
+
+    private final LongAdder keptErrors = new LongAdder();
+    private final LongAdder keptSlow = new LongAdder();
+    private final LongAdder keptSampled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Creates a sampler.
+     *
+     * @param sampleRate rate for fast, successful requests, between 0 and 1
+     * @param slowThresholdInMillis response time from which a request is always kept
+     * @param errorStatusThreshold lowest status code that is always kept
+     * @throws IllegalStateException if the rate is outside [0, 1]
+     */
+    public TailSampler(double sampleRate, long slowThresholdInMillis, int errorStatusThreshold) {
+        if (!(sampleRate >= 0.0 && sampleRate <= 1.0)) {
+            throw new IllegalStateException("Tail sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.slowThresholdInMillis = slowThresholdInMillis;
+        this.errorStatusThreshold = errorStatusThreshold;
+        this.enabled = sampleRate < 1.0;
+    }
+
+    /**
+     * Decides whether a completed request is reported.
+     *
+     * @param statusCode the response status
+     * @param chainException exception thrown by the filter chain, or {@code null}
+     * @param responseTimeInMillis time the request took
+     * @return {@code true} if the exchange should be reported
+     */
+    public boolean isReported(int statusCode, Exception chainException, long responseTimeInMillis) {
+        if (!enabled) {
+            keptSampled.increment();
+            return true;
+        }
+        if (chainException != null || statusCode >= errorStatusThreshold) {
+            keptErrors.increment();
+            return true;
+        }
+        if (responseTimeInMillis >= slowThresholdInMillis) {
+            keptSlow.increment();
+            return true;
+        }
+        if (sampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            keptSampled.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * @return {@code false} if every request is reported, so the sampler only counts
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of requests reported because of an exception or error status
+     */
+    public long getKeptErrorCount() {
+        return keptErrors.sum();
+    }
+
+    /**
+     * @return number of requests reported because they were slow
+     */
+    public long getKeptSlowCount() {
+        return keptSlow.sum();
+    }
+
+    /**
+     * @return number of fast, successful requests reported by the sample rate
+     */
+    public long getKeptSampledCount() {
+        return keptSampled.sum();
+    }
+
+    /**
+     * @return number of requests whose capture was discarded
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+}
@@ -2,8 +2,11 @@ package com.treblle.common.service;
 
 import com.treblle.common.configuration.TreblleProperties;
 import com.treblle.common.dto.TrebllePayload;
+import com.treblle.common.infrastructure.RawExchange;
 import com.treblle.common.infrastructure.RequestWrapper;
 import com.treblle.common.infrastructure.ResponseWrapper;
+import com.treblle.common.metrics.TreblleMetrics;
+import com.treblle.common.utils.PathMatcher;
 
 public interface TreblleService {
 
@@ -11,8 +14,41 @@ public interface TreblleService {
 
     void maskAndSendPayload(TrebllePayload payload, byte[] requestBody, byte[] responseBody, Exception chainException);
 
+    /**
+     * Builds, masks and sends the payload for a captured exchange.
+     * <p>
+     * Implementations may do the work on another thread, so callers only pay for the snapshot.
+     * The service takes ownership of the exchange and releases its body buffers when done.
+     *
+     * @param exchange the captured exchange
+     * @since 2.1.0
+     */
+    default void submit(RawExchange exchange) {
+        try {
+            TrebllePayload payload = createPayload(exchange.getRequest(), exchange.getResponse(),
+                    exchange.getException(), exchange.getResponseTimeInMillis());
+            maskAndSendPayload(payload, exchange.getRequestBody(), exchange.getResponseBody(), exchange.getException());
+        } finally {
+            exchange.release();
+        }
+    }
+
     int getMaxBodySizeInBytes();
 
+    /**
+     * Get the policy that decides how much of a body to capture from its content type.
+     * <p>
+     * Capture wrappers consult it before copying the first byte of a body. The default builds
+     * the policy from {@link #getProperties()} on every call; implementations should return a
+     * shared instance.
+     *
+     * @return the capture policy
+     * @since 2.1.0
+     */
+    default CapturePolicy getCapturePolicy() {
+        return new CapturePolicy(getProperties().getBodyCapturePolicies(), getMaxBodySizeInBytes());
+    }
+
     /**
      * Get the configuration properties for this Treblle service.
      *
@@ -21,4 +57,74 @@ public interface TreblleService {
      */
     TreblleProperties getProperties();
 
-}
\ No newline at end of file
+    /**
+     * Check whether a request path matches one of the configured exclusion patterns.
+     *
+     * @param requestPath the request path (e.g., "/api/users")
+     * @return {@code true} if the path should not be monitored
+     * @since 2.1.0
+     */
+    default boolean isExcluded(String requestPath) {
+        return PathMatcher.isExcluded(requestPath, getProperties().getExcludedPaths());
+    }
+
+    /**
+     * Decide whether a request that is not excluded should be monitored.
+     * <p>
+     * Called before any capture, so unsampled requests cost nothing beyond this decision.
+     *
+     * @param requestPath the request path (e.g., "/api/users")
+     * @return {@code true} if the request should be captured and reported
+     * @since 2.1.0
+     */
+    default boolean isSampled(String requestPath) {
+        return true;
+    }
+
+    /**
+     * Classify a request before anything is wrapped or captured: excluded paths, methods and
+     * content types, then head sampling. Filters call this first and hand requests that are not
+     * captured to the chain untouched.
+     * <p>
+     * The path is the part of {@code requestUri} from {@code pathOffset} on, so callers can skip
+     * the context path without copying the URI. Implementations should not allocate. The default
+     * only applies {@link #isExcluded(String)} and {@link #isSampled(String)} to the path.
+     *
+     * @param requestUri  the request URI (e.g., "/app/api/users")
+     * @param pathOffset  index at which the request path starts, e.g., the context path length
+     * @param method      the HTTP method
+     * @param contentType the request's {@code Content-Type} header, or {@code null}
+     * @return {@code true} if the request should be captured
+     * @since 2.1.0
+     */
+    default boolean isCaptured(String requestUri, int pathOffset, String method, String contentType) {
+        String requestPath = requestUri.substring(pathOffset);
+        return !isExcluded(requestPath) && isSampled(requestPath);
+    }
+
+    /**
+     * Decide whether a completed, captured request should be reported.
+     * <p>
+     * Called before the exchange is snapshot, so dropped requests only release their buffers.
+     *
+     * @param statusCode the response status
+     * @param chainException exception thrown while handling the request, or {@code null}
+     * @param responseTimeInMillis time the request took
+     * @return {@code true} if the exchange should be reported
+     * @since 2.1.0
+     */
+    default boolean isReported(int statusCode, Exception chainException, long responseTimeInMillis) {
+        return true;
+    }
+
+    /**
+     * Get the self-metrics of this service, which filters also record their overhead into.
+     *
+     * @return the metrics; services that keep none return {@link TreblleMetrics#DETACHED}
+     * @since 2.1.0
+     */
+    default TreblleMetrics getMetrics() {
+        return TreblleMetrics.DETACHED;
+    }
+
+}
@@ -0,0 +1,524 @@
+package com.treblle.common.utils;
+
+import java.util.*;
+
+/**
+ * Precompiled form of a list of glob-style path patterns, built once and matched without allocation.
+ * <p>
+ * Patterns follow the same rules and normalization as {@link PathMatcher}. At compile time each
+ * normalized pattern is routed to the cheapest structure that can evaluate it:
+ * <ul>
+ *   <li>Exact paths ({@code /health}) go into an open-addressing hash set</li>
+ *   <li>Prefix patterns with a single trailing wildcard ({@code /admin/*}) go into a character trie</li>
+ *   <li>All other patterns ({@code * /internal}, {@code /api/* /debug}) are merged into
+ *       deterministic automata built by subset construction: one for patterns that start with a
+ *       wildcard and one for patterns anchored by a literal prefix</li>
+ * </ul>
+ * A lookup walks the request path at most once per structure, so its cost is proportional to the
+ * path length rather than to the number of configured patterns. Automata that would exceed a
+ * fixed state budget are split, which only happens for very large sets of complex patterns. Request paths are normalized on
+ * the fly instead of being copied.
+ * <p>
+ * Besides a yes/no answer, {@link #match(String)} reports the index of the first pattern (in
+ * configuration order) that matches, which allows callers to attach per-pattern settings.
+ * Instances are immutable and thread-safe.
+ *
+ * @since 2.1.0
+ */
+public final class CompiledPathMatcher {
+
+    /**
+     * Matcher without patterns; never matches.
+     */
+    public static final CompiledPathMatcher EMPTY = compile(Collections.emptyList());
+
+    // Upper bound on the states of a single automaton; larger pattern sets are split into several automata
+    private static final int MAX_AUTOMATON_STATES = 4096;
+
+    private static final int NO_MATCH = -1;
+
+    private final int patternCount;
+    private final ExactSet exact;
+    private final PrefixTrie prefixes;
+    private final Automaton[] automata;
+
+    private CompiledPathMatcher(int patternCount, ExactSet exact, PrefixTrie prefixes, Automaton[] automata) {
+        this.patternCount = patternCount;
+        this.exact = exact;
+        this.prefixes = prefixes;
+        this.automata = automata;
+    }
+
+    /**
+     * Compiles a list of glob-style patterns. Null and empty patterns are ignored, but keep their index.
+     *
+     * @param patterns the patterns to compile, may be {@code null}
+     * @return the compiled matcher
+     */
+    public static CompiledPathMatcher compile(List<String> patterns) {
+        if (patterns == null) {
+            patterns = Collections.emptyList();
+        }
+
+        Map<String, Integer> exactPatterns = new LinkedHashMap<>();
+        Map<String, Integer> prefixPatterns = new LinkedHashMap<>();
+        // Patterns that start with a wildcard are kept apart from those anchored by a literal prefix:
+        // mixing both kinds in one automaton multiplies their states
+        List<String> leadingGlobPatterns = new ArrayList<>();
+        List<Integer> leadingGlobIndexes = new ArrayList<>();
+        List<String> anchoredGlobPatterns = new ArrayList<>();
+        List<Integer> anchoredGlobIndexes = new ArrayList<>();
+
+        for (int index = 0; index < patterns.size(); index++) {
+            String pattern = patterns.get(index);
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+
+            String normalized = normalize(pattern);
+            int firstWildcard = normalized.indexOf('*');
+            if (firstWildcard < 0) {
+                exactPatterns.putIfAbsent(normalized, index);
+            } else if (firstWildcard == normalized.length() - 1) {
+                prefixPatterns.putIfAbsent(normalized.substring(0, firstWildcard), index);
+            } else if (firstWildcard == 1) {
+                leadingGlobPatterns.add(normalized);
+                leadingGlobIndexes.add(index);
+            } else {
+                anchoredGlobPatterns.add(normalized);
+                anchoredGlobIndexes.add(index);
+            }
+        }
+
+        List<Automaton> automata = new ArrayList<>();
+        buildAutomata(leadingGlobPatterns, leadingGlobIndexes, automata);
+        buildAutomata(anchoredGlobPatterns, anchoredGlobIndexes, automata);
+
+        return new CompiledPathMatcher(
+                patterns.size(),
+                exactPatterns.isEmpty() ? null : new ExactSet(exactPatterns),
+                prefixPatterns.isEmpty() ? null : new PrefixTrie(prefixPatterns),
+                automata.toArray(new Automaton[0]));
+    }
+
+    /**
+     * Checks whether a request path matches any of the compiled patterns.
+     *
+     * @param requestPath the request path (e.g., "/api/users/123")
+     * @return {@code true} if any pattern matches, {@code false} otherwise or if the path is null or empty
+     */
+    public boolean matches(String requestPath) {
+        return match(requestPath) != NO_MATCH;
+    }
+
+    /**
+     * Returns the index of the first pattern, in the order given to {@link #compile(List)}, that matches the path.
+     *
+     * @param requestPath the request path (e.g., "/api/users/123")
+     * @return index of the first matching pattern, or {@code -1} if none matches or the path is null or empty
+     */
+    public int match(String requestPath) {
+        return match(requestPath, 0);
+    }
+
+    /**
+     * Checks whether the part of a string from {@code offset} on, e.g., a request URI after its
+     * context path, matches any of the compiled patterns, without copying it.
+     *
+     * @param requestUri the string holding the request path
+     * @param offset     index at which the request path starts
+     * @return {@code true} if any pattern matches, {@code false} otherwise or if the path is null or empty
+     */
+    public boolean matches(String requestUri, int offset) {
+        return match(requestUri, offset) != NO_MATCH;
+    }
+
+    /**
+     * Returns the index of the first pattern that matches the part of a string from {@code offset} on.
+     *
+     * @param requestUri the string holding the request path
+     * @param offset     index at which the request path starts
+     * @return index of the first matching pattern, or {@code -1} if none matches or the path is null or empty
+     */
+    public int match(String requestUri, int offset) {
+        if (requestUri == null || requestUri.length() <= offset || patternCount == 0) {
+            return NO_MATCH;
+        }
+
+        // View of the normalized path: optional virtual leading slash, without a trailing slash
+        boolean virtualSlash = requestUri.charAt(offset) != '/';
+        int length = requestUri.length() - offset + (virtualSlash ? 1 : 0);
+        if (length > 1 && requestUri.charAt(requestUri.length() - 1) == '/') {
+            length--;
+        }
+
+        int best = NO_MATCH;
+        if (exact != null) {
+            best = exact.find(requestUri, offset, virtualSlash, length);
+        }
+        if (prefixes != null) {
+            best = lowest(best, prefixes.find(requestUri, offset, virtualSlash, length));
+        }
+        for (Automaton automaton : automata) {
+            best = lowest(best, automaton.find(requestUri, offset, virtualSlash, length));
+        }
+        return best;
+    }
+
+    /**
+     * @return number of patterns given to {@link #compile(List)}, including ignored ones
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    private static int lowest(int current, int candidate) {
+        if (candidate == NO_MATCH) {
+            return current;
+        }
+        return current == NO_MATCH ? candidate : Math.min(current, candidate);
+    }
+
+    private static char charAt(String path, int offset, boolean virtualSlash, int index) {
+        if (virtualSlash) {
+            return index == 0 ? '/' : path.charAt(offset + index - 1);
+        }
+        return path.charAt(offset + index);
+    }
+
+    /**
+     * Same normalization as {@link PathMatcher}: leading slash added, one trailing slash removed.
+     */
+    private static String normalize(String path) {
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    private static void buildAutomata(List<String> patterns, List<Integer> indexes, List<Automaton> result) {
+        if (patterns.isEmpty()) {
+            return;
+        }
+        Automaton automaton = Automaton.build(patterns, indexes, MAX_AUTOMATON_STATES);
+        if (automaton != null) {
+            result.add(automaton);
+        } else if (patterns.size() == 1) {
+            // A single pattern's automaton is bounded by its length, so this cannot happen in practice
+            throw new IllegalStateException("Path pattern is too complex: " + patterns.get(0));
+        } else {
+            int half = patterns.size() / 2;
+            buildAutomata(patterns.subList(0, half), indexes.subList(0, half), result);
+            buildAutomata(patterns.subList(half, patterns.size()), indexes.subList(half, indexes.size()), result);
+        }
+    }
+
+    /**
+     * Open-addressing hash set of exact paths, probed with the hash of the normalized path view.
+     */
+    private static final class ExactSet {
+
+        private final String[] keys;
+        private final int[] indexes;
+        private final int mask;
+
+        ExactSet(Map<String, Integer> patterns) {
+            int capacity = Integer.highestOneBit(Math.max(2, patterns.size() * 2 - 1)) << 1;
+            this.keys = new String[capacity];
+            this.indexes = new int[capacity];
+            this.mask = capacity - 1;
+
+            for (Map.Entry<String, Integer> entry : patterns.entrySet()) {
+                int slot = spread(entry.getKey().hashCode()) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = entry.getKey();
+                indexes[slot] = entry.getValue();
+            }
+        }
+
+        int find(String path, int offset, boolean virtualSlash, int length) {
+            // Same hash as String.hashCode() of the normalized path
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + charAt(path, offset, virtualSlash, i);
+            }
+
+            int slot = spread(hash) & mask;
+            String key;
+            while ((key = keys[slot]) != null) {
+                if (equalsView(key, path, offset, virtualSlash, length)) {
+                    return indexes[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return NO_MATCH;
+        }
+
+        private static boolean equalsView(String key, String path, int offset, boolean virtualSlash, int length) {
+            if (key.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key.charAt(i) != charAt(path, offset, virtualSlash, i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+    }
+
+    /**
+     * Character trie of literal prefixes, flattened into arrays. A node is terminal when a prefix pattern ends there.
+     */
+    private static final class PrefixTrie {
+
+        private final char[][] labels;
+        private final int[][] children;
+        private final int[] terminals;
+
+        PrefixTrie(Map<String, Integer> patterns) {
+            List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+            List<Integer> terminalIndexes = new ArrayList<>();
+            edges.add(new TreeMap<>());
+            terminalIndexes.add(NO_MATCH);
+
+            for (Map.Entry<String, Integer> entry : patterns.entrySet()) {
+                int node = 0;
+                for (char c : entry.getKey().toCharArray()) {
+                    Integer child = edges.get(node).get(c);
+                    if (child == null) {
+                        child = edges.size();
+                        edges.add(new TreeMap<>());
+                        terminalIndexes.add(NO_MATCH);
+                        edges.get(node).put(c, child);
+                    }
+                    node = child;
+                }
+                terminalIndexes.set(node, lowest(terminalIndexes.get(node), entry.getValue()));
+            }
+
+            this.labels = new char[edges.size()][];
+            this.children = new int[edges.size()][];
+            this.terminals = new int[edges.size()];
+            for (int node = 0; node < edges.size(); node++) {
+                TreeMap<Character, Integer> nodeEdges = edges.get(node);
+                labels[node] = new char[nodeEdges.size()];
+                children[node] = new int[nodeEdges.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> edge : nodeEdges.entrySet()) {
+                    labels[node][i] = edge.getKey();
+                    children[node][i] = edge.getValue();
+                    i++;
+                }
+                terminals[node] = terminalIndexes.get(node);
+            }
+        }
+
+        int find(String path, int offset, boolean virtualSlash, int length) {
+            int best = terminals[0];
+            int node = 0;
+            for (int i = 0; i < length; i++) {
+                int edge = Arrays.binarySearch(labels[node], charAt(path, offset, virtualSlash, i));
+                if (edge < 0) {
+                    break;
+                }
+                node = children[node][edge];
+                best = lowest(best, terminals[node]);
+            }
+            return best;
+        }
+
+    }
+
+    /**
+     * Deterministic automaton over a set of glob patterns in which {@code *} matches any run of characters.
+     * <p>
+     * Characters are grouped into classes: one per literal character used by the patterns and one
+     * shared class for every other character, which only wildcards can consume.
+     */
+    private static final class Automaton {
+
+        private static final int DEAD = -1;
+        private static final int OTHER_CLASS = 0;
+
+        private final char[] classChars;
+        private final int[] asciiClasses = new int[128];
+        private final int classCount;
+        private final int[] transitions;
+        private final int[] accepting;
+
+        private Automaton(char[] classChars, int[] transitions, int[] accepting) {
+            this.classChars = classChars;
+            this.classCount = classChars.length + 1;
+            this.transitions = transitions;
+            this.accepting = accepting;
+            for (int i = 0; i < classChars.length; i++) {
+                if (classChars[i] < asciiClasses.length) {
+                    asciiClasses[classChars[i]] = i + 1;
+                }
+            }
+        }
+
+        /**
+         * Builds the automaton by subset construction, or returns {@code null} if it would exceed {@code maxStates}.
+         */
+        static Automaton build(List<String> patterns, List<Integer> indexes, int maxStates) {
+            // Nondeterministic states are (pattern, position) pairs numbered consecutively per pattern
+            int[] offsets = new int[patterns.size() + 1];
+            for (int p = 0; p < patterns.size(); p++) {
+                offsets[p + 1] = offsets[p] + patterns.get(p).length() + 1;
+            }
+            char[] symbols = new char[offsets[patterns.size()]];
+            int[] owners = new int[symbols.length];
+            TreeSet<Character> literals = new TreeSet<>();
+            for (int p = 0; p < patterns.size(); p++) {
+                String pattern = patterns.get(p);
+                for (int position = 0; position <= pattern.length(); position++) {
+                    // The position past the end is the accepting state and has no symbol
+                    char symbol = position < pattern.length() ? pattern.charAt(position) : 0;
+                    symbols[offsets[p] + position] = symbol;
+                    owners[offsets[p] + position] = p;
+                    if (position < pattern.length() && symbol != '*') {
+                        literals.add(symbol);
+                    }
+                }
+            }
+            boolean[] accept = new boolean[symbols.length];
+            for (int p = 0; p < patterns.size(); p++) {
+                accept[offsets[p + 1] - 1] = true;
+            }
+
+            char[] classChars = new char[literals.size()];
+            int c = 0;
+            for (Character literal : literals) {
+                classChars[c++] = literal;
+            }
+            int classCount = classChars.length + 1;
+
+            Map<BitSet, Integer> stateIds = new HashMap<>();
+            List<BitSet> states = new ArrayList<>();
+            List<int[]> rows = new ArrayList<>();
+
+            BitSet start = new BitSet(symbols.length);
+            for (int p = 0; p < patterns.size(); p++) {
+                start.set(offsets[p]);
+            }
+            closure(start, symbols);
+            stateIds.put(start, 0);
+            states.add(start);
+
+            int[] classOfLiteral = new int[Character.MAX_VALUE + 1];
+            for (int cls = 1; cls < classCount; cls++) {
+                classOfLiteral[classChars[cls - 1]] = cls;
+            }
+
+            for (int s = 0; s < states.size(); s++) {
+                BitSet state = states.get(s);
+
+                // One pass over the positions: wildcards stay put on any input, literals advance on their class
+                BitSet wildcards = new BitSet(symbols.length);
+                BitSet[] advances = new BitSet[classCount];
+                for (int n = state.nextSetBit(0); n >= 0; n = state.nextSetBit(n + 1)) {
+                    if (accept[n]) {
+                        continue;
+                    }
+                    if (symbols[n] == '*') {
+                        wildcards.set(n);
+                    } else {
+                        int cls = classOfLiteral[symbols[n]];
+                        if (advances[cls] == null) {
+                            advances[cls] = new BitSet(symbols.length);
+                        }
+                        advances[cls].set(n + 1);
+                    }
+                }
+
+                closure(wildcards, symbols);
+
+                int[] row = new int[classCount];
+                for (int cls = 0; cls < classCount; cls++) {
+                    BitSet next;
+                    if (advances[cls] == null) {
+                        next = (BitSet) wildcards.clone();
+                    } else {
+                        next = advances[cls];
+                        closure(next, symbols);
+                        next.or(wildcards);
+                    }
+                    if (next.isEmpty()) {
+                        row[cls] = DEAD;
+                        continue;
+                    }
+                    Integer id = stateIds.get(next);
+                    if (id == null) {
+                        if (states.size() >= maxStates) {
+                            return null;
+                        }
+                        id = states.size();
+                        stateIds.put(next, id);
+                        states.add(next);
+                    }
+                    row[cls] = id;
+                }
+                rows.add(row);
+            }
+
+            int[] transitions = new int[rows.size() * classCount];
+            int[] accepting = new int[rows.size()];
+            for (int s = 0; s < rows.size(); s++) {
+                System.arraycopy(rows.get(s), 0, transitions, s * classCount, classCount);
+                int best = NO_MATCH;
+                BitSet state = states.get(s);
+                for (int n = state.nextSetBit(0); n >= 0; n = state.nextSetBit(n + 1)) {
+                    if (accept[n]) {
+                        best = lowest(best, indexes.get(owners[n]));
+                    }
+                }
+                accepting[s] = best;
+            }
+            return new Automaton(classChars, transitions, accepting);
+        }
+
+        /**
+         * Adds the positions reachable by letting a wildcard match nothing.
+         */
+        private static void closure(BitSet state, char[] symbols) {
+            for (int n = state.nextSetBit(0); n >= 0; n = state.nextSetBit(n + 1)) {
+                if (symbols[n] == '*') {
+                    state.set(n + 1);
+                }
+            }
+        }
+
+        int find(String path, int offset, boolean virtualSlash, int length) {
+            int state = 0;
+            for (int i = 0; i < length; i++) {
+                state = transitions[state * classCount + classOf(charAt(path, offset, virtualSlash, i))];
+                if (state == DEAD) {
+                    return NO_MATCH;
+                }
+            }
+            return accepting[state];
+        }
+
+        private int classOf(char c) {
+            if (c < asciiClasses.length) {
+                return asciiClasses[c];
+            }
+            int index = Arrays.binarySearch(classChars, c);
+            return index >= 0 ? index + 1 : OTHER_CLASS;
+        }
+
+    }
+
+}
@@ -2,12 +2,61 @@ package com.treblle.common.utils;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.io.IOException;
 import java.util.Map;
 
 public interface DataMasker {
 
   JsonNode mask(JsonNode node);
 
+  /**
+   * Masks a raw JSON document without building a tree.
+   * <p>
+   * Parser tokens are piped straight into a generator, so the returned node merely wraps the
+   * masked UTF-8 bytes and writes them verbatim when the payload is serialized.
+   *
+   * @param body   buffer holding the JSON document
+   * @param offset offset of the document in {@code body}
+   * @param length length of the document
+   * @return node wrapping the masked JSON, or {@code null} if the document is empty
+   * @throws IOException if the document is not valid JSON
+   * @since 2.1.0
+   */
+  JsonNode mask(byte[] body, int offset, int length) throws IOException;
+
+  /**
+   * Masks the beginning of a JSON document that was cut off, such as a body captured only up to
+   * a prefix limit.
+   * <p>
+   * Tokens are masked as by {@link #mask(byte[], int, int)} up to the last complete one; a value
+   * cut off at the end is left out rather than copied unmasked, and open objects and arrays are
+   * not closed.
+   *
+   * @param body   buffer holding the start of the document
+   * @param offset offset of the document in {@code body}
+   * @param length length of the captured prefix
+   * @return the masked JSON text, or {@code null} if not even the first token is complete
+   * @since 2.1.0
+   */
+  String maskPrefix(byte[] body, int offset, int length);
+
+  /**
+   * Masks line-oriented text, such as the prefix of a server-sent event stream or an NDJSON
+   * feed, which is not a JSON document as a whole.
+   * <p>
+   * On each line, JSON starting at the first opening brace or bracket is masked as by
+   * {@link #maskPrefix}, so a line cut off at the end keeps its masked beginning. Text before
+   * it and lines without JSON are kept as they are; the rest of a line whose JSON turns out to
+   * be invalid is left out.
+   *
+   * @param body   buffer holding the text, UTF-8 encoded
+   * @param offset offset of the text in {@code body}
+   * @param length length of the text
+   * @return the masked text
+   * @since 2.1.0
+   */
+  String maskLines(byte[] body, int offset, int length);
+
   Map<String, String> mask(Map<String, String> headers);
 
 }
@@ -1,15 +1,26 @@
 package com.treblle.common.utils;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.treblle.common.configuration.TreblleProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
@@ -20,6 +31,20 @@ public class DataMaskerImpl implements DataMasker {
 
   private static final String MASKED_VALUE = "******";
 
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  // Leaves the objects and arrays of a cut-off document open instead of closing them
+  private static final JsonFactory PREFIX_FACTORY = JsonFactory.builder()
+          .disable(StreamWriteFeature.AUTO_CLOSE_CONTENT)
+          .build();
+
+  // Field names of list endpoints repeat endlessly, so keyword matches are memoized up to this many names
+  private static final int MAX_CACHED_KEYS = 2048;
+
+  // Bits of a key classification; a key may match both a plain and a catch-all keyword
+  private static final int MASKED_KEY = 1;
+  private static final int CATCH_ALL_KEY = 2;
+
   private static final List<String> DEFAULT_KEYWORDS =
           Arrays.asList(
                   "password",
@@ -39,6 +64,7 @@ public class DataMaskerImpl implements DataMasker {
 
   private Pattern pattern;
   private Pattern catchAllPattern;
+  private final Map<String, Integer> keyClassifications = new ConcurrentHashMap<>();
 
   public DataMaskerImpl(TreblleProperties properties) {
     Set<String> keywords = new HashSet<>(9);
@@ -90,6 +116,72 @@ public class DataMaskerImpl implements DataMasker {
     return maskInternal(null, node);
   }
 
+  @Override
+  public JsonNode mask(byte[] body, int offset, int length) throws IOException {
+    ByteArrayBuilder output = new ByteArrayBuilder(Math.min(length, 64 * 1024));
+    try (JsonParser parser = JSON_FACTORY.createParser(body, offset, length);
+         JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+      if (parser.nextToken() == null) {
+        return null;
+      }
+      maskTokens(parser, generator, null, false);
+    }
+    return JsonNodeFactory.instance.rawValueNode(new RawValue(new RawJsonString(output.toByteArray())));
+  }
+
+  @Override
+  public String maskPrefix(byte[] body, int offset, int length) {
+    ByteArrayBuilder output = new ByteArrayBuilder(Math.min(length, 64 * 1024));
+    maskPrefix(body, offset, length, output);
+    return output.size() == 0 ? null : new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String maskLines(byte[] body, int offset, int length) {
+    ByteArrayBuilder output = new ByteArrayBuilder(Math.min(length, 64 * 1024));
+    int end = offset + length;
+    int lineStart = offset;
+    while (lineStart < end) {
+      int lineEnd = lineStart;
+      int json = -1;
+      while (lineEnd < end && body[lineEnd] != '\n') {
+        if (json < 0 && (body[lineEnd] == '{' || body[lineEnd] == '[')) {
+          json = lineEnd;
+        }
+        lineEnd++;
+      }
+      if (json < 0) {
+        output.write(body, lineStart, lineEnd - lineStart);
+      } else {
+        // Keep an SSE field name such as "data: " and mask the JSON after it
+        output.write(body, lineStart, json - lineStart);
+        maskPrefix(body, json, lineEnd - json, output);
+      }
+      if (lineEnd < end) {
+        output.write('\n');
+      }
+      lineStart = lineEnd + 1;
+    }
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Masks JSON values into the output until the input ends or stops being valid JSON.
+   */
+  private void maskPrefix(byte[] body, int offset, int length, ByteArrayBuilder output) {
+    try (JsonGenerator generator = PREFIX_FACTORY.createGenerator(output)) {
+      try (JsonParser parser = PREFIX_FACTORY.createParser(body, offset, length)) {
+        while (parser.nextToken() != null) {
+          maskTokens(parser, generator, null, false);
+        }
+      } catch (IOException cutOff) {
+        // The parser only fails on the token that is cut off; everything before it is written
+      }
+    } catch (IOException exception) {
+      // Generating into memory does not fail
+    }
+  }
+
   @Override
   public Map<String, String> mask(Map<String, String> headers) {
     return headers.entrySet().stream().collect(Collectors.toMap(
@@ -125,6 +217,48 @@ public class DataMaskerImpl implements DataMasker {
     return target;
   }
 
+  /**
+   * Streaming counterpart of {@link #maskInternal(String, JsonNode)}: copies the value at the parser's
+   * current token to the generator, masking scalars the same way the tree walk does.
+   */
+  private void maskTokens(JsonParser parser, JsonGenerator generator, String key, boolean maskAll) throws IOException {
+    JsonToken token = parser.currentToken();
+    if (token == JsonToken.START_OBJECT) {
+      generator.writeStartObject();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.currentName();
+        generator.writeFieldName(fieldName);
+        parser.nextToken();
+        maskTokens(parser, generator, fieldName, maskAll || (classifyKey(fieldName) & CATCH_ALL_KEY) != 0);
+      }
+      generator.writeEndObject();
+    } else if (token == JsonToken.START_ARRAY) {
+      generator.writeStartArray();
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        // Array elements inherit the key of the array, as in the tree walk
+        maskTokens(parser, generator, key, maskAll);
+      }
+      generator.writeEndArray();
+    } else if (maskAll || (key != null && (classifyKey(key) & MASKED_KEY) != 0)) {
+      generator.writeString(MASKED_VALUE);
+    } else {
+      generator.copyCurrentEvent(parser);
+    }
+  }
+
+  private int classifyKey(String key) {
+    Integer cached = keyClassifications.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    int classification = (matchesMaskingKeywords(key) ? MASKED_KEY : 0)
+            | (matchesCatchAllMaskingKeywords(key) ? CATCH_ALL_KEY : 0);
+    if (keyClassifications.size() < MAX_CACHED_KEYS) {
+      keyClassifications.put(key, classification);
+    }
+    return classification;
+  }
+
   private JsonNode maskAllInternal(JsonNode target) {
     if (target.isValueNode()) {
       return new TextNode(MASKED_VALUE);
@@ -3,6 +3,12 @@ package com.treblle.common.utils;
 
 import com.treblle.common.infrastructure.RequestWrapper;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class HttpUtils {
 
   public static final String APPLICATION_JSON_VALUE = "application/json";
@@ -34,4 +40,49 @@ public class HttpUtils {
 
     return request.getRemoteAddr();
   }
+
+  /**
+   * Decodes a raw query string into a map, joining repeated parameters with a comma.
+   *
+   * @param queryString the raw query string without the leading {@code ?}, may be {@code null}
+   * @return the decoded parameters in order of first appearance
+   * @since 2.1.0
+   */
+  public static Map<String, String> parseQueryString(String queryString) {
+    if (queryString == null || queryString.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> params = new LinkedHashMap<>();
+    int start = 0;
+    while (start <= queryString.length()) {
+      int end = queryString.indexOf('&', start);
+      if (end == -1) {
+        end = queryString.length();
+      }
+      if (end > start) {
+        int equals = queryString.indexOf('=', start);
+        String name;
+        String value;
+        if (equals == -1 || equals > end) {
+          name = decode(queryString.substring(start, end));
+          value = "";
+        } else {
+          name = decode(queryString.substring(start, equals));
+          value = decode(queryString.substring(equals + 1, end));
+        }
+        params.merge(name, value, (first, second) -> first + "," + second);
+      }
+      start = end + 1;
+    }
+    return params;
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, "UTF-8");
+    } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+      // Malformed escapes are reported as sent
+      return value;
+    }
+  }
 }
@@ -13,6 +13,9 @@ import java.util.List;
  *   <li>Middle wildcard: {@code /api/* /debug} matches {@code /api/v1/debug}, {@code /api/v2/debug}, etc.</li>
  *   <li>Match all: {@code *} matches any path</li>
  * </ul>
+ * <p>
+ * This class evaluates the patterns from scratch on every call. Callers that match against the same
+ * patterns repeatedly should use {@link CompiledPathMatcher}, which compiles them once.
  *
  * @since 1.0.6
  */
@@ -1,14 +1,17 @@
 package com.treblle.javax;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.treblle.common.configuration.TreblleProperties;
-import com.treblle.common.dto.TrebllePayload;
+import com.treblle.common.infrastructure.CaptureBuffer;
+import com.treblle.common.infrastructure.RawExchange;
+import com.treblle.common.service.CapturePolicy;
 import com.treblle.common.service.TreblleService;
-import com.treblle.common.utils.PathMatcher;
 import com.treblle.javax.configuration.ContainerFilterTreblleProperties;
 import com.treblle.javax.infrastructure.ContainerRequestContextWrapper;
+import com.treblle.javax.infrastructure.CompletionOutputStream;
 import com.treblle.javax.infrastructure.ContainerResponseContextWrapper;
-import com.treblle.javax.service.TreblleServiceImpl;
+import com.treblle.javax.infrastructure.TeeInputStream;
+import com.treblle.javax.infrastructure.TeeOutputStream;
+import com.treblle.javax.service.TreblleServiceRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,10 +20,16 @@ import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.container.ContainerResponseFilter;
 import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Configuration;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
 import java.io.*;
-import java.util.List;
 
 /**
  * JAX-RS container filter that monitors HTTP requests and responses and sends telemetry data to Treblle.
@@ -29,6 +38,14 @@ import java.util.List;
  * sends monitoring data to the Treblle API. It supports path exclusion patterns and configurable
  * masking of sensitive data.
  * <p>
+ * The filter is also a {@link ReaderInterceptor} and a {@link WriterInterceptor}, and registering
+ * the class registers all roles. Bodies are captured as they stream: the request body as the
+ * application reads it, so the application always gets the complete stream at its own pace, and
+ * the response body as the message body writer writes it, so telemetry sees exactly the bytes
+ * the client received. Only the first {@code maxBodySizeInBytes} bytes of each are kept, and a
+ * request body the application never reads is not captured. With their default priority, the
+ * interceptors run inside entity coders such as gzip encoding and capture uncompressed bodies.
+ * <p>
  * <b>Configuration:</b>
  * Configure this filter by setting properties in your JAX-RS Application or ResourceConfig:
  * <ul>
@@ -43,7 +60,8 @@ import java.util.List;
  * @see TreblleServletFilter
  * @since 1.0.0
  */
-public class TreblleContainerFilter implements ContainerRequestFilter, ContainerResponseFilter {
+public class TreblleContainerFilter
+        implements ContainerRequestFilter, ContainerResponseFilter, ReaderInterceptor, WriterInterceptor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TreblleContainerFilter.class);
 
@@ -51,8 +69,9 @@ public class TreblleContainerFilter implements ContainerRequestFilter, Container
 
     private static final String TREBLLE_EXCLUDED_PROPERTY = "treblle.excluded";
 
-    // ThreadLocal storage for request context data
-    private static final ThreadLocal<TreblleRequestData> REQUEST_DATA = new ThreadLocal<>();
+    // Carries the data of a monitored request through the filters and interceptors; unlike a
+    // thread-local, request properties also follow requests that complete on another thread
+    private static final String TREBLLE_EXCHANGE_PROPERTY = "treblle.exchange";
 
     @Context
     private Configuration configuration;
@@ -62,18 +81,23 @@ public class TreblleContainerFilter implements ContainerRequestFilter, Container
 
     private volatile TreblleService treblleService;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
     /**
      * Container for data collected during request processing
      */
     private static class TreblleRequestData {
-        byte[] requestBody;
-        Object responseEntity;
+        CaptureBuffer requestBody;
         long startTime;
+        long responseTimeInMillis;
+        long captureNanos;
         ContainerRequestContextWrapper requestWrapper;
         ContainerResponseContextWrapper responseWrapper;
-        boolean excluded;
+        boolean awaitingEntity;
+
+        void release() {
+            if (requestBody != null) {
+                requestBody.reset();
+            }
+        }
     }
 
     /**
@@ -94,11 +118,7 @@ public class TreblleContainerFilter implements ContainerRequestFilter, Container
      * @param treblleProperties the configuration properties
      */
     public TreblleContainerFilter(TreblleProperties treblleProperties) {
-        this.treblleService = new TreblleServiceImpl(
-                SDK_NAME,
-                treblleProperties,
-                new ObjectMapper()
-        );
+        this.treblleService = TreblleServiceRegistry.acquire(SDK_NAME, treblleProperties);
     }
 
     /**
@@ -109,10 +129,9 @@ public class TreblleContainerFilter implements ContainerRequestFilter, Container
             synchronized (this) {
                 if (treblleService == null) {
                     try {
-                        treblleService = new TreblleServiceImpl(
+                        treblleService = TreblleServiceRegistry.acquire(
                                 SDK_NAME,
-                                new ContainerFilterTreblleProperties(configuration),
-                                new ObjectMapper()
+                                new ContainerFilterTreblleProperties(configuration)
                         );
                     } catch (IllegalStateException e) {
                         LOGGER.error("CRITICAL: Failed to initialize Treblle SDK: {}", e.getMessage(), e);
@@ -126,136 +145,215 @@ public class TreblleContainerFilter implements ContainerRequestFilter, Container
 
     @Override
     public void filter(ContainerRequestContext containerRequestContext) throws IOException {
-        TreblleRequestData data = new TreblleRequestData();
-        REQUEST_DATA.set(data);
-
         try {
             // Start timing
-            data.startTime = System.currentTimeMillis();
+            final long startTime = System.currentTimeMillis();
 
             // Check if this path should be excluded from monitoring
             String requestPath = extractRequestPath(containerRequestContext);
-            List<String> excludedPaths = getTreblleService().getProperties().getExcludedPaths();
 
-            if (PathMatcher.isExcluded(requestPath, excludedPaths)) {
-                // Mark as excluded
-                data.excluded = true;
+            if (!getTreblleService().isCaptured(requestPath, 0, containerRequestContext.getMethod(),
+                    containerRequestContext.getHeaderString(HttpHeaders.CONTENT_TYPE))) {
+                // Mark as excluded; unsampled requests are skipped the same way
                 containerRequestContext.setProperty(TREBLLE_EXCLUDED_PROPERTY, Boolean.TRUE);
-                return; // Skip request body caching
-            }
-
-            // Capture request body if present
-            if (containerRequestContext.hasEntity()) {
-                InputStream inputStream = containerRequestContext.getEntityStream();
-                int maxSize = getTreblleService().getMaxBodySizeInBytes();
-
-                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-                byte[] chunk = new byte[1024];
-                int bytesRead;
-                int totalRead = 0;
-
-                while ((bytesRead = inputStream.read(chunk)) != -1) {
-                    if (totalRead + bytesRead > maxSize) {
-                        // Truncate at limit
-                        int remaining = maxSize - totalRead;
-                        if (remaining > 0) {
-                            buffer.write(chunk, 0, remaining);
-                        }
-                        LOGGER.debug("Request body exceeds limit, truncating at {} bytes", maxSize);
-                        break;
-                    }
-                    buffer.write(chunk, 0, bytesRead);
-                    totalRead += bytesRead;
-                }
-
-                data.requestBody = buffer.toByteArray();
-
-                // Reset entity stream for resource method to consume
-                containerRequestContext.setEntityStream(new ByteArrayInputStream(data.requestBody));
-            } else {
-                data.requestBody = new byte[0];
+                return;
             }
 
-            // Store request wrapper for later use
+            final long captureStart = System.nanoTime();
+            TreblleRequestData data = new TreblleRequestData();
+            data.startTime = startTime;
+            // The request body is captured by aroundReadFrom() while the application reads it
             data.requestWrapper = new ContainerRequestContextWrapper(containerRequestContext, resourceInfo);
+            data.captureNanos = System.nanoTime() - captureStart;
+            containerRequestContext.setProperty(TREBLLE_EXCHANGE_PROPERTY, data);
 
         } catch (Exception e) {
             // Log but don't fail the request
             LOGGER.error("Error in Treblle request filter", e);
-            data.requestBody = new byte[0];
+        }
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException, WebApplicationException {
+        Object exchange = context.getProperty(TREBLLE_EXCHANGE_PROPERTY);
+        if (!(exchange instanceof TreblleRequestData) || ((TreblleRequestData) exchange).requestBody != null) {
+            return context.proceed();
+        }
+
+        // Entity coders run outside this interceptor, so the bytes are decoded whatever the
+        // Content-Encoding says
+        final int limit = getTreblleService().getCapturePolicy().limitFor(
+                context.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE), null);
+        if (limit <= 0) {
+            // Not a body Treblle can show; the request size is not reported, so do not even count
+            return context.proceed();
+        }
+
+        // Tee the entity into a pooled buffer; the reader still consumes the original stream
+        final TreblleRequestData data = (TreblleRequestData) exchange;
+        final InputStream entityStream = context.getInputStream();
+        data.requestBody = new CaptureBuffer();
+        final TeeInputStream tee = new TeeInputStream(entityStream, data.requestBody, limit);
+        context.setInputStream(tee);
+        try {
+            return context.proceed();
+        } finally {
+            context.setInputStream(entityStream);
+            data.requestWrapper.setBodyTruncated(tee.isTruncated());
         }
     }
 
     @Override
     public void filter(ContainerRequestContext containerRequestContext,
                        ContainerResponseContext containerResponseContext) throws IOException {
+        TreblleRequestData data = null;
         try {
-            TreblleRequestData data = REQUEST_DATA.get();
-            if (data == null || data.excluded) {
-                REQUEST_DATA.remove();
-                return; // Skip
+            Object exchange = containerRequestContext.getProperty(TREBLLE_EXCHANGE_PROPERTY);
+            if (!(exchange instanceof TreblleRequestData)) {
+                return; // Excluded or unsampled
             }
-
-            // Capture response entity and wrapper
-            data.responseEntity = containerResponseContext.getEntity();
-            data.responseWrapper = new ContainerResponseContextWrapper(containerResponseContext);
+            data = (TreblleRequestData) exchange;
 
             // Calculate response time
             long responseTimeInMillis = System.currentTimeMillis() - data.startTime;
 
-            // Serialize response entity to bytes
-            byte[] responseBody = new byte[0];
-            if (data.responseEntity != null) {
-                try {
-                    String json = objectMapper.writeValueAsString(data.responseEntity);
-                    responseBody = json.getBytes("UTF-8");
-                } catch (Exception e) {
-                    LOGGER.debug("Could not serialize response entity", e);
-                }
+            // Fast, successful responses may be dropped by tail sampling before anything is captured
+            if (!getTreblleService().isReported(containerResponseContext.getStatus(), null, responseTimeInMillis)) {
+                data.release();
+                return;
             }
 
-            // Create payload while still in request scope
-            TrebllePayload payload = getTreblleService().createPayload(
-                    data.requestWrapper,
-                    data.responseWrapper,
-                    null,
-                    responseTimeInMillis
-            );
-
-            // Send asynchronously (payload already contains all extracted data)
-            sendToTreblle(payload, data.requestBody, responseBody);
+            final long captureStart = System.nanoTime();
+            data.responseTimeInMillis = responseTimeInMillis;
+            data.responseWrapper = new ContainerResponseContextWrapper(containerResponseContext);
+            data.captureNanos += System.nanoTime() - captureStart;
+
+            if (isEntityWritten(containerRequestContext, containerResponseContext)) {
+                // The entity is only written after the response filters; aroundWriteTo() captures
+                // it as it goes out and reports the exchange
+                data.awaitingEntity = true;
+                // Should no message body writer run after all, the exchange is reported once the
+                // container closes the entity stream
+                final TreblleRequestData awaiting = data;
+                containerResponseContext.setEntityStream(new CompletionOutputStream(
+                        containerResponseContext.getEntityStream(), () -> reportUnwritten(awaiting)));
+            } else {
+                report(data, null);
+            }
 
         } catch (Exception exception) {
             // NEVER let Treblle errors crash the response
             LOGGER.error("Error in Treblle response filter", exception);
-        } finally {
-            // Always clean up ThreadLocal
-            REQUEST_DATA.remove();
+            if (data != null) {
+                data.release();
+            }
         }
     }
 
-    private void sendToTreblle(final TrebllePayload payload, final byte[] requestBody, final byte[] responseBody) {
-        // Send asynchronously to avoid blocking the response
-        new Thread(() -> {
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        Object exchange = context.getProperty(TREBLLE_EXCHANGE_PROPERTY);
+        if (!(exchange instanceof TreblleRequestData) || !((TreblleRequestData) exchange).awaitingEntity) {
+            context.proceed();
+            return;
+        }
+        final TreblleRequestData data = (TreblleRequestData) exchange;
+        data.awaitingEntity = false;
+
+        // Tee the entity bytes into a pooled buffer while the message body writer produces them
+        final long captureStart = System.nanoTime();
+        // As for requests, entity coders compress only after this interceptor
+        final int limit = getTreblleService().getCapturePolicy().limitFor(
+                context.getMediaType() != null ? context.getMediaType().toString() : null, null);
+        if (limit == CapturePolicy.SKIP) {
+            data.captureNanos += System.nanoTime() - captureStart;
             try {
-                getTreblleService().maskAndSendPayload(
-                        payload,
-                        requestBody != null ? requestBody : new byte[0],
-                        responseBody,
-                        null
-                );
-            } catch (Exception e) {
-                LOGGER.error("Error sending data to Treblle", e);
+                context.proceed();
+            } catch (IOException | RuntimeException exception) {
+                data.release();
+                throw exception;
+            }
+            report(data, null);
+            return;
+        }
+        final OutputStream entityStream = context.getOutputStream();
+        final CaptureBuffer responseBody = new CaptureBuffer();
+        final TeeOutputStream tee = new TeeOutputStream(entityStream, responseBody, limit);
+        context.setOutputStream(tee);
+        data.captureNanos += System.nanoTime() - captureStart;
+        try {
+            context.proceed();
+        } catch (IOException | RuntimeException exception) {
+            // The client did not get the complete entity, so there is nothing to report
+            responseBody.reset();
+            data.release();
+            throw exception;
+        } finally {
+            context.setOutputStream(entityStream);
+        }
+
+        data.responseWrapper.setBodySize(tee.getCount());
+        report(data, responseBody);
+    }
+
+    /**
+     * Tells whether a message body writer will run for the response. Containers drop the entity of
+     * a {@code HEAD} request and of {@code 204} and {@code 304} responses.
+     */
+    private static boolean isEntityWritten(ContainerRequestContext request, ContainerResponseContext response) {
+        int status = response.getStatus();
+        return response.hasEntity() && status != 204 && status != 304 && !HttpMethod.HEAD.equals(request.getMethod());
+    }
+
+    /**
+     * Reports an exchange whose entity stream was closed before any message body writer ran,
+     * e.g., because a later filter removed the entity.
+     */
+    private void reportUnwritten(TreblleRequestData data) {
+        if (data.awaitingEntity) {
+            data.awaitingEntity = false;
+            report(data, null);
+        }
+    }
+
+    /**
+     * Snapshots a kept exchange once its response body is known and submits it to the service's
+     * telemetry workers, which build, mask and send the payload. Ownership of both body buffers
+     * passes to the snapshot.
+     */
+    private void report(TreblleRequestData data, CaptureBuffer responseBody) {
+        final long captureStart = System.nanoTime();
+        try {
+            RawExchange exchange = RawExchange.capture(
+                    data.requestWrapper,
+                    data.responseWrapper,
+                    data.requestBody,
+                    responseBody,
+                    null,
+                    System.currentTimeMillis(),
+                    data.responseTimeInMillis
+            );
+            data.requestBody = null;
+            getTreblleService().getMetrics().recordCapture(data.captureNanos + System.nanoTime() - captureStart);
+            getTreblleService().submit(exchange);
+        } catch (Exception telemetryException) {
+            // NEVER let Treblle errors crash the response
+            data.release();
+            if (responseBody != null) {
+                responseBody.reset();
             }
-        }, "treblle-async").start();
+            LOGGER.error("An error occurred while sending data to Treblle", telemetryException);
+        }
     }
 
     /**
-     * Cleanup method called when filter is being destroyed
+     * Cleanup method called when filter is being destroyed. Releases this filter's reference to
+     * the shared service, which is shut down once no other filter uses it.
      */
-    public void destroy() {
-        if (treblleService instanceof TreblleServiceImpl) {
-            ((TreblleServiceImpl) treblleService).shutdown();
+    public synchronized void destroy() {
+        if (treblleService != null) {
+            TreblleServiceRegistry.release(treblleService);
+            treblleService = null;
         }
     }
 
@@ -1,13 +1,13 @@
 package com.treblle.javax;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.treblle.common.dto.TrebllePayload;
+import com.treblle.common.infrastructure.CaptureBuffer;
+import com.treblle.common.infrastructure.RawExchange;
+import com.treblle.common.service.CapturePolicy;
 import com.treblle.common.service.TreblleService;
-import com.treblle.common.utils.PathMatcher;
 import com.treblle.javax.configuration.ServletFilterTreblleProperties;
 import com.treblle.javax.infrastructure.ContentCachingRequestWrapper;
 import com.treblle.javax.infrastructure.ContentCachingResponseWrapper;
-import com.treblle.javax.service.TreblleServiceImpl;
+import com.treblle.javax.service.TreblleServiceRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,7 +15,8 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Servlet filter that monitors HTTP requests and responses and sends telemetry data to Treblle.
@@ -46,14 +47,17 @@ public class TreblleServletFilter implements Filter {
 
     private TreblleService treblleService;
 
+    private boolean reportStreamsEarly;
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         try {
-            this.treblleService = new TreblleServiceImpl(
+            // Filters with identical settings share one service, its workers and connections
+            this.treblleService = TreblleServiceRegistry.acquire(
                     SDK_NAME,
-                    new ServletFilterTreblleProperties(filterConfig),
-                    new ObjectMapper()
+                    new ServletFilterTreblleProperties(filterConfig)
             );
+            this.reportStreamsEarly = treblleService.getProperties().isReportStreamsEarly();
         } catch (IllegalStateException e) {
             // Re-throw as ServletException so container knows filter failed to initialize
             throw new ServletException("Failed to initialize Treblle SDK: " + e.getMessage(), e);
@@ -63,24 +67,41 @@ public class TreblleServletFilter implements Filter {
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
-        int maxBodySize = treblleService.getMaxBodySizeInBytes();
-
-        final ContentCachingRequestWrapper cachingRequest =
-                new ContentCachingRequestWrapper((HttpServletRequest) request, maxBodySize);
-        final ContentCachingResponseWrapper cachingResponse =
-                new ContentCachingResponseWrapper((HttpServletResponse) response, maxBodySize);
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            // Dispatched from an AsyncContext; the original dispatch already captures it
+            filterChain.doFilter(request, response);
+            return;
+        }
 
-        // Check if this path should be excluded from monitoring
-        String requestPath = extractRequestPath(cachingRequest);
-        List<String> excludedPaths = treblleService.getProperties().getExcludedPaths();
+        // Decide before wrapping, so excluded and unsampled requests reach the chain untouched
+        final HttpServletRequest httpRequest = (HttpServletRequest) request;
+        final String requestUri = httpRequest.getRequestURI();
 
-        if (PathMatcher.isExcluded(requestPath, excludedPaths)) {
+        if (!treblleService.isCaptured(requestUri, pathOffset(httpRequest, requestUri),
+                httpRequest.getMethod(), httpRequest.getContentType())) {
             // Skip Treblle monitoring - just pass through to next filter
-            filterChain.doFilter(cachingRequest, cachingResponse);
+            filterChain.doFilter(request, response);
             return;
         }
 
+        final long captureStart = System.nanoTime();
+        // The request's content type is known now; the response's once the application writes
+        final CapturePolicy capturePolicy = treblleService.getCapturePolicy();
+        final int requestLimit = capturePolicy.limitFor(httpRequest.getContentType(), httpRequest.getHeader("Content-Encoding"));
+
+        final ContentCachingRequestWrapper cachingRequest =
+                new ContentCachingRequestWrapper(httpRequest, requestLimit);
+        final ContentCachingResponseWrapper cachingResponse =
+                new ContentCachingResponseWrapper((HttpServletResponse) response, capturePolicy);
+        cachingRequest.setAsyncResponse(cachingResponse);
+        final long wrapNanos = System.nanoTime() - captureStart;
+
         final long start = System.currentTimeMillis();
+        if (reportStreamsEarly) {
+            // Runs on the writing thread once a streamed response's prefix is sent
+            cachingResponse.setStreamPrefixCallback(
+                    () -> finishCapture(cachingRequest, cachingResponse, null, start, wrapNanos, false));
+        }
         Exception potentialException = null;
 
         try {
@@ -89,43 +110,12 @@ public class TreblleServletFilter implements Filter {
             potentialException = exception;
             // Don't re-throw yet - need to restore response first
         } finally {
-            final long responseTimeInMillis = System.currentTimeMillis() - start;
-            final byte[] requestBody = cachingRequest.getContentAsByteArray();
-            final byte[] responseBody = cachingResponse.getContentAsByteArray();
-
-            // CRITICAL: Restore response body FIRST before any other operations
-            // Wrap in try-catch to prevent masking original exception
-            boolean responseRestored = false;
-            try {
-                cachingResponse.copyBodyToResponse();
-                responseRestored = true;
-            } catch (IOException copyException) {
-                // Log but don't override original exception
-                LOGGER.error("CRITICAL: Failed to restore response body to client", copyException);
-
-                // If there was no original exception, this IS the problem
-                if (potentialException == null) {
-                    potentialException = copyException;
-                } else {
-                    // Add as suppressed exception to preserve both
-                    potentialException.addSuppressed(copyException);
-                }
-            }
-
-            // Only send if response was successfully restored
-            if (responseRestored) {
-                try {
-                    TrebllePayload payload = treblleService.createPayload(
-                            cachingRequest,
-                            cachingResponse,
-                            potentialException,
-                            responseTimeInMillis
-                    );
-                    treblleService.maskAndSendPayload(payload, requestBody, responseBody, potentialException);
-                } catch (Exception telemetryException) {
-                    // Never let errors crash the request
-                    LOGGER.error("An error occurred while sending data to Treblle", telemetryException);
-                }
+            if (potentialException == null && cachingRequest.isAsyncStarted()) {
+                // The response is completed later, on another thread: finish from the async listener
+                // so that no container thread waits for it
+                deferCapture(cachingRequest, cachingResponse, start, wrapNanos);
+            } else {
+                potentialException = finishCapture(cachingRequest, cachingResponse, potentialException, start, wrapNanos, true);
             }
         }
 
@@ -143,30 +133,177 @@ public class TreblleServletFilter implements Filter {
         }
     }
 
+    /**
+     * Sends the response body, if still buffered, then snapshots the exchange and submits it,
+     * unless a streamed response was already reported early.
+     *
+     * @param restoreBody whether the body still has to be copied to the client
+     * @return the exception to rethrow, including a failure to send the body
+     */
+    private Exception finishCapture(ContentCachingRequestWrapper cachingRequest, ContentCachingResponseWrapper cachingResponse,
+                                    Exception potentialException, long start, long wrapNanos, boolean restoreBody) {
+        // A stream lasts as long as the client listens, so it is timed to its first byte
+        final long firstByteTimeMillis = cachingResponse.getFirstByteTimeMillis();
+        final long responseTimeInMillis = (cachingResponse.isStreaming() && firstByteTimeMillis != 0
+                ? firstByteTimeMillis : System.currentTimeMillis()) - start;
+        final long restoreStart = System.nanoTime();
+        // Take over the captured request body; it is released once the payload is built
+        final CaptureBuffer requestBody = cachingRequest.detachContent();
+
+        // CRITICAL: Restore response body FIRST before any other operations
+        // Wrap in try-catch to prevent masking original exception
+        boolean responseRestored = false;
+        try {
+            if (restoreBody) {
+                cachingResponse.copyBodyToResponse();
+            }
+            responseRestored = true;
+        } catch (IOException copyException) {
+            // Log but don't override original exception
+            LOGGER.error("CRITICAL: Failed to restore response body to client", copyException);
+
+            // If there was no original exception, this IS the problem
+            if (potentialException == null) {
+                potentialException = copyException;
+            } else {
+                // Add as suppressed exception to preserve both
+                potentialException.addSuppressed(copyException);
+            }
+        }
+
+        final CaptureBuffer responseBody = cachingResponse.detachContent();
+
+        // Only send if response was successfully restored and tail sampling keeps it
+        if (responseRestored && !cachingResponse.isStreamReported() && treblleService.isReported(
+                cachingResponse.getStatus(), potentialException, responseTimeInMillis)) {
+            try {
+                // Snapshot only; the payload is built, masked and sent by the telemetry workers
+                RawExchange exchange = RawExchange.capture(
+                        cachingRequest,
+                        cachingResponse,
+                        requestBody,
+                        responseBody,
+                        potentialException,
+                        System.currentTimeMillis(),
+                        responseTimeInMillis
+                );
+                treblleService.getMetrics().recordCapture(wrapNanos + System.nanoTime() - restoreStart);
+                treblleService.submit(exchange);
+            } catch (Exception telemetryException) {
+                // Never let errors crash the request
+                requestBody.reset();
+                responseBody.reset();
+                LOGGER.error("An error occurred while sending data to Treblle", telemetryException);
+            }
+        } else {
+            requestBody.reset();
+            responseBody.reset();
+            treblleService.getMetrics().recordCapture(wrapNanos + System.nanoTime() - restoreStart);
+        }
+        return potentialException;
+    }
+
+    /**
+     * Hands an asynchronously completed request over to an {@link AsyncListener}. Output written
+     * so far is sent, and later output goes straight to the client while being captured.
+     */
+    private void deferCapture(ContentCachingRequestWrapper cachingRequest, ContentCachingResponseWrapper cachingResponse,
+                              long start, long wrapNanos) {
+        try {
+            cachingResponse.startPassThrough();
+            cachingRequest.getAsyncContext().addListener(new AsyncCaptureListener(cachingRequest, cachingResponse, start, wrapNanos));
+        } catch (IOException | IllegalStateException exception) {
+            // Never let errors crash the request; the exchange is just not reported
+            cachingRequest.release();
+            cachingResponse.release();
+            LOGGER.error("An error occurred while capturing an asynchronous request for Treblle", exception);
+        }
+    }
+
+    /**
+     * Finishes the capture of a request once its async processing completes. A timeout or error
+     * is recorded and reported with the exchange when the container completes the request, which
+     * it does itself if the application does not. Bodies read or written with non-blocking I/O
+     * are complete by then, and their errors are reported too.
+     */
+    private final class AsyncCaptureListener implements AsyncListener {
+
+        private final ContentCachingRequestWrapper cachingRequest;
+        private final ContentCachingResponseWrapper cachingResponse;
+        private final long start;
+        private final long wrapNanos;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile Exception failure;
+
+        AsyncCaptureListener(ContentCachingRequestWrapper cachingRequest, ContentCachingResponseWrapper cachingResponse,
+                             long start, long wrapNanos) {
+            this.cachingRequest = cachingRequest;
+            this.cachingResponse = cachingResponse;
+            this.start = start;
+            this.wrapNanos = wrapNanos;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            if (finished.compareAndSet(false, true)) {
+                Exception error = failure;
+                if (error == null) {
+                    // Non-blocking I/O errors only reach the application's read and write listeners
+                    Throwable ioFailure = cachingRequest.getReadFailure() != null
+                            ? cachingRequest.getReadFailure() : cachingResponse.getWriteFailure();
+                    error = ioFailure != null ? asException(ioFailure) : null;
+                }
+                finishCapture(cachingRequest, cachingResponse, error, start, wrapNanos, false);
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            failure = new TimeoutException("Asynchronous request timed out after "
+                    + event.getAsyncContext().getTimeout() + " ms");
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            failure = asException(event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Async processing restarted after a dispatch; listeners must register again
+            event.getAsyncContext().addListener(this);
+        }
+
+        private Exception asException(Throwable throwable) {
+            return throwable instanceof Exception ? (Exception) throwable : new ServletException(throwable);
+        }
+    }
+
     @Override
     public void destroy() {
-        if (treblleService instanceof TreblleServiceImpl) {
-            ((TreblleServiceImpl) treblleService).shutdown();
+        if (treblleService != null) {
+            TreblleServiceRegistry.release(treblleService);
+            treblleService = null;
         }
     }
 
     /**
-     * Extract the request path for pattern matching.
-     * Uses servlet request URI without context path.
+     * Locate the request path for pattern matching: the servlet request URI without the context
+     * path, as an offset so the URI is not copied.
      *
-     * @param request The HTTP servlet request
-     * @return The request path (e.g., "/api/users")
+     * @param request    The HTTP servlet request
+     * @param requestURI The request URI (e.g., "/app/api/users")
+     * @return Index at which the request path (e.g., "/api/users") starts
      */
-    private String extractRequestPath(HttpServletRequest request) {
-        String requestURI = request.getRequestURI();
+    private static int pathOffset(HttpServletRequest request, String requestURI) {
         String contextPath = request.getContextPath();
 
-        // Remove context path if present
+        // Skip context path if present
         if (contextPath != null && !contextPath.isEmpty() && requestURI.startsWith(contextPath)) {
-            return requestURI.substring(contextPath.length());
+            return contextPath.length();
         }
 
-        return requestURI;
+        return 0;
     }
 
 }
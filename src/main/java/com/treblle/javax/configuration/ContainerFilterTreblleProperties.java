@@ -1,5 +1,7 @@
 package com.treblle.javax.configuration;
 
+import com.treblle.common.configuration.OverflowPolicy;
+import com.treblle.common.configuration.TransportMode;
 import com.treblle.common.configuration.TreblleProperties;
 
 import javax.ws.rs.core.Configuration;
@@ -22,9 +24,39 @@ public class ContainerFilterTreblleProperties implements TreblleProperties {
     private static final String DEBUG = "debugMode";
     private static final String MASKED_KEYWORDS = "maskedKeywords";
     private static final String EXCLUDED_PATHS = "excludedPaths";
+    private static final String EXCLUDED_METHODS = "excludedMethods";
+    private static final String EXCLUDED_CONTENT_TYPES = "excludedContentTypes";
+    private static final String BODY_CAPTURE_POLICIES = "bodyCapturePolicies";
+    private static final String STREAMING_CONTENT_TYPES = "streamingContentTypes";
+    private static final String REPORT_STREAMS_EARLY = "reportStreamsEarly";
     private static final String THREAD_POOL_CORE_SIZE = "threadPoolCoreSize";
     private static final String THREAD_POOL_MAX_SIZE = "threadPoolMaxSize";
     private static final String THREAD_POOL_QUEUE_SIZE = "threadPoolQueueSize";
+    private static final String BATCH_SIZE = "batchSize";
+    private static final String BATCH_LINGER_IN_MILLIS = "batchLingerInMillis";
+    private static final String BATCH_MAX_BYTES = "batchMaxBytes";
+    private static final String OVERFLOW_POLICY = "overflowPolicy";
+    private static final String OVERFLOW_BLOCK_TIMEOUT_IN_MILLIS = "overflowBlockTimeoutInMillis";
+    private static final String SPOOL_DIRECTORY = "spoolDirectory";
+    private static final String SPOOL_ENABLED = "spoolEnabled";
+    private static final String SPOOL_MAX_SIZE_IN_BYTES = "spoolMaxSizeInBytes";
+    private static final String SPOOL_SEGMENT_SIZE_IN_BYTES = "spoolSegmentSizeInBytes";
+    private static final String CIRCUIT_BREAKER_FAILURE_THRESHOLD = "circuitBreakerFailureThreshold";
+    private static final String MAX_RETRIES = "maxRetries";
+    private static final String RETRY_BUDGET_PERCENT = "retryBudgetPercent";
+    private static final String TRANSPORT_MODE = "transportMode";
+    private static final String MAX_CONNECTIONS = "maxConnections";
+    private static final String MAX_CONNECTIONS_PER_ROUTE = "maxConnectionsPerRoute";
+    private static final String ASYNC_MAX_IN_FLIGHT = "asyncMaxInFlight";
+    private static final String ASYNC_IO_THREADS = "asyncIoThreads";
+    private static final String FORCE_HTTP2 = "forceHttp2";
+    private static final String SAMPLE_RATE = "sampleRate";
+    private static final String ROUTE_SAMPLE_RATES = "routeSampleRates";
+    private static final String TARGET_PAYLOADS_PER_SECOND = "targetPayloadsPerSecond";
+    private static final String TAIL_SAMPLE_RATE = "tailSampleRate";
+    private static final String SLOW_REQUEST_THRESHOLD_IN_MILLIS = "slowRequestThresholdInMillis";
+    private static final String ERROR_STATUS_THRESHOLD = "errorStatusThreshold";
+    private static final String JMX_ENABLED = "jmxEnabled";
 
     private final Configuration filterConfig;
 
@@ -99,6 +131,65 @@ public class ContainerFilterTreblleProperties implements TreblleProperties {
         return Collections.emptyList();
     }
 
+    @Override
+    public List<String> getExcludedMethods() {
+        Object value = filterConfig.getProperty(EXCLUDED_METHODS);
+        if (value instanceof String) {
+            return java.util.Arrays.stream(((String) value).split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .collect(java.util.stream.Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getExcludedContentTypes() {
+        Object value = filterConfig.getProperty(EXCLUDED_CONTENT_TYPES);
+        if (value instanceof String) {
+            return java.util.Arrays.stream(((String) value).split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .collect(java.util.stream.Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getBodyCapturePolicies() {
+        Object value = filterConfig.getProperty(BODY_CAPTURE_POLICIES);
+        if (value instanceof String) {
+            return java.util.Arrays.stream(((String) value).split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .collect(java.util.stream.Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getStreamingContentTypes() {
+        Object value = filterConfig.getProperty(STREAMING_CONTENT_TYPES);
+        if (value instanceof String) {
+            return java.util.Arrays.stream(((String) value).split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .collect(java.util.stream.Collectors.toList());
+        }
+        return TreblleProperties.super.getStreamingContentTypes();
+    }
+
+    @Override
+    public boolean isReportStreamsEarly() {
+        Object value = filterConfig.getProperty(REPORT_STREAMS_EARLY);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof String) {
+            return Boolean.parseBoolean((String) value);
+        }
+        return false;
+    }
+
     @Override
     public int getThreadPoolCoreSize() {
         Object value = filterConfig.getProperty(THREAD_POOL_CORE_SIZE);
@@ -135,4 +226,298 @@ public class ContainerFilterTreblleProperties implements TreblleProperties {
         return 100;
     }
 
+    @Override
+    public int getBatchSize() {
+        Object value = filterConfig.getProperty(BATCH_SIZE);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return 1;
+    }
+
+    @Override
+    public long getBatchLingerInMillis() {
+        Object value = filterConfig.getProperty(BATCH_LINGER_IN_MILLIS);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            return Long.parseLong((String) value);
+        }
+        return 200L;
+    }
+
+    @Override
+    public int getBatchMaxBytes() {
+        Object value = filterConfig.getProperty(BATCH_MAX_BYTES);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return 1024 * 1024;
+    }
+
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+        Object value = filterConfig.getProperty(OVERFLOW_POLICY);
+        if (value instanceof OverflowPolicy) {
+            return (OverflowPolicy) value;
+        }
+        if (value instanceof String) {
+            return OverflowPolicy.parse((String) value);
+        }
+        return OverflowPolicy.DROP_NEWEST;
+    }
+
+    @Override
+    public long getOverflowBlockTimeoutInMillis() {
+        Object value = filterConfig.getProperty(OVERFLOW_BLOCK_TIMEOUT_IN_MILLIS);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            return Long.parseLong((String) value);
+        }
+        return 10L;
+    }
+
+    @Override
+    public String getSpoolDirectory() {
+        Object value = filterConfig.getProperty(SPOOL_DIRECTORY);
+        if (value instanceof String) {
+            return (String) value;
+        }
+        return TreblleProperties.super.getSpoolDirectory();
+    }
+
+    @Override
+    public boolean isSpoolEnabled() {
+        Object value = filterConfig.getProperty(SPOOL_ENABLED);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof String) {
+            return Boolean.parseBoolean((String) value);
+        }
+        return false;
+    }
+
+    @Override
+    public long getSpoolMaxSizeInBytes() {
+        Object value = filterConfig.getProperty(SPOOL_MAX_SIZE_IN_BYTES);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            return Long.parseLong((String) value);
+        }
+        return TreblleProperties.super.getSpoolMaxSizeInBytes();
+    }
+
+    @Override
+    public int getSpoolSegmentSizeInBytes() {
+        Object value = filterConfig.getProperty(SPOOL_SEGMENT_SIZE_IN_BYTES);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return TreblleProperties.super.getSpoolSegmentSizeInBytes();
+    }
+
+    @Override
+    public int getCircuitBreakerFailureThreshold() {
+        Object value = filterConfig.getProperty(CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return TreblleProperties.super.getCircuitBreakerFailureThreshold();
+    }
+
+    @Override
+    public int getMaxRetries() {
+        Object value = filterConfig.getProperty(MAX_RETRIES);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return TreblleProperties.super.getMaxRetries();
+    }
+
+    @Override
+    public int getRetryBudgetPercent() {
+        Object value = filterConfig.getProperty(RETRY_BUDGET_PERCENT);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return TreblleProperties.super.getRetryBudgetPercent();
+    }
+
+    @Override
+    public TransportMode getTransportMode() {
+        Object value = filterConfig.getProperty(TRANSPORT_MODE);
+        if (value instanceof TransportMode) {
+            return (TransportMode) value;
+        }
+        if (value instanceof String) {
+            return TransportMode.parse((String) value);
+        }
+        return TransportMode.BLOCKING;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        Object value = filterConfig.getProperty(MAX_CONNECTIONS);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return 10;
+    }
+
+    @Override
+    public int getMaxConnectionsPerRoute() {
+        Object value = filterConfig.getProperty(MAX_CONNECTIONS_PER_ROUTE);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return 5;
+    }
+
+    @Override
+    public int getAsyncMaxInFlight() {
+        Object value = filterConfig.getProperty(ASYNC_MAX_IN_FLIGHT);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return 256;
+    }
+
+    @Override
+    public int getAsyncIoThreads() {
+        Object value = filterConfig.getProperty(ASYNC_IO_THREADS);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return 2;
+    }
+
+    @Override
+    public boolean isForceHttp2() {
+        Object value = filterConfig.getProperty(FORCE_HTTP2);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof String) {
+            return Boolean.parseBoolean((String) value);
+        }
+        return false;
+    }
+
+    @Override
+    public double getSampleRate() {
+        Object value = filterConfig.getProperty(SAMPLE_RATE);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            return Double.parseDouble((String) value);
+        }
+        return 1.0;
+    }
+
+    @Override
+    public List<String> getRouteSampleRates() {
+        Object value = filterConfig.getProperty(ROUTE_SAMPLE_RATES);
+        if (value instanceof String) {
+            return java.util.Arrays.stream(((String) value).split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .collect(java.util.stream.Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int getTargetPayloadsPerSecond() {
+        Object value = filterConfig.getProperty(TARGET_PAYLOADS_PER_SECOND);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return 0;
+    }
+
+    @Override
+    public double getTailSampleRate() {
+        Object value = filterConfig.getProperty(TAIL_SAMPLE_RATE);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            return Double.parseDouble((String) value);
+        }
+        return 1.0;
+    }
+
+    @Override
+    public long getSlowRequestThresholdInMillis() {
+        Object value = filterConfig.getProperty(SLOW_REQUEST_THRESHOLD_IN_MILLIS);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            return Long.parseLong((String) value);
+        }
+        return 1000L;
+    }
+
+    @Override
+    public int getErrorStatusThreshold() {
+        Object value = filterConfig.getProperty(ERROR_STATUS_THRESHOLD);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return 500;
+    }
+
+    @Override
+    public boolean isJmxEnabled() {
+        Object value = filterConfig.getProperty(JMX_ENABLED);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof String) {
+            return Boolean.parseBoolean((String) value);
+        }
+        return true;
+    }
+
 }
@@ -1,5 +1,7 @@
 package com.treblle.javax.configuration;
 
+import com.treblle.common.configuration.OverflowPolicy;
+import com.treblle.common.configuration.TransportMode;
 import com.treblle.common.configuration.TreblleProperties;
 
 import javax.servlet.FilterConfig;
@@ -21,9 +23,39 @@ public class ServletFilterTreblleProperties implements TreblleProperties {
     private static final String DEBUG = "debugMode";
     private static final String MASKED_KEYWORDS = "maskedKeywords";
     private static final String EXCLUDED_PATHS = "excludedPaths";
+    private static final String EXCLUDED_METHODS = "excludedMethods";
+    private static final String EXCLUDED_CONTENT_TYPES = "excludedContentTypes";
+    private static final String BODY_CAPTURE_POLICIES = "bodyCapturePolicies";
+    private static final String STREAMING_CONTENT_TYPES = "streamingContentTypes";
+    private static final String REPORT_STREAMS_EARLY = "reportStreamsEarly";
     private static final String THREAD_POOL_CORE_SIZE = "threadPoolCoreSize";
     private static final String THREAD_POOL_MAX_SIZE = "threadPoolMaxSize";
     private static final String THREAD_POOL_QUEUE_SIZE = "threadPoolQueueSize";
+    private static final String BATCH_SIZE = "batchSize";
+    private static final String BATCH_LINGER_IN_MILLIS = "batchLingerInMillis";
+    private static final String BATCH_MAX_BYTES = "batchMaxBytes";
+    private static final String OVERFLOW_POLICY = "overflowPolicy";
+    private static final String OVERFLOW_BLOCK_TIMEOUT_IN_MILLIS = "overflowBlockTimeoutInMillis";
+    private static final String SPOOL_DIRECTORY = "spoolDirectory";
+    private static final String SPOOL_ENABLED = "spoolEnabled";
+    private static final String SPOOL_MAX_SIZE_IN_BYTES = "spoolMaxSizeInBytes";
+    private static final String SPOOL_SEGMENT_SIZE_IN_BYTES = "spoolSegmentSizeInBytes";
+    private static final String CIRCUIT_BREAKER_FAILURE_THRESHOLD = "circuitBreakerFailureThreshold";
+    private static final String MAX_RETRIES = "maxRetries";
+    private static final String RETRY_BUDGET_PERCENT = "retryBudgetPercent";
+    private static final String TRANSPORT_MODE = "transportMode";
+    private static final String MAX_CONNECTIONS = "maxConnections";
+    private static final String MAX_CONNECTIONS_PER_ROUTE = "maxConnectionsPerRoute";
+    private static final String ASYNC_MAX_IN_FLIGHT = "asyncMaxInFlight";
+    private static final String ASYNC_IO_THREADS = "asyncIoThreads";
+    private static final String FORCE_HTTP2 = "forceHttp2";
+    private static final String SAMPLE_RATE = "sampleRate";
+    private static final String ROUTE_SAMPLE_RATES = "routeSampleRates";
+    private static final String TARGET_PAYLOADS_PER_SECOND = "targetPayloadsPerSecond";
+    private static final String TAIL_SAMPLE_RATE = "tailSampleRate";
+    private static final String SLOW_REQUEST_THRESHOLD_IN_MILLIS = "slowRequestThresholdInMillis";
+    private static final String ERROR_STATUS_THRESHOLD = "errorStatusThreshold";
+    private static final String JMX_ENABLED = "jmxEnabled";
 
     private final FilterConfig filterConfig;
 
@@ -78,6 +110,55 @@ public class ServletFilterTreblleProperties implements TreblleProperties {
                 .orElse(Collections.emptyList());
     }
 
+    @Override
+    public List<String> getExcludedMethods() {
+        return Optional.ofNullable(filterConfig.getInitParameter(EXCLUDED_METHODS))
+                .map(methods -> Arrays.asList(methods.split(",")))
+                .map(list -> list.stream()
+                        .map(String::trim)
+                        .filter(s -> !s.isEmpty())
+                        .collect(java.util.stream.Collectors.toList()))
+                .orElse(Collections.emptyList());
+    }
+
+    @Override
+    public List<String> getExcludedContentTypes() {
+        return Optional.ofNullable(filterConfig.getInitParameter(EXCLUDED_CONTENT_TYPES))
+                .map(types -> Arrays.asList(types.split(",")))
+                .map(list -> list.stream()
+                        .map(String::trim)
+                        .filter(s -> !s.isEmpty())
+                        .collect(java.util.stream.Collectors.toList()))
+                .orElse(Collections.emptyList());
+    }
+
+    @Override
+    public List<String> getBodyCapturePolicies() {
+        return Optional.ofNullable(filterConfig.getInitParameter(BODY_CAPTURE_POLICIES))
+                .map(policies -> Arrays.asList(policies.split(",")))
+                .map(list -> list.stream()
+                        .map(String::trim)
+                        .filter(s -> !s.isEmpty())
+                        .collect(java.util.stream.Collectors.toList()))
+                .orElse(Collections.emptyList());
+    }
+
+    @Override
+    public List<String> getStreamingContentTypes() {
+        return Optional.ofNullable(filterConfig.getInitParameter(STREAMING_CONTENT_TYPES))
+                .map(types -> Arrays.asList(types.split(",")))
+                .map(list -> list.stream()
+                        .map(String::trim)
+                        .filter(s -> !s.isEmpty())
+                        .collect(java.util.stream.Collectors.toList()))
+                .orElseGet(TreblleProperties.super::getStreamingContentTypes);
+    }
+
+    @Override
+    public boolean isReportStreamsEarly() {
+        return Optional.ofNullable(filterConfig.getInitParameter(REPORT_STREAMS_EARLY)).map(Boolean::parseBoolean).orElse(false);
+    }
+
     @Override
     public int getThreadPoolCoreSize() {
         return Optional.ofNullable(filterConfig.getInitParameter(THREAD_POOL_CORE_SIZE))
@@ -99,4 +180,176 @@ public class ServletFilterTreblleProperties implements TreblleProperties {
                 .orElse(100);
     }
 
+    @Override
+    public int getBatchSize() {
+        return Optional.ofNullable(filterConfig.getInitParameter(BATCH_SIZE))
+                .map(Integer::parseInt)
+                .orElse(1);
+    }
+
+    @Override
+    public long getBatchLingerInMillis() {
+        return Optional.ofNullable(filterConfig.getInitParameter(BATCH_LINGER_IN_MILLIS))
+                .map(Long::parseLong)
+                .orElse(200L);
+    }
+
+    @Override
+    public int getBatchMaxBytes() {
+        return Optional.ofNullable(filterConfig.getInitParameter(BATCH_MAX_BYTES))
+                .map(Integer::parseInt)
+                .orElse(1024 * 1024);
+    }
+
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+        return Optional.ofNullable(filterConfig.getInitParameter(OVERFLOW_POLICY))
+                .map(OverflowPolicy::parse)
+                .orElse(OverflowPolicy.DROP_NEWEST);
+    }
+
+    @Override
+    public long getOverflowBlockTimeoutInMillis() {
+        return Optional.ofNullable(filterConfig.getInitParameter(OVERFLOW_BLOCK_TIMEOUT_IN_MILLIS))
+                .map(Long::parseLong)
+                .orElse(10L);
+    }
+
+    @Override
+    public String getSpoolDirectory() {
+        return Optional.ofNullable(filterConfig.getInitParameter(SPOOL_DIRECTORY))
+                .orElseGet(TreblleProperties.super::getSpoolDirectory);
+    }
+
+    @Override
+    public boolean isSpoolEnabled() {
+        return Optional.ofNullable(filterConfig.getInitParameter(SPOOL_ENABLED)).map(Boolean::parseBoolean).orElse(false);
+    }
+
+    @Override
+    public long getSpoolMaxSizeInBytes() {
+        return Optional.ofNullable(filterConfig.getInitParameter(SPOOL_MAX_SIZE_IN_BYTES))
+                .map(Long::parseLong)
+                .orElseGet(TreblleProperties.super::getSpoolMaxSizeInBytes);
+    }
+
+    @Override
+    public int getSpoolSegmentSizeInBytes() {
+        return Optional.ofNullable(filterConfig.getInitParameter(SPOOL_SEGMENT_SIZE_IN_BYTES))
+                .map(Integer::parseInt)
+                .orElseGet(TreblleProperties.super::getSpoolSegmentSizeInBytes);
+    }
+
+    @Override
+    public int getCircuitBreakerFailureThreshold() {
+        return Optional.ofNullable(filterConfig.getInitParameter(CIRCUIT_BREAKER_FAILURE_THRESHOLD))
+                .map(Integer::parseInt)
+                .orElseGet(TreblleProperties.super::getCircuitBreakerFailureThreshold);
+    }
+
+    @Override
+    public int getMaxRetries() {
+        return Optional.ofNullable(filterConfig.getInitParameter(MAX_RETRIES))
+                .map(Integer::parseInt)
+                .orElseGet(TreblleProperties.super::getMaxRetries);
+    }
+
+    @Override
+    public int getRetryBudgetPercent() {
+        return Optional.ofNullable(filterConfig.getInitParameter(RETRY_BUDGET_PERCENT))
+                .map(Integer::parseInt)
+                .orElseGet(TreblleProperties.super::getRetryBudgetPercent);
+    }
+
+    @Override
+    public TransportMode getTransportMode() {
+        return Optional.ofNullable(filterConfig.getInitParameter(TRANSPORT_MODE))
+                .map(TransportMode::parse)
+                .orElse(TransportMode.BLOCKING);
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return Optional.ofNullable(filterConfig.getInitParameter(MAX_CONNECTIONS))
+                .map(Integer::parseInt)
+                .orElse(10);
+    }
+
+    @Override
+    public int getMaxConnectionsPerRoute() {
+        return Optional.ofNullable(filterConfig.getInitParameter(MAX_CONNECTIONS_PER_ROUTE))
+                .map(Integer::parseInt)
+                .orElse(5);
+    }
+
+    @Override
+    public int getAsyncMaxInFlight() {
+        return Optional.ofNullable(filterConfig.getInitParameter(ASYNC_MAX_IN_FLIGHT))
+                .map(Integer::parseInt)
+                .orElse(256);
+    }
+
+    @Override
+    public int getAsyncIoThreads() {
+        return Optional.ofNullable(filterConfig.getInitParameter(ASYNC_IO_THREADS))
+                .map(Integer::parseInt)
+                .orElse(2);
+    }
+
+    @Override
+    public boolean isForceHttp2() {
+        return Optional.ofNullable(filterConfig.getInitParameter(FORCE_HTTP2)).map(Boolean::parseBoolean).orElse(false);
+    }
+
+    @Override
+    public double getSampleRate() {
+        return Optional.ofNullable(filterConfig.getInitParameter(SAMPLE_RATE))
+                .map(Double::parseDouble)
+                .orElse(1.0);
+    }
+
+    @Override
+    public List<String> getRouteSampleRates() {
+        return Optional.ofNullable(filterConfig.getInitParameter(ROUTE_SAMPLE_RATES))
+                .map(rates -> Arrays.asList(rates.split(",")))
+                .map(list -> list.stream()
+                        .map(String::trim)
+                        .filter(s -> !s.isEmpty())
+                        .collect(java.util.stream.Collectors.toList()))
+                .orElse(Collections.emptyList());
+    }
+
+    @Override
+    public int getTargetPayloadsPerSecond() {
+        return Optional.ofNullable(filterConfig.getInitParameter(TARGET_PAYLOADS_PER_SECOND))
+                .map(Integer::parseInt)
+                .orElse(0);
+    }
+
+    @Override
+    public double getTailSampleRate() {
+        return Optional.ofNullable(filterConfig.getInitParameter(TAIL_SAMPLE_RATE))
+                .map(Double::parseDouble)
+                .orElse(1.0);
+    }
+
+    @Override
+    public long getSlowRequestThresholdInMillis() {
+        return Optional.ofNullable(filterConfig.getInitParameter(SLOW_REQUEST_THRESHOLD_IN_MILLIS))
+                .map(Long::parseLong)
+                .orElse(1000L);
+    }
+
+    @Override
+    public int getErrorStatusThreshold() {
+        return Optional.ofNullable(filterConfig.getInitParameter(ERROR_STATUS_THRESHOLD))
+                .map(Integer::parseInt)
+                .orElse(500);
+    }
+
+    @Override
+    public boolean isJmxEnabled() {
+        return Optional.ofNullable(filterConfig.getInitParameter(JMX_ENABLED)).map(Boolean::parseBoolean).orElse(true);
+    }
+
 }
@@ -0,0 +1,55 @@
+package com.treblle.javax.infrastructure;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that passes every byte on to the wrapped stream and runs a callback once, when
+ * the stream is closed. Lets a filter learn that the container completed a response, whether or
+ * not anything was written to it.
+ *
+ * @since 2.1.0
+ */
+public class CompletionOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private Runnable onClose;
+
+    /**
+     * @param out     the stream that receives all bytes
+     * @param onClose runs after the wrapped stream is closed, at most once
+     */
+    public CompletionOutputStream(OutputStream out, Runnable onClose) {
+        this.out = out;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            Runnable callback = onClose;
+            onClose = null;
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+
+}
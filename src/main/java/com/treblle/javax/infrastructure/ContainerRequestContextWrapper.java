@@ -16,6 +16,7 @@ public class ContainerRequestContextWrapper implements RequestWrapper {
 
     private final ContainerRequestContext containerRequestContext;
     private final ResourceInfo resourceInfo;
+    private boolean bodyTruncated;
 
     public ContainerRequestContextWrapper(ContainerRequestContext containerRequestContext, ResourceInfo resourceInfo) {
         this.containerRequestContext = containerRequestContext;
@@ -63,6 +64,11 @@ public class ContainerRequestContextWrapper implements RequestWrapper {
                 .stream().collect(Collectors.toMap(Map.Entry::getKey, e -> String.join(",", e.getValue())));
     }
 
+    @Override
+    public String getQueryString() {
+        return containerRequestContext.getUriInfo().getRequestUri().getRawQuery();
+    }
+
     @Override
     public String getRoutePath() {
         if (resourceInfo == null) {
@@ -135,4 +141,20 @@ public class ContainerRequestContextWrapper implements RequestWrapper {
         // Generic fallback
         return "JAX-RS Container";
     }
+
+    @Override
+    public boolean isBodyTruncated() {
+        return bodyTruncated;
+    }
+
+    /**
+     * Records whether the entity was longer than the captured prefix, once it has been read.
+     *
+     * @param bodyTruncated {@code true} if bytes beyond the capture limit were read
+     * @since 2.1.0
+     */
+    public void setBodyTruncated(boolean bodyTruncated) {
+        this.bodyTruncated = bodyTruncated;
+    }
+
 }
@@ -10,6 +10,7 @@ import java.util.stream.Collectors;
 public class ContainerResponseContextWrapper implements ResponseWrapper {
 
     private final ContainerResponseContext containerResponseContext;
+    private long bodySize = -1;
 
     public ContainerResponseContextWrapper(ContainerResponseContext containerResponseContext) {
         this.containerResponseContext = containerResponseContext;
@@ -34,4 +35,19 @@ public class ContainerResponseContextWrapper implements ResponseWrapper {
         return null;
     }
 
+    @Override
+    public long getBodySize() {
+        return bodySize;
+    }
+
+    /**
+     * Records how many body bytes were written, once the entity has been written.
+     *
+     * @param bodySize the body size in bytes
+     * @since 2.1.0
+     */
+    public void setBodySize(long bodySize) {
+        this.bodySize = bodySize;
+    }
+
 }
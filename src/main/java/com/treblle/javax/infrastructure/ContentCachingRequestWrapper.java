@@ -1,13 +1,16 @@
 package com.treblle.javax.infrastructure;
 
+import com.treblle.common.infrastructure.CaptureBuffer;
 import com.treblle.common.infrastructure.RequestWrapper;
+import com.treblle.common.service.CapturePolicy;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URLEncoder;
@@ -18,22 +21,33 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
 
     private static final String POST_REQUEST = "POST";
 
-    private final ByteArrayOutputStream cachedContent;
+    private CaptureBuffer cachedContent;
     private final Integer contentCacheLimit;
     private ServletInputStream inputStream;
     private BufferedReader reader;
+    private ServletResponse asyncResponse;
+    private volatile Throwable readFailure;
 
     public ContentCachingRequestWrapper(HttpServletRequest request) {
         this(request, 2 * 1024 * 1024);  // Default 2MB limit
     }
 
+    /**
+     * @param request           the request to wrap
+     * @param contentCacheLimit bytes of the body to capture; {@code 0} captures nothing and
+     *                          {@link CapturePolicy#SKIP} leaves the input stream unwrapped
+     */
     public ContentCachingRequestWrapper(HttpServletRequest request, int contentCacheLimit) {
         super(request);
-        this.cachedContent = new ByteArrayOutputStream(contentCacheLimit);
+        // Segments are only drawn from the shared pool once body bytes arrive
+        this.cachedContent = new CaptureBuffer();
         this.contentCacheLimit = contentCacheLimit;
     }
 
     public ServletInputStream getInputStream() throws IOException {
+        if (this.contentCacheLimit == CapturePolicy.SKIP) {
+            return this.getRequest().getInputStream();
+        }
         if (this.inputStream == null) {
             this.inputStream = new ContentCachingInputStream(this.getRequest().getInputStream());
         }
@@ -41,6 +55,26 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
         return this.inputStream;
     }
 
+    /**
+     * Sets the response that {@link #startAsync()} hands to the async context, so that output
+     * the application writes asynchronously still goes through the capturing response.
+     *
+     * @param asyncResponse the wrapped response of this request
+     * @since 2.1.0
+     */
+    public void setAsyncResponse(ServletResponse asyncResponse) {
+        this.asyncResponse = asyncResponse;
+    }
+
+    @Override
+    public AsyncContext startAsync() throws IllegalStateException {
+        if (this.asyncResponse == null) {
+            return super.startAsync();
+        }
+        // Without arguments the container would hand out the unwrapped request and response
+        return super.startAsync(this, this.asyncResponse);
+    }
+
     public String getCharacterEncoding() {
         String enc = super.getCharacterEncoding();
         return enc != null ? enc : "ISO-8859-1";
@@ -93,7 +127,7 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
 
     private void writeRequestParametersToCachedContent() {
         try {
-            if (this.cachedContent.size() == 0) {
+            if (this.cachedContent.size() == 0 && this.contentCacheLimit > 0) {
                 String requestEncoding = this.getCharacterEncoding();
                 Map<String, String[]> form = super.getParameterMap();
                 Iterator<String> nameIterator = form.keySet().iterator();
@@ -130,6 +164,37 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
         return this.cachedContent.toByteArray();
     }
 
+    /**
+     * Returns the capture buffer's segments to the shared pool. The cached content is discarded.
+     */
+    public void release() {
+        this.cachedContent.reset();
+    }
+
+    /**
+     * Hands the captured body over without copying it. The caller becomes responsible for
+     * resetting the returned buffer; the wrapper continues with an empty one.
+     *
+     * @return the buffer holding the captured body
+     * @since 2.1.0
+     */
+    public CaptureBuffer detachContent() {
+        CaptureBuffer detached = this.cachedContent;
+        this.cachedContent = new CaptureBuffer();
+        return detached;
+    }
+
+    /**
+     * Returns the error the container reported to a {@link ReadListener} set on this request's
+     * input stream, such as the client aborting a non-blocking upload.
+     *
+     * @return the read error, or {@code null}
+     * @since 2.1.0
+     */
+    public Throwable getReadFailure() {
+        return this.readFailure;
+    }
+
     protected void handleContentOverflow(int contentCacheLimit) {
     }
 
@@ -148,6 +213,17 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
         return getRequest().getParameterMap().entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> String.join(",", e.getValue())));
     }
 
+    @Override
+    public boolean isBodyTruncated() {
+        return this.inputStream instanceof ContentCachingInputStream && ((ContentCachingInputStream) this.inputStream).overflow;
+    }
+
+    @Override
+    public Map<String, String[]> getParameters() {
+        // The wrapped request's map, so that reading it never writes form parameters into the capture
+        return getRequest().getParameterMap();
+    }
+
     @Override
     public String getRoutePath() {
         // Try to extract from Spring MVC
@@ -181,6 +257,8 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
 
         private final ServletInputStream is;
         private boolean overflow = false;
+        // Set once the end of the body was read, blocking or non-blocking
+        private volatile boolean finished = false;
 
         public ContentCachingInputStream(ServletInputStream is) {
             this.is = is;
@@ -188,7 +266,9 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
 
         public int read() throws IOException {
             int ch = this.is.read();
-            if (ch != -1 && !this.overflow) {
+            if (ch == -1) {
+                this.finished = true;
+            } else if (!this.overflow) {
                 if (ContentCachingRequestWrapper.this.contentCacheLimit != null && ContentCachingRequestWrapper.this.cachedContent.size() == ContentCachingRequestWrapper.this.contentCacheLimit) {
                     this.overflow = true;
                     ContentCachingRequestWrapper.this.handleContentOverflow(ContentCachingRequestWrapper.this.contentCacheLimit);
@@ -207,6 +287,9 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
         }
 
         private void writeToCache(final byte[] b, final int off, int count) {
+            if (count == -1) {
+                this.finished = true;
+            }
             if (!this.overflow && count > 0) {
                 if (ContentCachingRequestWrapper.this.contentCacheLimit != null && count + ContentCachingRequestWrapper.this.cachedContent.size() > ContentCachingRequestWrapper.this.contentCacheLimit) {
                     this.overflow = true;
@@ -233,7 +316,7 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
         }
 
         public boolean isFinished() {
-            return this.is.isFinished();
+            return this.finished || this.is.isFinished();
         }
 
         public boolean isReady() {
@@ -241,7 +324,38 @@ public class ContentCachingRequestWrapper extends HttpServletRequestWrapper impl
         }
 
         public void setReadListener(ReadListener readListener) {
-            this.is.setReadListener(readListener);
+            this.is.setReadListener(new CapturingReadListener(readListener));
+        }
+
+        /**
+         * Passes the container's non-blocking read callbacks on to the application. The
+         * application reads through this stream, so every chunk is captured as it arrives, on the
+         * container's thread and without blocking it; this listener only records how the body ended.
+         */
+        private class CapturingReadListener implements ReadListener {
+
+            private final ReadListener delegate;
+
+            CapturingReadListener(ReadListener delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void onDataAvailable() throws IOException {
+                this.delegate.onDataAvailable();
+            }
+
+            @Override
+            public void onAllDataRead() throws IOException {
+                ContentCachingInputStream.this.finished = true;
+                this.delegate.onAllDataRead();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                ContentCachingRequestWrapper.this.readFailure = throwable;
+                this.delegate.onError(throwable);
+            }
         }
     }
 
@@ -1,6 +1,8 @@
 package com.treblle.javax.infrastructure;
 
+import com.treblle.common.infrastructure.CaptureBuffer;
 import com.treblle.common.infrastructure.ResponseWrapper;
+import com.treblle.common.service.CapturePolicy;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
@@ -14,10 +16,25 @@ import java.util.List;
 
 public class ContentCachingResponseWrapper extends HttpServletResponseWrapper implements ResponseWrapper {
 
-    private final ByteArrayOutputStream content;
+    private CaptureBuffer content;
     private final int contentCacheLimit;
+    private final CapturePolicy capturePolicy;
+    // Decided from the content type once the first body byte is written
+    private int captureLimit;
+    private boolean captureLimitResolved;
+    private long bodySize;
     private boolean limitExceeded = false;
     private boolean dataWrittenToOriginal = false;
+    private boolean contentCopied = false;
+    // Read on container threads once output is non-blocking or completed asynchronously
+    private volatile boolean passThrough = false;
+    private volatile Throwable writeFailure;
+    // Decided from the content type once the first body byte is written
+    private boolean streamingResolved;
+    private volatile boolean streaming;
+    private volatile long firstByteTimeMillis;
+    private Runnable streamPrefixCallback;
+    private volatile boolean streamReported;
     private ServletOutputStream outputStream;
     private PrintWriter writer;
     private Integer contentLength;
@@ -29,8 +46,37 @@ public class ContentCachingResponseWrapper extends HttpServletResponseWrapper im
 
     public ContentCachingResponseWrapper(HttpServletResponse response, int contentCacheLimit) {
         super(response);
-        this.content = new ByteArrayOutputStream(Math.min(contentCacheLimit, 1024));
+        this.content = new CaptureBuffer();
         this.contentCacheLimit = contentCacheLimit;
+        this.capturePolicy = null;
+    }
+
+    /**
+     * Creates a wrapper that decides how much of the body to capture from the response's content
+     * type and encoding, as they are when the application writes the first byte.
+     *
+     * @param response      the response to wrap
+     * @param capturePolicy the policy to consult
+     * @since 2.1.0
+     */
+    public ContentCachingResponseWrapper(HttpServletResponse response, CapturePolicy capturePolicy) {
+        super(response);
+        this.content = new CaptureBuffer();
+        this.contentCacheLimit = 0;
+        this.capturePolicy = capturePolicy;
+    }
+
+    private int captureLimit() {
+        if (!this.captureLimitResolved) {
+            this.captureLimitResolved = true;
+            if (this.capturePolicy == null) {
+                this.captureLimit = this.contentCacheLimit;
+            } else {
+                String type = this.contentType != null ? this.contentType : this.getResponse().getContentType();
+                this.captureLimit = this.capturePolicy.limitFor(type, super.getHeader("Content-Encoding"));
+            }
+        }
+        return this.captureLimit;
     }
 
     public void sendError(int sc) throws IOException {
@@ -78,6 +124,103 @@ public class ContentCachingResponseWrapper extends HttpServletResponseWrapper im
     }
 
     public void flushBuffer() throws IOException {
+        if (this.passThrough) {
+            super.flushBuffer();
+        }
+    }
+
+    /**
+     * Switches to writing everything straight through to the client, for a response that is
+     * completed asynchronously after the filter chain returned or written with a
+     * {@link WriteListener}. Writer output buffered so far is
+     * sent first; from then on it is captured like stream output, within the capture limit.
+     * {@link #copyBodyToResponse()} is not needed afterwards.
+     *
+     * @throws IOException if sending the buffered output fails
+     * @since 2.1.0
+     */
+    public void startPassThrough() throws IOException {
+        if (this.passThrough) {
+            return;
+        }
+        if (this.writer != null) {
+            this.writer.flush();
+        }
+        if (!this.dataWrittenToOriginal && this.content.size() > 0) {
+            this.content.writeTo(this.getResponse().getOutputStream());
+            this.bodySize = this.content.size();
+            this.content.truncate(captureLimit());
+        }
+        this.dataWrittenToOriginal = true;
+        this.passThrough = true;
+    }
+
+    /**
+     * Registers a callback that reports a streamed response early. It runs once, on the writing
+     * thread, as soon as the prefix allowed by the capture policy has been sent; from then on the
+     * response is only counted, not captured. It does not run for responses that are not streamed.
+     *
+     * @param streamPrefixCallback snapshots and submits the exchange
+     * @since 2.1.0
+     */
+    public void setStreamPrefixCallback(Runnable streamPrefixCallback) {
+        this.streamPrefixCallback = streamPrefixCallback;
+    }
+
+    /**
+     * @return whether the stream prefix callback ran, so the exchange was already reported
+     * @since 2.1.0
+     */
+    public boolean isStreamReported() {
+        return this.streamReported;
+    }
+
+    /**
+     * Returns when the first body byte was sent to the client, as long as it was written through
+     * the output stream or the response is streamed.
+     *
+     * @return epoch milliseconds of the first byte, or {@code 0} if none was sent yet
+     * @since 2.1.0
+     */
+    public long getFirstByteTimeMillis() {
+        return this.firstByteTimeMillis;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return this.streaming;
+    }
+
+    /**
+     * Decides on the first write whether the response is streamed. A streamed response writes
+     * straight through to the client, flushes included, like one completed asynchronously.
+     */
+    private boolean startsStreaming() {
+        if (!this.streamingResolved) {
+            this.streamingResolved = true;
+            String type = this.contentType != null ? this.contentType : this.getResponse().getContentType();
+            if (this.capturePolicy != null && this.capturePolicy.isStreaming(type)) {
+                // Nothing is buffered yet, so nothing has to be sent first
+                this.streaming = true;
+                this.dataWrittenToOriginal = true;
+                this.passThrough = true;
+            }
+        }
+        return this.streaming;
+    }
+
+    /**
+     * Hands a streamed response over to the stream prefix callback once its prefix is captured.
+     */
+    private void reportStreamPrefix(int limit) {
+        if (limit == CapturePolicy.SKIP || this.limitExceeded || this.content.size() >= limit) {
+            Runnable callback = this.streamPrefixCallback;
+            this.streamPrefixCallback = null;
+            // The capture is handed off: never copy into a buffer again
+            this.limitExceeded = true;
+            callback.run();
+            this.streamReported = true;
+        }
     }
 
     public void setContentType(String type) {
@@ -183,31 +326,90 @@ public class ContentCachingResponseWrapper extends HttpServletResponseWrapper im
 
     public void resetBuffer() {
         this.content.reset();
+        this.contentCopied = false;
+        this.bodySize = 0;
     }
 
     public void reset() {
         super.reset();
         this.content.reset();
+        this.contentCopied = false;
+        this.bodySize = 0;
+        // Headers are gone, so the content type may still change
+        this.captureLimitResolved = false;
+        if (!this.streamReported) {
+            this.streamingResolved = false;
+            this.streaming = false;
+        }
     }
 
     public byte[] getContentAsByteArray() {
         return this.content.toByteArray();
     }
 
+    /**
+     * Returns the error the container reported to a {@link WriteListener} set on this response's
+     * output stream, such as the client disconnecting during a non-blocking write.
+     *
+     * @return the write error, or {@code null}
+     * @since 2.1.0
+     */
+    public Throwable getWriteFailure() {
+        return this.writeFailure;
+    }
+
     public int getContentSize() {
         return this.content.size();
     }
 
+    @Override
+    public long getBodySize() {
+        if (this.dataWrittenToOriginal && captureLimit() == CapturePolicy.SKIP) {
+            return -1;
+        }
+        return Math.max(this.bodySize, this.content.size());
+    }
+
+    /**
+     * Returns the capture buffer's segments to the shared pool. The cached content is discarded.
+     */
+    public void release() {
+        this.content.reset();
+    }
+
+    /**
+     * Hands the captured body over without copying it. The caller becomes responsible for
+     * resetting the returned buffer; the wrapper continues with an empty one.
+     * <p>
+     * The body stays available after {@link #copyBodyToResponse()}, so it can be detached
+     * once it has been sent to the client.
+     *
+     * @return the buffer holding the captured body
+     * @since 2.1.0
+     */
+    public CaptureBuffer detachContent() {
+        CaptureBuffer detached = this.content;
+        if (!this.dataWrittenToOriginal) {
+            // The writer buffers the whole body for the client; keep only what the policy allows
+            this.bodySize = Math.max(this.bodySize, detached.size());
+            detached.truncate(captureLimit());
+        }
+        this.content = new CaptureBuffer();
+        this.contentCopied = false;
+        return detached;
+    }
+
     public void copyBodyToResponse() throws IOException {
         this.copyBodyToResponse(true);
     }
 
     protected void copyBodyToResponse(boolean complete) throws IOException {
-        if (this.content.size() > 0) {
+        if (this.content.size() > 0 && !this.contentCopied) {
             HttpServletResponse rawResponse = (HttpServletResponse)this.getResponse();
             if (!rawResponse.isCommitted()) {
                 if (complete || this.contentLength != null) {
-                    if (rawResponse.getHeader("Transfer-Encoding") == null) {
+                    // Content written through already carries its own length; the buffer may only hold a prefix
+                    if (!this.dataWrittenToOriginal && rawResponse.getHeader("Transfer-Encoding") == null) {
                         rawResponse.setContentLength(complete ? this.content.size() : this.contentLength);
                     }
 
@@ -224,9 +426,12 @@ public class ContentCachingResponseWrapper extends HttpServletResponseWrapper im
             if (!this.dataWrittenToOriginal) {
                 this.content.writeTo(rawResponse.getOutputStream());
             }
-            this.content.reset();
             if (complete) {
+                // Keep the body for telemetry, but never send it twice
+                this.contentCopied = true;
                 super.flushBuffer();
+            } else {
+                this.content.reset();
             }
         }
 
@@ -241,32 +446,64 @@ public class ContentCachingResponseWrapper extends HttpServletResponseWrapper im
         }
 
         public void write(int b) throws IOException {
+            if (!streamingResolved) {
+                startsStreaming();
+            }
             os.write(b);  // Always write to original
             dataWrittenToOriginal = true;
+            if (firstByteTimeMillis == 0) {
+                firstByteTimeMillis = System.currentTimeMillis();
+            }
+            int limit = captureLimit();
+            if (limit != CapturePolicy.SKIP) {
+                bodySize++;
 
-            if (!limitExceeded && content.size() < contentCacheLimit) {
-                ContentCachingResponseWrapper.this.content.write(b);
-            } else {
-                limitExceeded = true;
+                if (!limitExceeded && content.size() < limit) {
+                    ContentCachingResponseWrapper.this.content.write(b);
+                } else {
+                    limitExceeded = true;
+                }
+            }
+            if (streaming && streamPrefixCallback != null) {
+                reportStreamPrefix(limit);
             }
         }
 
         public void write(byte[] b, int off, int len) throws IOException {
+            if (!streamingResolved) {
+                startsStreaming();
+            }
             os.write(b, off, len);  // Always write to original
             dataWrittenToOriginal = true;
-
-            if (!limitExceeded) {
-                int availableSpace = contentCacheLimit - content.size();
-                if (availableSpace > 0) {
-                    int writeLen = Math.min(len, availableSpace);
-                    ContentCachingResponseWrapper.this.content.write(b, off, writeLen);
-                    if (writeLen < len) {
+            if (firstByteTimeMillis == 0 && len > 0) {
+                firstByteTimeMillis = System.currentTimeMillis();
+            }
+            int limit = captureLimit();
+            if (limit != CapturePolicy.SKIP) {
+                bodySize += len;
+
+                if (!limitExceeded) {
+                    int availableSpace = limit - content.size();
+                    if (availableSpace > 0) {
+                        int writeLen = Math.min(len, availableSpace);
+                        ContentCachingResponseWrapper.this.content.write(b, off, writeLen);
+                        if (writeLen < len) {
+                            limitExceeded = true;
+                        }
+                    } else {
                         limitExceeded = true;
                     }
-                } else {
-                    limitExceeded = true;
                 }
             }
+            if (streaming && streamPrefixCallback != null && len > 0) {
+                reportStreamPrefix(limit);
+            }
+        }
+
+        public void flush() throws IOException {
+            if (passThrough) {
+                this.os.flush();
+            }
         }
 
         public boolean isReady() {
@@ -274,13 +511,63 @@ public class ContentCachingResponseWrapper extends HttpServletResponseWrapper im
         }
 
         public void setWriteListener(WriteListener writeListener) {
-            this.os.setWriteListener(writeListener);
+            // Non-blocking output must reach the client as it is written, flushes included
+            try {
+                startPassThrough();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to send buffered response content", ex);
+            }
+            this.os.setWriteListener(new CapturingWriteListener(writeListener));
+        }
+    }
+
+    /**
+     * Passes the container's non-blocking write callbacks on to the application. The application
+     * writes through the capturing stream, so every chunk is captured as it is written; this
+     * listener only records a failed write, for the exchange to report it.
+     */
+    private class CapturingWriteListener implements WriteListener {
+
+        private final WriteListener delegate;
+
+        CapturingWriteListener(WriteListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            this.delegate.onWritePossible();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            writeFailure = throwable;
+            this.delegate.onError(throwable);
         }
     }
 
     private class ResponsePrintWriter extends PrintWriter {
         public ResponsePrintWriter(String characterEncoding) throws UnsupportedEncodingException {
-            super(new OutputStreamWriter(ContentCachingResponseWrapper.this.content, characterEncoding));
+            // Resolve the buffer on every write, so a detached buffer is never written to
+            super(new OutputStreamWriter(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    if (passThrough || !streamingResolved && startsStreaming()) {
+                        getOutputStream().write(b);
+                    } else {
+                        content.write(b);
+                    }
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (passThrough || !streamingResolved && startsStreaming()) {
+                        getOutputStream().write(b, off, len);
+                    } else {
+                        content.write(b, off, len);
+                    }
+                }
+            }, characterEncoding));
         }
 
         public void write(char[] buf, int off, int len) {
@@ -297,6 +584,18 @@ public class ContentCachingResponseWrapper extends HttpServletResponseWrapper im
             super.write(c);
             super.flush();
         }
+
+        public void flush() {
+            // Writes only push characters into the sink; an explicit flush also reaches the client
+            super.flush();
+            if (passThrough) {
+                try {
+                    getOutputStream().flush();
+                } catch (IOException ex) {
+                    this.setError();
+                }
+            }
+        }
     }
 
 }
@@ -0,0 +1,78 @@
+package com.treblle.javax.infrastructure;
+
+import com.treblle.common.infrastructure.CaptureBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that reads through to the wrapped stream and keeps a copy of the first bytes
+ * read, up to a limit, in a {@link CaptureBuffer}. The reader always gets the complete stream;
+ * bytes beyond the limit are just not captured.
+ *
+ * @since 2.1.0
+ */
+public class TeeInputStream extends InputStream {
+
+    private final InputStream in;
+    private final CaptureBuffer content;
+    private final int contentCacheLimit;
+    private boolean truncated;
+
+    /**
+     * @param in                the stream to read from
+     * @param content           receives a copy of the first {@code contentCacheLimit} bytes read
+     * @param contentCacheLimit maximum number of bytes to capture
+     */
+    public TeeInputStream(InputStream in, CaptureBuffer content, int contentCacheLimit) {
+        this.in = in;
+        this.content = content;
+        this.contentCacheLimit = contentCacheLimit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            if (content.size() < contentCacheLimit) {
+                content.write(b);
+            } else {
+                truncated = true;
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            int availableSpace = contentCacheLimit - content.size();
+            if (availableSpace > 0) {
+                content.write(b, off, Math.min(read, availableSpace));
+            }
+            if (read > availableSpace) {
+                truncated = true;
+            }
+        }
+        return read;
+    }
+
+    /**
+     * @return whether bytes beyond the capture limit were read, so only a prefix was captured
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
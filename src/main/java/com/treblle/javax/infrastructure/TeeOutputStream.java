@@ -0,0 +1,69 @@
+package com.treblle.javax.infrastructure;
+
+import com.treblle.common.infrastructure.CaptureBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that passes every byte on to the wrapped stream and keeps a copy of the first
+ * bytes, up to a limit, in a {@link CaptureBuffer}. Bytes beyond the limit are still written,
+ * just not captured.
+ *
+ * @since 2.1.0
+ */
+public class TeeOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final CaptureBuffer content;
+    private final int contentCacheLimit;
+    private long count;
+
+    /**
+     * @param out               the stream that receives all bytes
+     * @param content           receives a copy of the first {@code contentCacheLimit} bytes
+     * @param contentCacheLimit maximum number of bytes to capture
+     */
+    public TeeOutputStream(OutputStream out, CaptureBuffer content, int contentCacheLimit) {
+        this.out = out;
+        this.content = content;
+        this.contentCacheLimit = contentCacheLimit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+        if (content.size() < contentCacheLimit) {
+            content.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+        int availableSpace = contentCacheLimit - content.size();
+        if (availableSpace > 0) {
+            content.write(b, off, Math.min(len, availableSpace));
+        }
+    }
+
+    /**
+     * @return number of bytes written through this stream, captured or not
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
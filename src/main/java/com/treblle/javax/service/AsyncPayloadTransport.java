@@ -0,0 +1,277 @@
+package com.treblle.javax.service;
+
+import com.treblle.common.configuration.TreblleProperties;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.entity.DiscardingEntityConsumer;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
+import org.apache.hc.core5.http.nio.support.BasicResponseConsumer;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.treblle.common.service.AbstractTreblleService.TREBLLE_API_KEY_HEADER;
+import static com.treblle.common.utils.HttpUtils.APPLICATION_JSON_VALUE;
+
+/**
+ * {@link PayloadTransport} on the non-blocking {@link CloseableHttpAsyncClient}.
+ * <p>
+ * {@link #send} hands the request to the client's I/O threads and returns immediately; the
+ * callback runs on an I/O thread once Treblle responds. With
+ * {@link TreblleProperties#isForceHttp2()} every endpoint is served by one HTTP/2 connection
+ * carrying all sends as concurrent streams. Otherwise sends go through a pool of connections:
+ * over TLS, a connection negotiates HTTP/2 through ALPN when the endpoint offers it and then
+ * multiplexes sends the same way, while an HTTP/1.1 connection carries one send at a time. Up to {@link TreblleProperties#getAsyncMaxInFlight()}
+ * sends are in flight at once; beyond that {@link #send} waits for a response, which pushes
+ * back on the workers rather than on request threads.
+ *
+ * @since 2.1.0
+ */
+public final class AsyncPayloadTransport implements PayloadTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncPayloadTransport.class);
+
+    private final CloseableHttpAsyncClient httpClient;
+    private final String sdkToken;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+
+    public AsyncPayloadTransport(TreblleProperties treblleProperties) {
+        this.sdkToken = treblleProperties.getSdkToken();
+        this.maxInFlight = Math.max(1, treblleProperties.getAsyncMaxInFlight());
+        this.inFlight = new Semaphore(maxInFlight);
+
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofSeconds(treblleProperties.getConnectTimeoutInSeconds()))
+                .build();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofSeconds(treblleProperties.getReadTimeoutInSeconds()))
+                .build();
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(Math.max(1, treblleProperties.getAsyncIoThreads()))
+                .build();
+
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "treblle-io-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);  // Don't block JVM shutdown
+            return t;
+        };
+
+        if (treblleProperties.isForceHttp2()) {
+            // One multiplexed connection per endpoint
+            H2AsyncClientBuilder builder = HttpAsyncClients.customHttp2()
+                    .setH2Config(H2Config.custom().setPushEnabled(false).build())
+                    .setDefaultConnectionConfig(connectionConfig)
+                    .setIOReactorConfig(ioReactorConfig)
+                    .setThreadFactory(threadFactory)
+                    .disableAutomaticRetries()
+                    .setDefaultRequestConfig(requestConfig);
+            if (treblleProperties.isDebugMode()) {
+                builder.addRequestInterceptorFirst(new TreblleServiceImpl.RequestLogger())
+                        .addResponseInterceptorFirst(new TreblleServiceImpl.ResponseLogger());
+            }
+            this.httpClient = builder.build();
+        } else {
+            // Pooled connections; TLS connections use HTTP/2 if the endpoint agrees to it in ALPN
+            PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(treblleProperties.getMaxConnections())
+                    .setMaxConnPerRoute(treblleProperties.getMaxConnectionsPerRoute())
+                    .setDefaultConnectionConfig(connectionConfig)
+                    .setDefaultTlsConfig(TlsConfig.custom()
+                            .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                            .build())
+                    .build();
+            HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setIOReactorConfig(ioReactorConfig)
+                    .setThreadFactory(threadFactory)
+                    .disableAutomaticRetries()
+                    .disableCookieManagement()
+                    .setDefaultRequestConfig(requestConfig);
+            if (treblleProperties.isDebugMode()) {
+                builder.addRequestInterceptorFirst(new TreblleServiceImpl.RequestLogger())
+                        .addResponseInterceptorFirst(new TreblleServiceImpl.ResponseLogger());
+            }
+            this.httpClient = builder.build();
+        }
+        this.httpClient.start();
+    }
+
+    @Override
+    public void send(String endpoint, byte[] body, int length, Callback callback) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            callback.failed(exception);
+            return;
+        }
+
+        BasicHttpRequest request = new BasicHttpRequest(Method.POST, URI.create(endpoint));
+        request.setHeader("Content-Type", APPLICATION_JSON_VALUE);
+        request.setHeader(TREBLLE_API_KEY_HEADER, sdkToken);
+        request.setHeader("Content-Encoding", "gzip");
+        request.setHeader("Accept-Encoding", "gzip, deflate");
+
+        try {
+            httpClient.execute(
+                    new BasicRequestProducer(request, new ByteRangeEntityProducer(body, length)),
+                    new BasicResponseConsumer<>(new DiscardingEntityConsumer<>()),
+                    new FutureCallback<Message<HttpResponse, Void>>() {
+
+                        @Override
+                        public void completed(Message<HttpResponse, Void> result) {
+                            inFlight.release();
+                            HttpResponse response = result.getHead();
+                            callback.completed(response.getCode(), RetryAfter.millis(response));
+                        }
+
+                        @Override
+                        public void failed(Exception exception) {
+                            inFlight.release();
+                            callback.failed(exception);
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            inFlight.release();
+                            callback.failed(new CancellationException("Request cancelled"));
+                        }
+
+                    });
+        } catch (RuntimeException exception) {
+            // The client is shut down; execute() did not take ownership of the request
+            inFlight.release();
+            callback.failed(exception);
+        }
+    }
+
+    /**
+     * @return number of sends waiting for a response
+     */
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Waits up to five seconds for sends in flight, then shuts the client down.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!inFlight.tryAcquire(maxInFlight, 5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Closing with {} sends still in flight", getInFlightCount());
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        httpClient.close(CloseMode.GRACEFUL);
+        try {
+            httpClient.awaitShutdown(TimeValue.ofSeconds(5));
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Streams a range of a byte array without copying it.
+     */
+    private static final class ByteRangeEntityProducer implements AsyncEntityProducer {
+
+        private final ByteBuffer content;
+        private final int length;
+
+        ByteRangeEntityProducer(byte[] body, int length) {
+            this.content = ByteBuffer.wrap(body, 0, length);
+            this.length = length;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public void failed(Exception cause) {
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public String getContentType() {
+            return ContentType.APPLICATION_JSON.toString();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return false;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+
+        @Override
+        public int available() {
+            return content.remaining();
+        }
+
+        @Override
+        public void produce(DataStreamChannel channel) throws IOException {
+            if (content.hasRemaining()) {
+                channel.write(content);
+            }
+            if (!content.hasRemaining()) {
+                channel.endStream();
+            }
+        }
+
+        @Override
+        public void releaseResources() {
+        }
+
+    }
+
+}
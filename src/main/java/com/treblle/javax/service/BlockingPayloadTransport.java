@@ -0,0 +1,116 @@
+package com.treblle.javax.service;
+
+import com.treblle.common.configuration.TreblleProperties;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+
+import static com.treblle.common.service.AbstractTreblleService.TREBLLE_API_KEY_HEADER;
+import static com.treblle.common.utils.HttpUtils.APPLICATION_JSON_VALUE;
+
+/**
+ * {@link PayloadTransport} on the classic blocking {@link CloseableHttpClient}.
+ * <p>
+ * {@link #send} returns once Treblle has responded, with the callback already invoked on the
+ * calling thread. Sends in flight are therefore bounded by the worker threads and by
+ * {@link TreblleProperties#getMaxConnectionsPerRoute()}.
+ *
+ * @since 2.1.0
+ */
+public final class BlockingPayloadTransport implements PayloadTransport {
+
+    private final CloseableHttpClient httpClient;
+    private final String sdkToken;
+
+    public BlockingPayloadTransport(TreblleProperties treblleProperties) {
+        this.sdkToken = treblleProperties.getSdkToken();
+
+        // Create connection pool for better performance
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(treblleProperties.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(treblleProperties.getMaxConnectionsPerRoute());
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofSeconds(treblleProperties.getConnectTimeoutInSeconds()))
+                .build());
+
+        // Create singleton HTTP client with optimizations
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofSeconds(treblleProperties.getReadTimeoutInSeconds()))
+                .build();
+
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .disableAutomaticRetries()
+                .setDefaultRequestConfig(requestConfig);
+
+        if (treblleProperties.isDebugMode()) {
+            builder.addRequestInterceptorFirst(new TreblleServiceImpl.RequestLogger())
+                    .addResponseInterceptorFirst(new TreblleServiceImpl.ResponseLogger());
+        }
+
+        this.httpClient = builder.build();
+    }
+
+    @Override
+    public void send(String endpoint, byte[] body, int length, Callback callback) {
+        final HttpPost httpPost = new HttpPost(endpoint);
+        httpPost.setHeader("Content-Type", APPLICATION_JSON_VALUE);
+        httpPost.setHeader(TREBLLE_API_KEY_HEADER, sdkToken);
+        httpPost.setHeader("Content-Encoding", "gzip");
+        httpPost.setHeader("Accept-Encoding", "gzip, deflate");
+
+        // Stream the entity from the buffer without copying it
+        httpPost.setEntity(new ByteArrayEntity(body, 0, length, ContentType.APPLICATION_JSON));
+
+        StatusHandler status = new StatusHandler();
+        try {
+            // The client drains the small response body after the handler returns, so the
+            // connection goes back to the pool, and closes the response whether or not that works
+            httpClient.execute(httpPost, status);
+        } catch (IOException | RuntimeException exception) {
+            if (status.statusCode == StatusHandler.NO_RESPONSE) {
+                callback.failed(exception);
+                return;
+            }
+            // Treblle answered and only draining failed; the payload was delivered, so report the
+            // status rather than have it retried or spooled
+        }
+        callback.completed(status.statusCode, status.retryAfterMillis);
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * Records the status line as soon as it arrives, before the body is drained.
+     */
+    private static final class StatusHandler implements HttpClientResponseHandler<Void> {
+
+        static final int NO_RESPONSE = -1;
+
+        int statusCode = NO_RESPONSE;
+        long retryAfterMillis = RetryAfter.UNSPECIFIED;
+
+        @Override
+        public Void handleResponse(ClassicHttpResponse response) {
+            statusCode = response.getCode();
+            retryAfterMillis = RetryAfter.millis(response);
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,418 @@
+package com.treblle.javax.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append log of compressed payloads on disk, kept in rotating memory-mapped segment files.
+ * <p>
+ * Records are appended to the newest segment as a length, a CRC-32 and the gzip bytes; the length
+ * is written last, so a record only becomes visible once it is complete. Full segments are rotated
+ * out, and segments the reader has moved past are deleted. When a new segment would push the spool
+ * beyond its size cap, the oldest segments are evicted with all the records still in them.
+ * <p>
+ * Records are read in order with {@link #peek()} and only removed with {@link #remove()} once
+ * they were delivered. The read position is persisted in a small mapped cursor file, so records
+ * survive a restart of the JVM: on open, the segments are scanned, records up to the cursor are
+ * skipped and everything after it is replayed. A record whose removal was not yet persisted may
+ * be replayed twice. A lock file keeps two services from using the same directory.
+ *
+ * @since 2.1.0
+ */
+class DiskSpool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskSpool.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CURSOR_FILE = "cursor";
+    private static final String LOCK_FILE = "spool.lock";
+
+    private static final int MAGIC = 0x54524253;  // "TRBS"
+    private static final int SEGMENT_HEADER = 8;  // Magic and a reserved int
+    private static final int RECORD_HEADER = 8;   // Length and CRC-32
+
+    private final Path directory;
+    private final long maxBytes;
+    private final int segmentBytes;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final MappedByteBuffer cursor;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private int readPosition;
+    private long nextSequence = 1;
+    private Segment peekedSegment;
+    private int peekedPosition;
+    private long recordCount;
+    private long sizeInBytes;
+    private long evictedCount;
+    private boolean closed;
+
+    /**
+     * Opens the spool in a directory, recovering records left by a previous run.
+     *
+     * @param directory    spool directory, created if missing
+     * @param maxBytes     cap on the total size of all segments
+     * @param segmentBytes size of one segment file
+     * @throws IOException if the directory cannot be used, e.g., because another service holds it
+     */
+    DiskSpool(String directory, long maxBytes, int segmentBytes) throws IOException {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.segmentBytes = Math.max(segmentBytes, 64 * 1024);
+        Files.createDirectories(this.directory);
+
+        this.lockChannel = FileChannel.open(this.directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException exception) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IOException("Spool directory is in use by another Treblle service: " + directory);
+        }
+        this.lock = acquired;
+
+        try (FileChannel channel = FileChannel.open(this.directory.resolve(CURSOR_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.cursor = channel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        }
+        recover();
+    }
+
+    /**
+     * Appends one record, rotating to a new segment and evicting old ones as needed.
+     *
+     * @param data   buffer holding the record
+     * @param length number of bytes to append from the start of {@code data}
+     * @throws IOException if the record could not be written
+     */
+    synchronized void append(byte[] data, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Spool is closed");
+        }
+        Segment writer = segments.peekLast();
+        if (writer == null || writer.writePosition + RECORD_HEADER + length > writer.capacity) {
+            writer = rotate(RECORD_HEADER + length);
+        }
+
+        crc.reset();
+        crc.update(data, 0, length);
+        MappedByteBuffer buffer = writer.buffer;
+        int position = writer.writePosition;
+        buffer.position(position + RECORD_HEADER);
+        buffer.put(data, 0, length);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        // The length goes in last and makes the record visible to recovery
+        buffer.putInt(position, length);
+
+        writer.writePosition = position + RECORD_HEADER + length;
+        writer.records++;
+        recordCount++;
+    }
+
+    /**
+     * Returns a copy of the oldest record without removing it.
+     *
+     * @return the record, or {@code null} if the spool is empty
+     * @throws IOException if the spool is closed
+     */
+    synchronized byte[] peek() throws IOException {
+        if (closed) {
+            throw new IOException("Spool is closed");
+        }
+        Segment reader = advanceReader();
+        if (reader == null) {
+            return null;
+        }
+        MappedByteBuffer buffer = reader.buffer;
+        byte[] record = new byte[buffer.getInt(readPosition)];
+        buffer.position(readPosition + RECORD_HEADER);
+        buffer.get(record);
+        peekedSegment = reader;
+        peekedPosition = readPosition;
+        return record;
+    }
+
+    /**
+     * Removes the record last returned by {@link #peek()}, unless it was evicted in the meantime.
+     */
+    synchronized void remove() {
+        Segment reader = segments.peekFirst();
+        if (closed || reader == null || reader != peekedSegment || readPosition != peekedPosition) {
+            return;
+        }
+        peekedSegment = null;
+        readPosition += RECORD_HEADER + reader.buffer.getInt(readPosition);
+        reader.records--;
+        recordCount--;
+        cursor.putLong(8, readPosition);
+        advanceReader();
+    }
+
+    synchronized boolean isEmpty() {
+        return recordCount == 0;
+    }
+
+    /**
+     * @return records waiting to be replayed
+     */
+    synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return disk space taken by the segment files
+     */
+    synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * @return records lost because their segment was evicted to respect the size cap
+     */
+    synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Flushes the spool to disk and releases the directory. Segments with records left in them
+     * stay for the next start; an empty spool removes its files.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (recordCount == 0) {
+                for (Segment segment : segments) {
+                    deleteFile(segment.path);
+                }
+                deleteFile(directory.resolve(CURSOR_FILE));
+            } else {
+                for (Segment segment : segments) {
+                    segment.buffer.force();
+                }
+                cursor.force();
+            }
+            segments.clear();
+        } finally {
+            try {
+                lock.release();
+                lockChannel.close();
+            } catch (IOException exception) {
+                LOGGER.warn("Failed to release spool lock in {}", directory, exception);
+            }
+        }
+    }
+
+    /**
+     * Moves the reader past fully read segments, deleting them.
+     *
+     * @return the segment holding the next record, or {@code null} if there is none
+     */
+    private Segment advanceReader() {
+        Segment reader = segments.peekFirst();
+        while (reader != null && readPosition >= reader.writePosition) {
+            if (reader == segments.peekLast()) {
+                return null;  // Caught up with the writer
+            }
+            dropOldest();
+            reader = segments.peekFirst();
+        }
+        return reader;
+    }
+
+    private Segment rotate(int recordBytes) throws IOException {
+        long sequence = nextSequence++;
+        int capacity = Math.max(segmentBytes, SEGMENT_HEADER + recordBytes);
+
+        while (!segments.isEmpty() && sizeInBytes + capacity > maxBytes) {
+            Segment oldest = segments.peekFirst();
+            evictedCount += oldest.records;
+            recordCount -= oldest.records;
+            LOGGER.warn("Spool is full, discarding {} spooled payloads", oldest.records);
+            dropOldest();
+        }
+
+        Path path = directory.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        buffer.putInt(0, MAGIC);
+
+        Segment segment = new Segment(sequence, path, buffer, capacity);
+        segment.writePosition = SEGMENT_HEADER;
+        segments.addLast(segment);
+        sizeInBytes += capacity;
+        if (segments.size() == 1) {
+            moveCursor(segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Deletes the oldest segment and points the reader at the start of the next one.
+     */
+    private void dropOldest() {
+        Segment oldest = segments.pollFirst();
+        sizeInBytes -= oldest.capacity;
+        deleteFile(oldest.path);
+        Segment next = segments.peekFirst();
+        if (next != null) {
+            moveCursor(next);
+        }
+    }
+
+    private void moveCursor(Segment segment) {
+        readPosition = SEGMENT_HEADER;
+        // Offset first: a crash in between replays the old segment rather than skipping the new one
+        cursor.putLong(8, readPosition);
+        cursor.putLong(0, segment.sequence);
+    }
+
+    private void recover() throws IOException {
+        long cursorSequence = cursor.getLong(0);
+        long cursorOffset = cursor.getLong(8);
+        nextSequence = Math.max(1, cursorSequence);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+
+        for (Path file : files) {
+            long sequence;
+            try {
+                String name = file.getFileName().toString();
+                sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException exception) {
+                continue;
+            }
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (sequence < cursorSequence) {
+                deleteFile(file);  // Fully replayed before the last shutdown
+                continue;
+            }
+
+            MappedByteBuffer buffer;
+            int capacity;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                if (size < SEGMENT_HEADER || size > Integer.MAX_VALUE) {
+                    deleteFile(file);
+                    continue;
+                }
+                capacity = (int) size;
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+            if (buffer.getInt(0) != MAGIC) {
+                LOGGER.warn("Discarding unreadable spool segment {}", file);
+                deleteFile(file);
+                continue;
+            }
+
+            Segment segment = new Segment(sequence, file, buffer, capacity);
+            int start = segments.isEmpty() && sequence == cursorSequence
+                    ? (int) Math.max(SEGMENT_HEADER, Math.min(cursorOffset, capacity))
+                    : SEGMENT_HEADER;
+            scan(segment, start);
+            if (segments.isEmpty()) {
+                readPosition = start;
+                if (sequence != cursorSequence) {
+                    moveCursor(segment);
+                }
+            }
+            segments.addLast(segment);
+            sizeInBytes += capacity;
+            recordCount += segment.records;
+        }
+
+        if (recordCount > 0) {
+            LOGGER.info("Recovered {} spooled payloads from {}", recordCount, directory);
+        }
+    }
+
+    /**
+     * Finds the end of the valid records in a recovered segment and counts those after the start.
+     */
+    private void scan(Segment segment, int start) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = SEGMENT_HEADER;
+        int records = 0;
+        while (position + RECORD_HEADER <= segment.capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > segment.capacity - position - RECORD_HEADER) {
+                break;
+            }
+            ByteBuffer data = buffer.duplicate();
+            data.limit(position + RECORD_HEADER + length).position(position + RECORD_HEADER);
+            crc.reset();
+            crc.update(data);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                LOGGER.warn("Spool segment {} is damaged at offset {}, discarding the rest", segment.path, position);
+                break;
+            }
+            if (position >= start) {
+                records++;
+            }
+            position += RECORD_HEADER + length;
+        }
+        segment.writePosition = position;
+        segment.records = records;
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException exception) {
+            // Still mapped on some platforms; segments behind the cursor are removed on the next open
+            LOGGER.debug("Failed to delete spool file {}", file, exception);
+        }
+    }
+
+    private static final class Segment {
+
+        private final long sequence;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int writePosition;
+        private long records;
+
+        private Segment(long sequence, Path path, MappedByteBuffer buffer, int capacity) {
+            this.sequence = sequence;
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.treblle.javax.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Reusable output stream that gzip-compresses everything written to it into an in-memory buffer.
+ * <p>
+ * Serializers write JSON straight into this sink, so a payload only ever exists on the heap in its
+ * compressed form. The {@link Deflater} and the output buffer survive {@link #reset()}, which lets
+ * the sink be recycled through a {@link Pool} instead of allocating a new {@code GZIPOutputStream},
+ * native deflate state and backing array for every payload.
+ * <p>
+ * {@link #close()} writes the gzip trailer; afterwards the compressed bytes are available through
+ * {@link #buffer()} and {@link #size()} until the sink is reset.
+ *
+ * @since 2.1.0
+ */
+public final class GzipPayloadSink extends OutputStream {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    // Buffers grown past this size by a large payload are not kept when the sink is recycled
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] single = new byte[1];
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int count;
+    private long uncompressedSize;
+    private boolean finished;
+
+    public GzipPayloadSink() {
+        writeHeader();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Gzip payload sink is already finished");
+        }
+        if (len == 0) {
+            return;
+        }
+        crc.update(b, off, len);
+        uncompressedSize += len;
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    /**
+     * Does nothing: flushing the deflater mid-stream would only degrade compression.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Completes the gzip stream by draining the deflater and writing the trailer. Idempotent.
+     */
+    @Override
+    public void close() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+        writeIntLE((int) crc.getValue());
+        writeIntLE((int) uncompressedSize);
+    }
+
+    /**
+     * Clears the sink for reuse, keeping the deflater and (bounded) output buffer.
+     */
+    public void reset() {
+        deflater.reset();
+        crc.reset();
+        count = 0;
+        uncompressedSize = 0;
+        finished = false;
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        writeHeader();
+    }
+
+    /**
+     * Returns the backing array holding the compressed bytes; only the first {@link #size()} bytes are valid.
+     *
+     * @return the backing array, not a copy
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return number of compressed bytes written so far, including the gzip header
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return number of uncompressed bytes written into the sink since the last reset
+     */
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * Releases the native deflater. The sink must not be used afterwards.
+     */
+    void destroy() {
+        deflater.end();
+    }
+
+    private void deflate() {
+        ensureCapacity(count + 512);
+        count += deflater.deflate(buffer, count, buffer.length - count);
+    }
+
+    private void writeHeader() {
+        ensureCapacity(10);
+        buffer[count++] = (byte) GZIP_MAGIC;
+        buffer[count++] = (byte) (GZIP_MAGIC >> 8);
+        buffer[count++] = Deflater.DEFLATED;
+        // Flags, modification time, extra flags and OS are all left as zero
+        for (int i = 0; i < 7; i++) {
+            buffer[count++] = 0;
+        }
+    }
+
+    private void writeIntLE(int value) {
+        ensureCapacity(count + 4);
+        buffer[count++] = (byte) value;
+        buffer[count++] = (byte) (value >> 8);
+        buffer[count++] = (byte) (value >> 16);
+        buffer[count++] = (byte) (value >> 24);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, minCapacity));
+        }
+    }
+
+    /**
+     * Bounded pool of sinks shared by the telemetry workers.
+     * <p>
+     * When the pool is empty a fresh sink is created; when it is full a returned sink is destroyed,
+     * so the number of retained deflaters never exceeds the pool capacity.
+     */
+    public static final class Pool {
+
+        private final BlockingQueue<GzipPayloadSink> sinks;
+
+        public Pool(int capacity) {
+            this.sinks = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        }
+
+        public GzipPayloadSink acquire() {
+            GzipPayloadSink sink = sinks.poll();
+            return sink != null ? sink : new GzipPayloadSink();
+        }
+
+        public void release(GzipPayloadSink sink) {
+            sink.reset();
+            if (!sinks.offer(sink)) {
+                sink.destroy();
+            }
+        }
+
+        public void clear() {
+            GzipPayloadSink sink;
+            while ((sink = sinks.poll()) != null) {
+                sink.destroy();
+            }
+        }
+
+    }
+
+}
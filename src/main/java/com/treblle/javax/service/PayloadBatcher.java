@@ -0,0 +1,177 @@
+package com.treblle.javax.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.treblle.common.dto.TrebllePayload;
+import com.treblle.common.metrics.TreblleMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Coalesces payloads into batches that are shipped together in one HTTP request.
+ * <p>
+ * Payloads are serialized straight into the gzip sink of the open batch, forming a JSON array.
+ * A batch is closed when it holds {@code batchSize} payloads, when its uncompressed size reaches
+ * {@code maxBytes}, or when the oldest payload in it has waited {@code lingerInMillis}. Closed
+ * batches are handed over together with their payload count: to the batch consumer on the thread
+ * that added the last payload, and to the linger consumer on the scheduler thread if the linger
+ * timer closed them. The linger consumer should only hand the batch on, so that a slow send does
+ * not hold up the next timer. Either consumer owns the sink and must return it to the pool.
+ *
+ * @since 2.1.0
+ */
+class PayloadBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PayloadBatcher.class);
+
+    private final int batchSize;
+    private final int maxBytes;
+    private final long lingerInMillis;
+    private final ObjectMapper objectMapper;
+    private final GzipPayloadSink.Pool sinkPool;
+    private final BiConsumer<GzipPayloadSink, Integer> batchConsumer;
+    private final BiConsumer<GzipPayloadSink, Integer> lingerConsumer;
+    private final ScheduledExecutorService scheduler;
+    private final TreblleMetrics metrics;
+
+    private final Object lock = new Object();
+    private GzipPayloadSink sink;
+    private JsonGenerator generator;
+    private int pendingCount;
+    private long generation;
+
+    PayloadBatcher(int batchSize, int maxBytes, long lingerInMillis,
+                   ObjectMapper objectMapper,
+                   GzipPayloadSink.Pool sinkPool,
+                   BiConsumer<GzipPayloadSink, Integer> batchConsumer,
+                   BiConsumer<GzipPayloadSink, Integer> lingerConsumer,
+                   ScheduledExecutorService scheduler,
+                   TreblleMetrics metrics) {
+        this.batchSize = batchSize;
+        this.maxBytes = maxBytes;
+        this.lingerInMillis = lingerInMillis;
+        this.objectMapper = objectMapper;
+        this.sinkPool = sinkPool;
+        this.batchConsumer = batchConsumer;
+        this.lingerConsumer = lingerConsumer;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Serializes a payload into the open batch, shipping the batch on the calling thread if it is now full.
+     *
+     * @param payload the payload to add
+     * @throws IOException if the payload could not be serialized
+     */
+    void add(TrebllePayload payload) throws IOException {
+        GzipPayloadSink full = null;
+        int fullCount = 0;
+
+        synchronized (lock) {
+            if (sink == null) {
+                open();
+            }
+
+            final long start = System.nanoTime();
+            try {
+                objectMapper.writeValue(generator, payload);
+                metrics.recordSerialize(System.nanoTime() - start);
+            } catch (IOException exception) {
+                // A half-written element leaves the array unusable, so the open batch is discarded
+                sinkPool.release(sink);
+                sink = null;
+                generator = null;
+                generation++;
+                throw exception;
+            }
+            pendingCount++;
+            // Push buffered generator output into the sink so its size is accurate
+            generator.flush();
+
+            if (pendingCount >= batchSize || sink.getUncompressedSize() >= maxBytes) {
+                fullCount = pendingCount;
+                full = close();
+            }
+        }
+
+        if (full != null) {
+            batchConsumer.accept(full, fullCount);
+        }
+    }
+
+    /**
+     * Ships whatever is pending on the calling thread. Used during shutdown.
+     */
+    void flush() {
+        GzipPayloadSink batch;
+        int count;
+        synchronized (lock) {
+            if (sink == null) {
+                return;
+            }
+            count = pendingCount;
+            batch = close();
+        }
+        if (batch != null) {
+            batchConsumer.accept(batch, count);
+        }
+    }
+
+    private void open() throws IOException {
+        sink = sinkPool.acquire();
+        generator = objectMapper.getFactory().createGenerator(sink);
+        generator.writeStartArray();
+        pendingCount = 0;
+        scheduleLinger(generation);
+    }
+
+    private GzipPayloadSink close() {
+        GzipPayloadSink batch = sink;
+        try {
+            generator.writeEndArray();
+            // Closing the generator also closes the sink, which writes the gzip trailer
+            generator.close();
+        } catch (IOException exception) {
+            LOGGER.error("Failed to complete payload batch", exception);
+            sinkPool.release(batch);
+            batch = null;
+        } finally {
+            sink = null;
+            generator = null;
+            generation++;
+        }
+        return batch;
+    }
+
+    private void scheduleLinger(final long expectedGeneration) {
+        try {
+            scheduler.schedule(() -> flushIfStale(expectedGeneration), lingerInMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception exception) {
+            // Scheduler is shutting down; the pending batch is flushed by shutdown instead
+            LOGGER.debug("Could not schedule batch linger flush", exception);
+        }
+    }
+
+    private void flushIfStale(long expectedGeneration) {
+        final GzipPayloadSink batch;
+        final int count;
+        synchronized (lock) {
+            // The batch this timer was armed for has already been shipped
+            if (generation != expectedGeneration || sink == null) {
+                return;
+            }
+            count = pendingCount;
+            batch = close();
+        }
+        if (batch != null) {
+            lingerConsumer.accept(batch, count);
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.treblle.javax.service;
+
+import java.io.Closeable;
+
+/**
+ * Sends gzip-compressed payload bodies to a Treblle endpoint.
+ * <p>
+ * Implementations never throw from {@link #send}; every outcome is reported to the callback,
+ * which may run on the calling thread or on an I/O thread. The body buffer must stay untouched
+ * until the callback has been invoked.
+ *
+ * @see BlockingPayloadTransport
+ * @see AsyncPayloadTransport
+ * @since 2.1.0
+ */
+public interface PayloadTransport extends Closeable {
+
+    /**
+     * Posts a compressed body.
+     *
+     * @param endpoint the Treblle endpoint URL
+     * @param body     buffer holding the compressed body
+     * @param length   number of bytes to send from the start of {@code body}
+     * @param callback receives the outcome
+     */
+    void send(String endpoint, byte[] body, int length, Callback callback);
+
+    /**
+     * Outcome of a single send.
+     */
+    interface Callback {
+
+        /**
+         * Treblle responded.
+         *
+         * @param statusCode       the HTTP status code
+         * @param retryAfterMillis wait Treblle asked for with {@code Retry-After} on a 429 or 503,
+         *                         or {@link RetryAfter#UNSPECIFIED}
+         */
+        void completed(int statusCode, long retryAfterMillis);
+
+        /**
+         * The send failed before a response arrived.
+         *
+         * @param exception the cause
+         */
+        void failed(Exception exception);
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.treblle.javax.service;
+
+import com.treblle.common.dto.TrebllePayload;
+import com.treblle.common.infrastructure.RawExchange;
+
+/**
+ * Element of the telemetry queue: an exchange captured by a filter, whose payload is still to be
+ * built by a worker, a payload that was already built by the caller, a batch closed by the linger
+ * timer, or the compressed body of a failed send that is due for another attempt.
+ *
+ * @since 2.1.0
+ */
+final class QueuedTelemetry {
+
+    private final RawExchange exchange;
+    private final TrebllePayload payload;
+    private final byte[] body;
+    private final GzipPayloadSink batch;
+    private final GzipPayloadSink.Pool batchPool;
+    private final int payloadCount;
+    private final int attempt;
+
+    private QueuedTelemetry(RawExchange exchange, TrebllePayload payload, byte[] body,
+                            GzipPayloadSink batch, GzipPayloadSink.Pool batchPool, int payloadCount, int attempt) {
+        this.exchange = exchange;
+        this.payload = payload;
+        this.body = body;
+        this.batch = batch;
+        this.batchPool = batchPool;
+        this.payloadCount = payloadCount;
+        this.attempt = attempt;
+    }
+
+    static QueuedTelemetry of(RawExchange exchange) {
+        return new QueuedTelemetry(exchange, null, null, null, null, 1, 0);
+    }
+
+    static QueuedTelemetry of(TrebllePayload payload) {
+        return new QueuedTelemetry(null, payload, null, null, null, 1, 0);
+    }
+
+    /**
+     * @param sink         finished sink holding the compressed batch, owned by the element
+     * @param payloadCount number of payloads in the batch
+     * @param pool         pool the sink returns to once it is sent or dropped
+     */
+    static QueuedTelemetry batch(GzipPayloadSink sink, int payloadCount, GzipPayloadSink.Pool pool) {
+        return new QueuedTelemetry(null, null, null, sink, pool, payloadCount, 0);
+    }
+
+    /**
+     * @param body         the compressed body, owned by the element
+     * @param payloadCount number of payloads in the body
+     * @param attempt      number of the next attempt, 1 for the first retry
+     */
+    static QueuedTelemetry retry(byte[] body, int payloadCount, int attempt) {
+        return new QueuedTelemetry(null, null, body, null, null, payloadCount, attempt);
+    }
+
+    /**
+     * @return the captured exchange, or {@code null} if the payload was built by the caller
+     */
+    RawExchange getExchange() {
+        return exchange;
+    }
+
+    /**
+     * @return the prebuilt payload, or {@code null} for a captured exchange
+     */
+    TrebllePayload getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return the compressed body of a retry, or {@code null} if the payload is still to be serialized
+     */
+    byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return the sink of a closed batch, or {@code null} for any other element
+     */
+    GzipPayloadSink getBatch() {
+        return batch;
+    }
+
+    int getPayloadCount() {
+        return payloadCount;
+    }
+
+    /**
+     * @return 0 for a first send, otherwise the number of the retry
+     */
+    int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Frees the exchange's body buffers or the batch's sink when the element is dropped.
+     */
+    void discard() {
+        if (exchange != null) {
+            exchange.release();
+        }
+        if (batch != null) {
+            batchPool.release(batch);
+        }
+    }
+
+}
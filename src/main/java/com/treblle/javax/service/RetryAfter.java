@@ -0,0 +1,73 @@
+package com.treblle.javax.service;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the {@code Retry-After} header of throttling and unavailability responses.
+ *
+ * @since 2.1.0
+ */
+final class RetryAfter {
+
+    /**
+     * Returned when the response does not say when to retry.
+     */
+    static final long UNSPECIFIED = -1;
+
+    /**
+     * Longest wait returned; far beyond any retry delay, and small enough to add jitter to.
+     */
+    static final long MAX_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private RetryAfter() {
+    }
+
+    /**
+     * Returns how long Treblle asked to wait before the next attempt.
+     *
+     * @param response the response
+     * @return the wait in milliseconds, at most {@link #MAX_MILLIS}, or {@link #UNSPECIFIED} without a valid header on a 429 or 503
+     */
+    static long millis(HttpResponse response) {
+        int code = response.getCode();
+        if (code != HttpStatus.SC_TOO_MANY_REQUESTS && code != HttpStatus.SC_SERVICE_UNAVAILABLE) {
+            return UNSPECIFIED;
+        }
+        Header header = response.getFirstHeader("Retry-After");
+        return header != null ? parse(header.getValue(), System.currentTimeMillis()) : UNSPECIFIED;
+    }
+
+    /**
+     * Parses a header value, either delay seconds or an HTTP date.
+     *
+     * @param value     the header value
+     * @param nowMillis current time, to turn a date into a delay
+     * @return the wait in milliseconds, at most {@link #MAX_MILLIS}, or {@link #UNSPECIFIED} if the value is invalid
+     */
+    static long parse(String value, long nowMillis) {
+        if (value == null) {
+            return UNSPECIFIED;
+        }
+        String trimmed = value.trim();
+        try {
+            long seconds = Long.parseLong(trimmed);
+            // Compare in seconds, as a huge value would overflow in milliseconds
+            return seconds >= 0 ? Math.min(seconds, TimeUnit.MILLISECONDS.toSeconds(MAX_MILLIS)) * 1000 : UNSPECIFIED;
+        } catch (NumberFormatException notSeconds) {
+            try {
+                long at = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return Math.min(Math.max(0, at - nowMillis), MAX_MILLIS);
+            } catch (DateTimeParseException notDate) {
+                return UNSPECIFIED;
+            }
+        }
+    }
+
+}
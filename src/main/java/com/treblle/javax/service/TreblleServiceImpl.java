@@ -1,39 +1,66 @@
 package com.treblle.javax.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.treblle.common.configuration.OverflowPolicy;
+import com.treblle.common.configuration.TransportMode;
 import com.treblle.common.configuration.TreblleProperties;
 import com.treblle.common.dto.TrebllePayload;
+import com.treblle.common.infrastructure.RawExchange;
+import com.treblle.common.infrastructure.TelemetryDispatcher;
+import com.treblle.common.infrastructure.TimerWheel;
 import com.treblle.common.service.AbstractTreblleService;
-import org.apache.hc.client5.http.classic.methods.HttpPost;
-import org.apache.hc.client5.http.config.RequestConfig;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
-import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import com.treblle.common.service.EndpointSelector;
+import com.treblle.common.service.RetryBudget;
 import org.apache.hc.core5.http.*;
-import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
 import org.apache.hc.core5.http.protocol.HttpContext;
-import org.apache.hc.core5.util.Timeout;
 
-import java.io.ByteArrayOutputStream;
-import java.util.zip.GZIPOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Optional;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static com.treblle.common.utils.HttpUtils.APPLICATION_JSON_VALUE;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Implementation of Treblle telemetry service for JavaX applications.
  * <p>
  * This service handles asynchronous transmission of monitoring data to the Treblle API
- * using Apache HTTP Client 5. It manages HTTP connections, request/response logging in
- * debug mode, and graceful shutdown of resources.
+ * using Apache HTTP Client 5, through the {@link PayloadTransport} selected by
+ * {@link TreblleProperties#getTransportMode()}. It manages request/response logging in
+ * debug mode and graceful shutdown of resources.
+ * <p>
+ * Captured exchanges are handed to worker threads through a {@link TelemetryDispatcher}, which
+ * build, mask, compress and send the payloads; request threads only take the snapshot. When
+ * the queue is full, {@link OverflowPolicy#SPILL_TO_DISK} copies the snapshot into the spool as
+ * it is, on the request thread, and leaves building its payload to the drainer.
+ * <p>
+ * With {@link TreblleProperties#isSpoolEnabled()}, bodies that could not be delivered are kept in a
+ * {@link DiskSpool} and replayed one at a time by a background drainer, which backs off while
+ * Treblle keeps failing. Payloads spilled by {@link OverflowPolicy#SPILL_TO_DISK} go through the
+ * same spool and drainer.
+ * <p>
+ * Sends that time out or are answered with 408, 429 or a 5xx status are first retried, up to
+ * {@link TreblleProperties#getMaxRetries()} times and within a {@link RetryBudget}. A
+ * {@link TimerWheel} holds each retry for its jittered backoff, or as long as {@code Retry-After}
+ * asks, and then queues it for the workers again, so no worker waits for a retry. Sends that run
+ * out of retries go to the spool, if enabled.
+ * <p>
+ * Unless disabled, the service registers a {@link TreblleServiceMXBean} exposing its
+ * {@link #getMetrics() metrics} over JMX for as long as it runs.
  *
  * @since 1.0.0
  */
@@ -41,8 +68,36 @@ public class TreblleServiceImpl extends AbstractTreblleService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TreblleServiceImpl.class);
 
-    private final CloseableHttpClient httpClient;
-    private final ExecutorService executorService;
+    private static final long SPOOL_IDLE_MILLIS = 1000;
+    private static final long SPOOL_MIN_BACKOFF_MILLIS = 1000;
+    private static final long SPOOL_MAX_BACKOFF_MILLIS = 60_000;
+    // Marks spooled exchange snapshots; spooled bodies start with the gzip magic 0x1f 0x8b
+    private static final byte EXCHANGE_RECORD = 'X';
+
+    private static final long RETRY_TICK_MILLIS = 10;
+    private static final int RETRY_WHEEL_SLOTS = 512;
+    private static final long RETRY_MIN_BACKOFF_MILLIS = 250;
+    private static final long RETRY_MAX_BACKOFF_MILLIS = 10_000;
+    // Longer pauses are not worth holding a payload in memory for; it goes to the spool instead
+    private static final long RETRY_MAX_DELAY_MILLIS = 60_000;
+
+    private final PayloadTransport transport;
+    private final TelemetryDispatcher<QueuedTelemetry> dispatcher;
+    private final DiskSpool spool;
+    private final boolean spoolFailures;
+    private final Thread spoolDrainer;
+    private volatile boolean draining = true;
+    private final LongAdder spooledCount = new LongAdder();
+    private final LongAdder replayedCount = new LongAdder();
+    // Written by the transport callback of a replay, read by the drainer once the replay completed
+    private long replayRetryAfterMillis;
+    private final int maxRetries;
+    private final RetryBudget retryBudget;
+    private final TimerWheel<QueuedTelemetry> retryWheel;
+    private final GzipPayloadSink.Pool sinkPool;
+    private final ScheduledExecutorService batchScheduler;
+    private final PayloadBatcher payloadBatcher;
+    private final ObjectName mbeanName;
 
     /**
      * Creates a new Treblle service instance.
@@ -54,86 +109,489 @@ public class TreblleServiceImpl extends AbstractTreblleService {
     public TreblleServiceImpl(String sdkName, TreblleProperties treblleProperties, ObjectMapper objectMapper) {
         super(sdkName, treblleProperties, objectMapper);
 
-        // Create connection pool for better performance
-        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-        connectionManager.setMaxTotal(10);  // Max total connections
-        connectionManager.setDefaultMaxPerRoute(5);  // Max connections per route
-
-        // Create singleton HTTP client with optimizations
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(Timeout.ofSeconds(treblleProperties.getConnectTimeoutInSeconds()))
-                .setResponseTimeout(Timeout.ofSeconds(treblleProperties.getReadTimeoutInSeconds()))
-                .build();
-
-        HttpClientBuilder builder = HttpClients.custom()
-                .setConnectionManager(connectionManager)
-                .disableAutomaticRetries()
-                .setDefaultRequestConfig(requestConfig);
-
-        if (treblleProperties.isDebugMode()) {
-            builder.addRequestInterceptorFirst(new RequestLogger())
-                    .addResponseInterceptorFirst(new ResponseLogger());
+        if (treblleProperties.getTransportMode() == TransportMode.ASYNC) {
+            this.transport = new AsyncPayloadTransport(treblleProperties);
+            // Sinks stay busy until their send completes, so keep enough around for the sends in flight
+            this.sinkPool = new GzipPayloadSink.Pool(Math.min(treblleProperties.getAsyncMaxInFlight(), 64) + 1);
+        } else {
+            this.transport = new BlockingPayloadTransport(treblleProperties);
+            // One reusable compression sink per worker thread, plus one for an open batch
+            this.sinkPool = new GzipPayloadSink.Pool(treblleProperties.getThreadPoolMaxSize() + 1);
         }
 
-        this.httpClient = builder.build();
+        OverflowPolicy overflowPolicy = treblleProperties.getOverflowPolicy();
+        this.spool = overflowPolicy == OverflowPolicy.SPILL_TO_DISK || treblleProperties.isSpoolEnabled()
+                ? openSpool(treblleProperties)
+                : null;
+        if (overflowPolicy == OverflowPolicy.SPILL_TO_DISK && spool == null) {
+            LOGGER.error("Falling back to DROP_NEWEST without a spool");
+            overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        }
+        this.spoolFailures = spool != null && treblleProperties.isSpoolEnabled();
 
-        // Create bounded thread pool for async tasks with configurable sizes
-        this.executorService = new ThreadPoolExecutor(
+        // Bounded lock-free queue between the filters and the sender workers
+        this.dispatcher = new TelemetryDispatcher<>(
+                "treblle-async-",
+                treblleProperties.getThreadPoolQueueSize(),
                 treblleProperties.getThreadPoolCoreSize(),
                 treblleProperties.getThreadPoolMaxSize(),
-                60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(treblleProperties.getThreadPoolQueueSize()),
-                new ThreadFactory() {
-                    private final AtomicInteger threadNumber = new AtomicInteger(1);
-                    @Override
-                    public Thread newThread(Runnable r) {
-                        Thread t = new Thread(r, "treblle-async-" + threadNumber.getAndIncrement());
-                        t.setDaemon(true);  // Don't block JVM shutdown
-                        return t;
-                    }
-                },
-                new ThreadPoolExecutor.CallerRunsPolicy()  // If queue full, run in caller thread
+                overflowPolicy,
+                treblleProperties.getOverflowBlockTimeoutInMillis(),
+                this::deliver,
+                spool != null ? this::spill : null,
+                QueuedTelemetry::discard
         );
+
+        this.maxRetries = Math.max(0, treblleProperties.getMaxRetries());
+        this.retryBudget = new RetryBudget(treblleProperties.getRetryBudgetPercent());
+        // Due retries go back through the queue and are sent by the workers like any other payload;
+        // the timer thread never waits for room or writes to the spool, so a retry that does not
+        // fit is dropped
+        this.retryWheel = maxRetries > 0 && treblleProperties.getRetryBudgetPercent() > 0
+                ? new TimerWheel<>("treblle-retry-timer", RETRY_TICK_MILLIS, RETRY_WHEEL_SLOTS, dispatcher::offer)
+                : null;
+
+        if (spool != null) {
+            // Also picks up payloads spooled before a restart
+            this.spoolDrainer = new Thread(this::drainSpool, "treblle-spool-drainer");
+            spoolDrainer.setDaemon(true);
+            spoolDrainer.start();
+        } else {
+            this.spoolDrainer = null;
+        }
+
+        // Coalesce payloads into batches when configured
+        if (treblleProperties.getBatchSize() > 1) {
+            this.batchScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "treblle-batch-linger");
+                t.setDaemon(true);
+                return t;
+            });
+            this.payloadBatcher = new PayloadBatcher(
+                    treblleProperties.getBatchSize(),
+                    treblleProperties.getBatchMaxBytes(),
+                    treblleProperties.getBatchLingerInMillis(),
+                    objectMapper,
+                    sinkPool,
+                    this::sendBatch,
+                    // Batches closed by the timer are sent by the workers, so a slow send cannot
+                    // delay the next linger flush
+                    (sink, count) -> dispatcher.offer(QueuedTelemetry.batch(sink, count, sinkPool)),
+                    batchScheduler,
+                    metrics
+            );
+        } else {
+            this.batchScheduler = null;
+            this.payloadBatcher = null;
+        }
+
+        this.mbeanName = treblleProperties.isJmxEnabled()
+                ? new TreblleServiceMetrics(this).register(sdkName)
+                : null;
     }
 
     @Override
     protected void sendPayload(TrebllePayload payload) {
-        CompletableFuture.runAsync(() -> {
-            final HttpPost httpPost = new HttpPost(
-                    Optional.ofNullable(treblleProperties.getCustomTreblleEndpoint())
-                            .orElse(getRandomAPIEndpoint())
-            );
-            httpPost.setHeader("Content-Type", APPLICATION_JSON_VALUE);
-            httpPost.setHeader(TREBLLE_API_KEY_HEADER, treblleProperties.getSdkToken());
-            httpPost.setHeader("Content-Encoding", "gzip");
-            httpPost.setHeader("Accept-Encoding", "gzip, deflate");
+        dispatcher.submit(QueuedTelemetry.of(payload));
+    }
+
+    @Override
+    protected void sendExchange(RawExchange exchange) {
+        dispatcher.submit(QueuedTelemetry.of(exchange));
+    }
+
+    /**
+     * Returns the dispatcher feeding the sender workers, e.g., to read its drop counters.
+     *
+     * @return the telemetry dispatcher
+     * @since 2.1.0
+     */
+    public TelemetryDispatcher<?> getDispatcher() {
+        return dispatcher;
+    }
 
+    /**
+     * Builds the payload if needed, then serializes and ships it on a worker thread, or adds it
+     * to the open batch. A batch closed by the linger timer is shipped as it is.
+     */
+    private void deliver(QueuedTelemetry telemetry) {
+        if (telemetry.getBatch() != null) {
+            sendBatch(telemetry.getBatch(), telemetry.getPayloadCount());
+            return;
+        }
+        if (telemetry.getBody() != null) {
+            byte[] body = telemetry.getBody();
+            post(body, body.length, 0, telemetry.getPayloadCount(), telemetry.getAttempt(), () -> { });
+            return;
+        }
+        try {
+            TrebllePayload payload = resolve(telemetry);
+
+            if (payloadBatcher != null) {
+                payloadBatcher.add(payload);
+                return;
+            }
+
+            // Serialize straight into the compressed sink; the generator closes the sink,
+            // which completes the gzip stream
+            GzipPayloadSink sink = sinkPool.acquire();
+            final long start = System.nanoTime();
             try {
-                // Serialize to JSON
-                String jsonPayload = objectMapper.writeValueAsString(payload);
+                objectMapper.writeValue(sink, payload);
+            } catch (IOException exception) {
+                sinkPool.release(sink);
+                throw exception;
+            }
+            metrics.recordSerialize(System.nanoTime() - start);
+            post(sink.buffer(), sink.size(), sink.getUncompressedSize(), 1, 0, () -> sinkPool.release(sink));
+        } catch (IOException exception) {
+            LOGGER.error("Failed to send payload to Treblle", exception);
+        }
+    }
 
-                // Compress with GZIP
-                ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-                try (GZIPOutputStream gzipStream = new GZIPOutputStream(byteStream)) {
-                    gzipStream.write(jsonPayload.getBytes("UTF-8"));
+    /**
+     * Appends an element that did not fit in the queue to the spool. Runs on the request thread:
+     * a captured exchange is copied into the spool as a raw snapshot, and its payload is built
+     * and compressed by the drainer when the record is replayed. Only a payload the caller
+     * already built is serialized and compressed here.
+     */
+    private void spill(QueuedTelemetry telemetry) {
+        try {
+            if (telemetry.getBody() != null) {
+                spool.append(telemetry.getBody(), telemetry.getBody().length);
+            } else if (telemetry.getExchange() != null) {
+                RawExchange exchange = telemetry.getExchange();
+                ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+                try {
+                    DataOutputStream out = new DataOutputStream(record);
+                    out.writeByte(EXCHANGE_RECORD);
+                    exchange.writeTo(out);
+                    out.flush();
+                } finally {
+                    exchange.release();
+                }
+                spool.append(record.toByteArray(), record.size());
+            } else {
+                GzipPayloadSink sink = sinkPool.acquire();
+                try {
+                    objectMapper.writeValue(sink, telemetry.getPayload());
+                    spool.append(sink.buffer(), sink.size());
+                } finally {
+                    sinkPool.release(sink);
                 }
-                byte[] compressedData = byteStream.toByteArray();
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
 
-                // Create entity with compressed data
-                ByteArrayEntity entity = new ByteArrayEntity(compressedData, ContentType.APPLICATION_JSON);
-                httpPost.setEntity(entity);
+    /**
+     * Replays spooled bodies oldest first, one at a time, until shutdown. A body is only removed
+     * once Treblle accepted it or rejected it for good; while sends keep failing, the drainer
+     * waits with exponential backoff.
+     */
+    private void drainSpool() {
+        long backoffMillis = SPOOL_MIN_BACKOFF_MILLIS;
+        while (draining) {
+            byte[] record;
+            try {
+                record = spool.peek();
+            } catch (IOException exception) {
+                return;  // Closed
+            }
+            if (record == null) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(SPOOL_IDLE_MILLIS));
+                continue;
+            }
 
-                if (treblleProperties.isDebugMode()) {
-                    LOGGER.debug("Payload size - Original: {} bytes, Compressed: {} bytes, Ratio: {}%",
-                            jsonPayload.length(), compressedData.length,
-                            (100 - (compressedData.length * 100 / jsonPayload.length())));
+            byte[] body = record;
+            int length = record.length;
+            GzipPayloadSink sink = null;
+            if (length > 0 && record[0] == EXCHANGE_RECORD) {
+                sink = buildSpilled(record);
+                if (sink == null) {
+                    spool.remove();
+                    continue;
                 }
+                body = sink.buffer();
+                length = sink.size();
+            }
 
-                // Fire-and-forget: execute and immediately close without waiting for response body
-                CloseableHttpResponse response = httpClient.execute(httpPost);
-                int statusCode = response.getCode();
-                response.close();  // Close immediately, don't read body
+            int statusCode;
+            try {
+                statusCode = replay(body, length);
+            } finally {
+                if (sink != null) {
+                    sinkPool.release(sink);
+                }
+            }
+            if (!draining) {
+                return;
+            }
+            if (statusCode < 0 || isRetriable(statusCode)) {
+                long waitMillis = Math.max(backoffMillis, replayRetryAfterMillis);
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitMillis));
+                backoffMillis = Math.min(backoffMillis * 2, SPOOL_MAX_BACKOFF_MILLIS);
+                continue;
+            }
+            if (statusCode >= 300) {
+                LOGGER.warn("Treblle rejected a spooled payload with status code {}, discarding it", statusCode);
+            } else {
+                replayedCount.increment();
+            }
+            spool.remove();
+            backoffMillis = SPOOL_MIN_BACKOFF_MILLIS;
+        }
+    }
 
+    /**
+     * Builds and compresses the payload of an exchange spilled by {@link #spill}.
+     *
+     * @return the sink holding the compressed payload, or {@code null} if the record is unusable
+     */
+    private GzipPayloadSink buildSpilled(byte[] record) {
+        TrebllePayload payload;
+        try {
+            payload = buildPayload(RawExchange.readFrom(
+                    new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1))));
+        } catch (IOException exception) {
+            LOGGER.warn("Discarding unreadable spilled exchange", exception);
+            return null;
+        }
+        GzipPayloadSink sink = sinkPool.acquire();
+        try {
+            objectMapper.writeValue(sink, payload);
+            return sink;
+        } catch (IOException exception) {
+            sinkPool.release(sink);
+            LOGGER.warn("Discarding spilled exchange that could not be serialized", exception);
+            return null;
+        }
+    }
+
+    /**
+     * Sends one spooled body and waits for the outcome.
+     *
+     * @param body   buffer holding the compressed body
+     * @param length number of bytes to send from the start of {@code body}
+     * @return the status code, or -1 if the send failed without a response
+     */
+    private int replay(byte[] body, int length) {
+        replayRetryAfterMillis = RetryAfter.UNSPECIFIED;
+        final EndpointSelector.Endpoint endpoint = endpointSelector.select();
+        if (endpoint == null) {
+            return -1;
+        }
+        final CompletableFuture<Integer> outcome = new CompletableFuture<>();
+        final long start = System.nanoTime();
+        metrics.recordShipped(0, length);
+        // The payload count of a spooled body is unknown, so replays only count as requests
+        transport.send(endpoint.getUrl(), body, length, new PayloadTransport.Callback() {
+
+            @Override
+            public void completed(int statusCode, long retryAfterMillis) {
+                long nanos = System.nanoTime() - start;
+                recordOutcome(endpoint, statusCode, nanos);
+                metrics.recordResponse(statusCode, 0, nanos);
+                replayRetryAfterMillis = retryAfterMillis;
+                outcome.complete(statusCode);
+            }
+
+            @Override
+            public void failed(Exception exception) {
+                long nanos = System.nanoTime() - start;
+                endpointSelector.recordFailure(endpoint, nanos);
+                metrics.recordTransportError(0, nanos);
+                outcome.complete(-1);
+            }
+
+        });
+        try {
+            return outcome.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (ExecutionException exception) {
+            return -1;
+        }
+    }
+
+    /**
+     * Keeps a body Treblle could not take for the drainer. Runs before the body is released.
+     */
+    private void spoolFailed(byte[] body, int length) {
+        try {
+            spool.append(body, length);
+            spooledCount.increment();
+        } catch (IOException exception) {
+            LOGGER.error("Failed to spool undeliverable payload", exception);
+        }
+    }
+
+    /**
+     * Schedules another attempt of a failed send, or spools it once retrying is not an option:
+     * the send ran out of attempts or budget, or Treblle asked for too long a pause. Runs before
+     * the body is released.
+     *
+     * @return {@code true} if a retry was scheduled
+     */
+    private boolean retryOrSpool(byte[] body, int length, int payloadCount, int attempt, long retryAfterMillis) {
+        if (retryWheel != null && attempt < maxRetries) {
+            long delayMillis;
+            if (retryAfterMillis != RetryAfter.UNSPECIFIED) {
+                // Spread out the senders Treblle gave the same pause to
+                delayMillis = retryAfterMillis + ThreadLocalRandom.current().nextLong(retryAfterMillis / 10 + 1);
+            } else {
+                long ceiling = Math.min(RETRY_MIN_BACKOFF_MILLIS << attempt, RETRY_MAX_BACKOFF_MILLIS);
+                delayMillis = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+            }
+            if (delayMillis <= RETRY_MAX_DELAY_MILLIS && retryBudget.tryAcquire()
+                    && retryWheel.schedule(QueuedTelemetry.retry(Arrays.copyOf(body, length), payloadCount, attempt + 1), delayMillis)) {
+                return true;
+            }
+        }
+        if (spoolFailures) {
+            spoolFailed(body, length);
+        }
+        return false;
+    }
+
+    /**
+     * Whether a send answered with this status is worth repeating later.
+     */
+    private static boolean isRetriable(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Reports a send's answer to the endpoint selector; only server-side failures count against the host.
+     */
+    private void recordOutcome(EndpointSelector.Endpoint endpoint, int statusCode, long nanos) {
+        if (statusCode == 408 || statusCode >= 500) {
+            endpointSelector.recordFailure(endpoint, nanos);
+        } else {
+            endpointSelector.recordSuccess(endpoint, nanos);
+        }
+    }
+
+    /**
+     * Returns the budget that limits retries, e.g., to read how many it allowed and denied.
+     *
+     * @return the retry budget
+     * @since 2.1.0
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * Returns the number of failed sends waiting for their next attempt.
+     *
+     * @return pending retry count
+     * @since 2.1.0
+     */
+    public int getPendingRetryCount() {
+        return retryWheel != null ? retryWheel.getPendingCount() : 0;
+    }
+
+    /**
+     * Returns the number of undeliverable bodies that went into the spool.
+     *
+     * @return spooled body count since startup
+     * @since 2.1.0
+     */
+    public long getSpooledCount() {
+        return spooledCount.sum();
+    }
+
+    /**
+     * Returns the number of spooled bodies that were replayed and accepted by Treblle.
+     *
+     * @return replayed body count since startup
+     * @since 2.1.0
+     */
+    public long getReplayedCount() {
+        return replayedCount.sum();
+    }
+
+    DiskSpool getSpool() {
+        return spool;
+    }
+
+    private TrebllePayload resolve(QueuedTelemetry telemetry) {
+        return telemetry.getExchange() != null ? buildPayload(telemetry.getExchange()) : telemetry.getPayload();
+    }
+
+    private static DiskSpool openSpool(TreblleProperties treblleProperties) {
+        try {
+            return new DiskSpool(
+                    treblleProperties.getSpoolDirectory(),
+                    treblleProperties.getSpoolMaxSizeInBytes(),
+                    treblleProperties.getSpoolSegmentSizeInBytes()
+            );
+        } catch (IOException exception) {
+            LOGGER.error("Could not open spool in {}", treblleProperties.getSpoolDirectory(), exception);
+            return null;
+        }
+    }
+
+    /**
+     * Ships a completed batch and returns its sink to the pool.
+     *
+     * @param sink  finished sink holding the compressed JSON array
+     * @param count number of payloads in the batch
+     */
+    private void sendBatch(GzipPayloadSink sink, int count) {
+        if (treblleProperties.isDebugMode()) {
+            LOGGER.debug("Sending batch of {} payloads", count);
+        }
+        post(sink.buffer(), sink.size(), sink.getUncompressedSize(), count, 0, () -> sinkPool.release(sink));
+    }
+
+    /**
+     * Posts a gzip-compressed body through the transport.
+     *
+     * @param body             buffer holding the compressed body
+     * @param length           number of bytes to send from the start of {@code body}
+     * @param uncompressedSize size before compression for debug logging, 0 if unknown
+     * @param payloadCount     number of payloads in the body
+     * @param attempt          0 for a first send, otherwise the number of the retry
+     * @param release          runs once the transport is done with {@code body}
+     */
+    private void post(byte[] body, int length, long uncompressedSize, int payloadCount, int attempt, Runnable release) {
+        if (attempt == 0) {
+            retryBudget.recordSend();
+        }
+
+        final EndpointSelector.Endpoint endpoint = endpointSelector.select();
+        if (endpoint == null) {
+            // Every host is out of rotation; fail now rather than hold the worker until a timeout
+            if (spoolFailures) {
+                spoolFailed(body, length);
+            }
+            release.run();
+            metrics.recordShortCircuit(payloadCount);
+            return;
+        }
+
+        if (treblleProperties.isDebugMode() && uncompressedSize > 0) {
+            LOGGER.debug("Payload size - Original: {} bytes, Compressed: {} bytes, Ratio: {}%",
+                    uncompressedSize, length, (100 - (length * 100L / uncompressedSize)));
+        }
+
+        metrics.recordShipped(uncompressedSize, length);
+        final long start = System.nanoTime();
+        transport.send(endpoint.getUrl(), body, length, new PayloadTransport.Callback() {
+
+            @Override
+            public void completed(int statusCode, long retryAfterMillis) {
+                long nanos = System.nanoTime() - start;
+                recordOutcome(endpoint, statusCode, nanos);
+                boolean retrying = isRetriable(statusCode)
+                        && retryOrSpool(body, length, payloadCount, attempt, retryAfterMillis);
+                release.run();
+                // Payloads that will be retried are only counted once their fate is known
+                metrics.recordResponse(statusCode, retrying ? 0 : payloadCount, nanos);
                 if (treblleProperties.isDebugMode()) {
                     if (statusCode != 200) {
                         LOGGER.error("Treblle API returned status code: {}", statusCode);
@@ -141,44 +599,82 @@ public class TreblleServiceImpl extends AbstractTreblleService {
                         LOGGER.debug("Treblle API response: {}", statusCode);
                     }
                 }
-            } catch (IOException exception) {
+            }
+
+            @Override
+            public void failed(Exception exception) {
+                long nanos = System.nanoTime() - start;
+                endpointSelector.recordFailure(endpoint, nanos);
+                boolean retrying = retryOrSpool(body, length, payloadCount, attempt, RetryAfter.UNSPECIFIED);
+                release.run();
+                metrics.recordTransportError(retrying ? 0 : payloadCount, nanos);
                 LOGGER.error("Failed to send payload to Treblle", exception);
             }
-        }, executorService);  // Use managed executor
+
+        });
     }
 
     /**
      * Shuts down the telemetry service and releases resources.
      * <p>
-     * This method gracefully stops the executor service and waits for pending
-     * tasks to complete. It should be called when the filter is destroyed.
+     * This method stops accepting payloads, lets the workers drain the queue and ships
+     * the last open batch. Spooled payloads that were not replayed yet stay on disk for the
+     * next start. It should be called when the filter is destroyed.
      */
     public void shutdown() {
         LOGGER.debug("Shutting down Treblle service");
 
-        // Shutdown executor service
-        try {
-            executorService.shutdown();
-            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                LOGGER.warn("Executor service did not terminate in time, forcing shutdown");
-                executorService.shutdownNow();
-                if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                    LOGGER.error("Executor service did not terminate");
+        if (spoolDrainer != null) {
+            draining = false;
+            spoolDrainer.interrupt();
+            try {
+                spoolDrainer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Retries still waiting are not worth delaying shutdown for; keep them if there is a spool
+        if (retryWheel != null) {
+            List<QueuedTelemetry> pendingRetries = retryWheel.stop();
+            if (spoolFailures) {
+                for (QueuedTelemetry retry : pendingRetries) {
+                    spoolFailed(retry.getBody(), retry.getBody().length);
                 }
+            } else if (!pendingRetries.isEmpty()) {
+                LOGGER.warn("Discarding {} payloads waiting to be retried", pendingRetries.size());
             }
-        } catch (InterruptedException e) {
-            LOGGER.warn("Interrupted while waiting for executor service shutdown", e);
-            executorService.shutdownNow();
-            Thread.currentThread().interrupt();
         }
 
-        // Close HTTP client
+        // Stop the linger timer first so it cannot race the final flush
+        if (payloadBatcher != null) {
+            batchScheduler.shutdownNow();
+        }
+
+        if (!dispatcher.shutdown(5, TimeUnit.SECONDS)) {
+            LOGGER.error("Telemetry workers did not terminate");
+        }
+
+        if (payloadBatcher != null) {
+            payloadBatcher.flush();
+        }
+
+        // Close HTTP client; the async transport waits for sends still in flight
         try {
-            httpClient.close();
+            transport.close();
             LOGGER.debug("HTTP client closed successfully");
         } catch (IOException e) {
             LOGGER.error("Error closing HTTP client", e);
         }
+
+        // Last, so that sends failing during shutdown are still spooled
+        if (spool != null) {
+            spool.close();
+        }
+
+        sinkPool.clear();
+
+        TreblleServiceMetrics.unregister(mbeanName);
     }
 
     public static class RequestLogger implements HttpRequestInterceptor {
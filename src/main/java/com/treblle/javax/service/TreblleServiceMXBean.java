@@ -0,0 +1,166 @@
+package com.treblle.javax.service;
+
+import com.treblle.common.metrics.HistogramSnapshot;
+
+import java.util.Map;
+
+/**
+ * JMX view of a running Treblle service, registered as
+ * {@code com.treblle:type=TreblleService,sdk=<sdk name>,id=<n>} unless
+ * {@link com.treblle.common.configuration.TreblleProperties#isJmxEnabled()} is off.
+ * <p>
+ * Timings are histograms of microseconds since startup or the last {@link #resetMetrics()};
+ * counters are totals over the same period, except for the gauges.
+ *
+ * @see com.treblle.common.metrics.TreblleMetrics
+ * @since 2.1.0
+ */
+public interface TreblleServiceMXBean {
+
+    /**
+     * @return request-thread time spent buffering bodies and taking the exchange snapshot
+     */
+    HistogramSnapshot getCaptureTime();
+
+    /**
+     * @return time to build a masked payload from a snapshot, masking included
+     */
+    HistogramSnapshot getBuildTime();
+
+    /**
+     * @return request-thread time spent handing telemetry to the workers
+     */
+    HistogramSnapshot getEnqueueTime();
+
+    /**
+     * @return time to parse and mask one body
+     */
+    HistogramSnapshot getMaskTime();
+
+    /**
+     * @return time to serialize and compress one payload
+     */
+    HistogramSnapshot getSerializeTime();
+
+    /**
+     * @return time from posting a body until Treblle answered or the send failed
+     */
+    HistogramSnapshot getSendTime();
+
+    /**
+     * @return approximate number of queued payloads (gauge)
+     */
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    /**
+     * @return running worker threads (gauge)
+     */
+    int getWorkerCount();
+
+    /**
+     * @return workers currently processing telemetry rather than waiting for it (gauge)
+     */
+    int getActiveWorkerCount();
+
+    long getPayloadsSent();
+
+    long getPayloadsFailed();
+
+    /**
+     * @return payloads lost to the overflow policy, across all policies
+     */
+    long getPayloadsDropped();
+
+    long getPayloadsSpilled();
+
+    long getRequestsSent();
+
+    long getRequestsFailed();
+
+    long getTransportErrors();
+
+    long getOriginalBytes();
+
+    long getCompressedBytes();
+
+    /**
+     * @return counts of the status codes the Treblle endpoint answered with
+     */
+    Map<Integer, Long> getEndpointStatusCounts();
+
+    /**
+     * @return bodies that were not valid JSON
+     */
+    long getParseFailures();
+
+    long getHeadSampledCount();
+
+    long getHeadUnsampledCount();
+
+    long getTailKeptCount();
+
+    long getTailDroppedCount();
+
+    /**
+     * @return bodies waiting in the spool for replay (gauge)
+     */
+    long getSpoolRecordCount();
+
+    /**
+     * @return disk space taken by the spool (gauge)
+     */
+    long getSpoolSizeInBytes();
+
+    /**
+     * @return spooled bodies discarded to respect the spool size cap
+     */
+    long getSpoolEvictedCount();
+
+    /**
+     * @return undeliverable bodies that went into the spool
+     */
+    long getSpooledCount();
+
+    /**
+     * @return spooled bodies Treblle accepted on replay
+     */
+    long getReplayedCount();
+
+    /**
+     * @return failed sends waiting for their next attempt (gauge)
+     */
+    int getPendingRetryCount();
+
+    /**
+     * @return retries the retry budget allowed
+     */
+    long getRetryCount();
+
+    /**
+     * @return retries not made because the retry budget was used up
+     */
+    long getRetriesDeniedCount();
+
+    /**
+     * @return ingest hosts currently out of rotation (gauge)
+     */
+    int getOpenCircuitCount();
+
+    /**
+     * @return how often an ingest host was taken out of rotation
+     */
+    long getCircuitsOpenedCount();
+
+    /**
+     * @return sends given up at once because every ingest host was out of rotation
+     */
+    long getShortCircuitedCount();
+
+    /**
+     * Clears timings and counters; gauges, dispatcher drop counts, spool, retry and circuit counts are not affected.
+     */
+    void resetMetrics();
+
+}
@@ -0,0 +1,271 @@
+package com.treblle.javax.service;
+
+import com.treblle.common.configuration.OverflowPolicy;
+import com.treblle.common.infrastructure.TelemetryDispatcher;
+import com.treblle.common.metrics.HistogramSnapshot;
+import com.treblle.common.metrics.TreblleMetrics;
+import com.treblle.common.service.EndpointSelector;
+import com.treblle.common.service.HeadSampler;
+import com.treblle.common.service.TailSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link TreblleServiceMXBean} over a service's metrics, dispatcher, samplers, spool and endpoint
+ * selector. Every attribute is read on demand, so the bean adds nothing to the request path.
+ *
+ * @since 2.1.0
+ */
+final class TreblleServiceMetrics implements TreblleServiceMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TreblleServiceMetrics.class);
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    private final TreblleServiceImpl service;
+    private final TreblleMetrics metrics;
+    private final TelemetryDispatcher<?> dispatcher;
+    private final HeadSampler headSampler;
+    private final TailSampler tailSampler;
+    private final DiskSpool spool;
+    private final EndpointSelector endpointSelector;
+
+    TreblleServiceMetrics(TreblleServiceImpl service) {
+        this.service = service;
+        this.metrics = service.getMetrics();
+        this.dispatcher = service.getDispatcher();
+        this.headSampler = service.getHeadSampler();
+        this.tailSampler = service.getTailSampler();
+        this.spool = service.getSpool();
+        this.endpointSelector = service.getEndpointSelector();
+    }
+
+    /**
+     * Registers the bean with the platform MBean server.
+     *
+     * @param sdkName the SDK identifier, part of the object name
+     * @return the name it was registered under, or {@code null} if registration failed
+     */
+    ObjectName register(String sdkName) {
+        try {
+            ObjectName name = new ObjectName(
+                    "com.treblle:type=TreblleService,sdk=" + sdkName + ",id=" + NEXT_ID.getAndIncrement());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            return name;
+        } catch (JMException | SecurityException exception) {
+            LOGGER.warn("Could not register Treblle metrics with JMX", exception);
+            return null;
+        }
+    }
+
+    static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException | SecurityException exception) {
+            LOGGER.debug("Could not unregister Treblle metrics", exception);
+        }
+    }
+
+    @Override
+    public HistogramSnapshot getCaptureTime() {
+        return metrics.getCaptureTime().snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getBuildTime() {
+        return metrics.getBuildTime().snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getEnqueueTime() {
+        return metrics.getEnqueueTime().snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getMaskTime() {
+        return metrics.getMaskTime().snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getSerializeTime() {
+        return metrics.getSerializeTime().snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getSendTime() {
+        return metrics.getSendTime().snapshot();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return dispatcher.getQueueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return dispatcher.getQueueCapacity();
+    }
+
+    @Override
+    public int getWorkerCount() {
+        return dispatcher.getWorkerCount();
+    }
+
+    @Override
+    public int getActiveWorkerCount() {
+        return dispatcher.getActiveWorkerCount();
+    }
+
+    @Override
+    public long getPayloadsSent() {
+        return metrics.getPayloadsSent();
+    }
+
+    @Override
+    public long getPayloadsFailed() {
+        return metrics.getPayloadsFailed();
+    }
+
+    @Override
+    public long getPayloadsDropped() {
+        long dropped = 0;
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            dropped += dispatcher.getDropCount(policy);
+        }
+        return dropped;
+    }
+
+    @Override
+    public long getPayloadsSpilled() {
+        return dispatcher.getSpilledCount();
+    }
+
+    @Override
+    public long getRequestsSent() {
+        return metrics.getRequestsSent();
+    }
+
+    @Override
+    public long getRequestsFailed() {
+        return metrics.getRequestsFailed();
+    }
+
+    @Override
+    public long getTransportErrors() {
+        return metrics.getTransportErrors();
+    }
+
+    @Override
+    public long getOriginalBytes() {
+        return metrics.getOriginalBytes();
+    }
+
+    @Override
+    public long getCompressedBytes() {
+        return metrics.getCompressedBytes();
+    }
+
+    @Override
+    public Map<Integer, Long> getEndpointStatusCounts() {
+        return metrics.getStatusCounts();
+    }
+
+    @Override
+    public long getParseFailures() {
+        return metrics.getParseFailures();
+    }
+
+    @Override
+    public long getHeadSampledCount() {
+        return headSampler.getSampledCount();
+    }
+
+    @Override
+    public long getHeadUnsampledCount() {
+        return headSampler.getUnsampledCount();
+    }
+
+    @Override
+    public long getTailKeptCount() {
+        return tailSampler.getKeptErrorCount() + tailSampler.getKeptSlowCount() + tailSampler.getKeptSampledCount();
+    }
+
+    @Override
+    public long getTailDroppedCount() {
+        return tailSampler.getDroppedCount();
+    }
+
+    @Override
+    public long getSpoolRecordCount() {
+        return spool != null ? spool.getRecordCount() : 0;
+    }
+
+    @Override
+    public long getSpoolSizeInBytes() {
+        return spool != null ? spool.getSizeInBytes() : 0;
+    }
+
+    @Override
+    public long getSpoolEvictedCount() {
+        return spool != null ? spool.getEvictedCount() : 0;
+    }
+
+    @Override
+    public long getSpooledCount() {
+        return service.getSpooledCount();
+    }
+
+    @Override
+    public long getReplayedCount() {
+        return service.getReplayedCount();
+    }
+
+    @Override
+    public int getPendingRetryCount() {
+        return service.getPendingRetryCount();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return service.getRetryBudget().getGrantedCount();
+    }
+
+    @Override
+    public long getRetriesDeniedCount() {
+        return service.getRetryBudget().getDeniedCount();
+    }
+
+    @Override
+    public int getOpenCircuitCount() {
+        return endpointSelector.getOpenCircuitCount();
+    }
+
+    @Override
+    public long getCircuitsOpenedCount() {
+        return endpointSelector.getCircuitsOpenedCount();
+    }
+
+    @Override
+    public long getShortCircuitedCount() {
+        return endpointSelector.getShortCircuitedCount();
+    }
+
+    @Override
+    public void resetMetrics() {
+        metrics.reset();
+    }
+
+}
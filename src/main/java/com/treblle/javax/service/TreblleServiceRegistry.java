@@ -0,0 +1,122 @@
+package com.treblle.javax.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.treblle.common.configuration.TreblleProperties;
+import com.treblle.common.configuration.TrebllePropertiesSnapshot;
+import com.treblle.common.service.TreblleService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-JVM registry of {@link TreblleServiceImpl} instances shared between filters.
+ * <p>
+ * Every filter mapping and every JAX-RS application used to start its own service, each with its
+ * own sender threads, connection pool and compiled masking and exclusion patterns. Filters now
+ * {@link #acquire} their service here instead: filters with the same SDK name and the same
+ * effective configuration (API key, endpoint and every other property) get the same instance,
+ * and the service is shut down when the last of them calls {@link #release}.
+ * <p>
+ * Properties are compared by value through a {@link TrebllePropertiesSnapshot} when a service is
+ * acquired, so two filters configured through different sources share a service as long as they
+ * resolve to the same settings.
+ *
+ * @since 2.1.0
+ */
+public final class TreblleServiceRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TreblleServiceRegistry.class);
+
+    // Thread-safe once configured; shared by all services and the container filters
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Map<List<Object>, Entry> SERVICES_BY_KEY = new HashMap<>();
+    private static final Map<TreblleService, Entry> SERVICES = new IdentityHashMap<>();
+
+    private TreblleServiceRegistry() {
+    }
+
+    /**
+     * Returns the service for the given SDK name and configuration, creating it on first use.
+     * Each successful call must be paired with one call to {@link #release}.
+     *
+     * @param sdkName the SDK identifier (e.g., "javax-servlet" or "javax-container")
+     * @param treblleProperties configuration properties for the service
+     * @return the shared service
+     * @throws IllegalStateException if the configuration is invalid
+     */
+    public static synchronized TreblleService acquire(String sdkName, TreblleProperties treblleProperties) {
+        List<Object> key = configurationKey(sdkName, treblleProperties);
+        Entry entry = SERVICES_BY_KEY.get(key);
+        if (entry == null) {
+            entry = new Entry(key, new TreblleServiceImpl(sdkName, treblleProperties, OBJECT_MAPPER));
+            SERVICES_BY_KEY.put(key, entry);
+            SERVICES.put(entry.service, entry);
+            LOGGER.debug("Started Treblle service for {}", sdkName);
+        } else {
+            LOGGER.debug("Sharing Treblle service for {} with {} other filter(s)", sdkName, entry.references);
+        }
+        entry.references++;
+        return entry.service;
+    }
+
+    /**
+     * Releases a service obtained from {@link #acquire}, shutting it down when no filter uses it
+     * anymore. Services that were not obtained from this registry are ignored.
+     *
+     * @param service the service to release
+     */
+    public static void release(TreblleService service) {
+        TreblleServiceImpl stopped = null;
+        synchronized (TreblleServiceRegistry.class) {
+            Entry entry = SERVICES.get(service);
+            if (entry != null && --entry.references == 0) {
+                SERVICES.remove(service);
+                SERVICES_BY_KEY.remove(entry.key);
+                stopped = entry.service;
+            }
+        }
+        // Shut down outside the lock; draining the queue may take a while
+        if (stopped != null) {
+            stopped.shutdown();
+        }
+    }
+
+    /**
+     * Returns the object mapper shared by all registry services.
+     *
+     * @return the shared object mapper
+     */
+    public static ObjectMapper objectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    /**
+     * @return number of distinct services currently running
+     */
+    public static synchronized int size() {
+        return SERVICES.size();
+    }
+
+    private static List<Object> configurationKey(String sdkName, TreblleProperties properties) {
+        return Arrays.asList(sdkName, TrebllePropertiesSnapshot.of(properties));
+    }
+
+    private static final class Entry {
+
+        private final List<Object> key;
+        private final TreblleServiceImpl service;
+        private int references;
+
+        private Entry(List<Object> key, TreblleServiceImpl service) {
+            this.key = key;
+            this.service = service;
+        }
+    }
+
+}